@@ -0,0 +1,186 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.bench;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.function.ObjIntConsumer;
+
+import net.finkn.inputspec.tools.CodeMappingCfg;
+import net.finkn.inputspec.tools.DesignSpaceCfg;
+import net.finkn.inputspec.tools.MappingCfg;
+import net.finkn.inputspec.tools.ParamCfg;
+import net.finkn.inputspec.tools.types.AccessorTester;
+import net.finkn.inputspec.tools.types.InitTester;
+import se.miun.itm.input.model.InPUTException;
+import se.miun.itm.input.model.design.IDesign;
+import se.miun.itm.input.model.design.IDesignSpace;
+
+/**
+ * Benchmarks of the cost of invoking accessors of structured parameters.
+ * InPUT invokes setters reflectively when initializing a structured
+ * parameter and when setting the value of a nested parameter (see
+ * {@code AccessorTest}). These benchmarks compare the setters driven by
+ * InPUT to the same setters invoked directly, through plain reflection,
+ * through cached method handles, and through functional interfaces
+ * generated by {@link LambdaMetafactory}. The difference between InPUT and
+ * the baselines is the overhead that is not spent in the setter itself.
+ * <p>
+ * Both the default setter name ({@value AccessorTester#SETTER}) and a custom
+ * one ({@value InitTester#SETTER}) are measured, using
+ * {@link AccessorTester}, which has both.
+ *
+ * @author Christoffer Fink
+ */
+public final class AccessorBenchmark {
+  private static final String[] SETTERS = {
+    AccessorTester.SETTER, InitTester.SETTER,
+  };
+  private static final MethodType SETTER_TYPE =
+    MethodType.methodType(void.class, int.class);
+  // Constant handles can be inlined by the JIT compiler.
+  private static final MethodHandle SET_DATA = handle(SETTERS[0]);
+  private static final MethodHandle CUSTOM_SET = handle(SETTERS[1]);
+
+  private static final String TESTER = "Tester";
+  private static final String DATA = "Tester.Data";
+
+  private AccessorBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    run(Harness.fromProperties());
+  }
+
+  public static void run(Harness h) throws Exception {
+    for (String setter : SETTERS) {
+      baselines(h, setter);
+      input(h, setter);
+    }
+  }
+
+  private static void baselines(Harness h, String setter) throws Exception {
+    AccessorTester tester = new AccessorTester();
+    boolean custom = setter.equals(InitTester.SETTER);
+    String suffix = "[setter=" + setter + "]";
+    int[] value = {0};
+
+    h.run("accessor.direct" + suffix, () -> {
+      if (custom) {
+        tester.customSetMethod(value[0]++);
+      } else {
+        tester.setData(value[0]++);
+      }
+      return tester;
+    });
+
+    Method method = AccessorTester.class.getMethod(setter, int.class);
+    h.run("accessor.reflection" + suffix,
+        () -> method.invoke(tester, value[0]++));
+
+    MethodHandle cached = custom ? CUSTOM_SET : SET_DATA;
+    h.run("accessor.handle" + suffix, () -> {
+      try {
+        if (custom) {
+          CUSTOM_SET.invokeExact(tester, value[0]++);
+        } else {
+          SET_DATA.invokeExact(tester, value[0]++);
+        }
+      } catch (Throwable t) {
+        throw new IllegalStateException(t);
+      }
+      return tester;
+    });
+    h.run("accessor.handleNonConstant" + suffix, () -> {
+      try {
+        cached.invokeExact(tester, value[0]++);
+      } catch (Throwable t) {
+        throw new IllegalStateException(t);
+      }
+      return tester;
+    });
+
+    ObjIntConsumer<AccessorTester> lambda = lambda(setter);
+    h.run("accessor.lambda" + suffix, () -> {
+      lambda.accept(tester, value[0]++);
+      return tester;
+    });
+  }
+
+  // Initialization invokes the setter once, and so does every setValue.
+  private static void input(Harness h, String setter)
+      throws InPUTException {
+    ParamCfg data = ParamCfg.builder().id("Data").build();
+    ParamCfg tester = ParamCfg.builder()
+      .id(TESTER)
+      .structured()
+      .add(data)
+      .build();
+    CodeMappingCfg mapping = CodeMappingCfg.getInstance(
+        MappingCfg.builder().param(tester, data).set(setter).build(),
+        MappingCfg.builder().infer(AccessorTester.class, tester).build());
+    IDesignSpace space = DesignSpaceCfg.builder()
+      .param(tester)
+      .mapping(mapping)
+      .build()
+      .getDesignSpace();
+    IDesign design = space.nextDesign("Design");
+    design.getValue(TESTER);
+    Object value = design.getValue(DATA);
+    String suffix = "[setter=" + setter + "]";
+
+    h.run("accessor.inputSetValue" + suffix, () -> {
+      design.setValue(DATA, value);
+      return design;
+    });
+    h.run("accessor.inputInit" + suffix,
+        () -> space.nextDesign("Design").getValue(TESTER));
+  }
+
+  private static MethodHandle handle(String setter) {
+    try {
+      return MethodHandles.lookup()
+        .findVirtual(AccessorTester.class, setter, SETTER_TYPE);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ObjIntConsumer<AccessorTester> lambda(String setter)
+      throws Exception {
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+        MethodType.methodType(ObjIntConsumer.class),
+        MethodType.methodType(void.class, Object.class, int.class),
+        handle(setter),
+        MethodType.methodType(void.class, AccessorTester.class, int.class));
+    try {
+      return (ObjIntConsumer<AccessorTester>) site.getTarget().invoke();
+    } catch (Throwable t) {
+      throw new IllegalStateException(t);
+    }
+  }
+}
@@ -0,0 +1,40 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.bench;
+
+/**
+ * Runs all benchmarks with a harness configured by system properties.
+ * See {@link Harness} for the available properties. A single benchmark
+ * class can also be run by itself.
+ *
+ * @author Christoffer Fink
+ */
+public final class Benchmarks {
+  private Benchmarks() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    Harness h = Harness.fromProperties();
+    SpaceBenchmark.run(h);
+    ExpressionBenchmark.run(h);
+    AccessorBenchmark.run(h);
+  }
+}
@@ -0,0 +1,165 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.finkn.inputspec.tools.DesignSpaceCfg;
+import net.finkn.inputspec.tools.Helper;
+import net.finkn.inputspec.tools.ParamCfg;
+import se.miun.itm.input.model.InPUTException;
+import se.miun.itm.input.model.design.IDesign;
+import se.miun.itm.input.model.design.IDesignSpace;
+
+/**
+ * Benchmarks of parameters whose limits are expressions that reference other
+ * parameters (see {@code AdvancedSingleRangeNextTest},
+ * {@code AdvancedMultiRangeNextTest} and {@code NestedDependencyTest}).
+ * Each configuration has a target parameter "T". The benchmarks measure
+ * {@code next} and {@code setValue} for the target, and {@code nextDesign}
+ * for the whole design space. Allocation rates are reported by the
+ * {@link Harness}.
+ * <p>
+ * The configurations vary one aspect of the dependencies at a time:
+ * <ul>
+ *   <li>referencing: the number of parameters referencing the same
+ *   parameter (the target being one of them),</li>
+ *   <li>chain: the length of a chain of parameters, each referencing the
+ *   previous one, with the target last,</li>
+ *   <li>fan-in: the number of parameters the target references,</li>
+ *   <li>math: the {@code Math} functions used by the target's limits.</li>
+ * </ul>
+ * All parameters are integers, and all ranges stay non-empty even when
+ * references resolve to 0.
+ *
+ * @author Christoffer Fink
+ */
+public final class ExpressionBenchmark {
+  private static final int[] REFERENCING = {1, 10, 100};
+  private static final int[] CHAIN = {1, 10, 100};
+  private static final int[] FAN_IN = {1, 10, 50};
+  // Names and expressions.
+  private static final String[][] MATH = {
+    {"none", "A"},
+    {"abs", "Math.abs(A)"},
+    {"sqrt", "Math.sqrt(A)"},
+    {"pow+max", "Math.pow(A, 2) + Math.max(A, 1)"},
+  };
+  private static final String TARGET = "T";
+
+  private ExpressionBenchmark() {
+  }
+
+  public static void main(String[] args) throws InPUTException {
+    run(Harness.fromProperties());
+  }
+
+  public static void run(Harness h) throws InPUTException {
+    for (int n : REFERENCING) {
+      measure(h, "referencing=" + n, referencing(n));
+    }
+    for (int n : CHAIN) {
+      measure(h, "chain=" + n, chain(n));
+    }
+    for (int n : FAN_IN) {
+      measure(h, "fanIn=" + n, fanIn(n));
+    }
+    for (String[] math : MATH) {
+      measure(h, "math=" + math[0], math(math[1]));
+    }
+  }
+
+  private static void measure(Harness h, String params, List<ParamCfg> cfg)
+      throws InPUTException {
+    IDesignSpace space = DesignSpaceCfg.builder()
+      .param(cfg.toArray(new ParamCfg[cfg.size()]))
+      .build()
+      .getDesignSpace();
+    IDesign design = space.nextDesign("Design");
+    Object value = design.getValue(TARGET);
+    String suffix = "[" + params + "]";
+    h.run("expression.next" + suffix, () -> space.next(TARGET));
+    h.run("expression.nextDesign" + suffix,
+        () -> space.nextDesign("Design"));
+    h.run("expression.setValue" + suffix, () -> {
+      design.setValue(TARGET, value);
+      return design;
+    });
+  }
+
+  // A, and n parameters that reference A. The last one is the target.
+  private static List<ParamCfg> referencing(int n) {
+    List<ParamCfg> result = new ArrayList<>();
+    result.add(independent("A"));
+    for (int i = 1; i <= n; i++) {
+      result.add(dependent(i == n ? TARGET : "D" + i, "A"));
+    }
+    return result;
+  }
+
+  // A, followed by n parameters that each reference the previous one.
+  private static List<ParamCfg> chain(int n) {
+    List<ParamCfg> result = new ArrayList<>();
+    result.add(independent("A"));
+    String previous = "A";
+    for (int i = 1; i <= n; i++) {
+      String id = i == n ? TARGET : "C" + i;
+      result.add(dependent(id, previous));
+      previous = id;
+    }
+    return result;
+  }
+
+  // n independent parameters, all referenced by the target.
+  private static List<ParamCfg> fanIn(int n) {
+    List<ParamCfg> result = new ArrayList<>();
+    StringBuilder sum = new StringBuilder();
+    for (int i = 0; i < n; i++) {
+      String id = "R" + i;
+      result.add(independent(id));
+      sum.append(i == 0 ? "" : " + ").append(id);
+    }
+    result.add(dependent(TARGET, sum.toString()));
+    return result;
+  }
+
+  private static List<ParamCfg> math(String expression) {
+    List<ParamCfg> result = new ArrayList<>();
+    result.add(independent("A"));
+    result.add(dependent(TARGET, expression));
+    return result;
+  }
+
+  private static ParamCfg independent(String id) {
+    return Helper.pb().id(id).type("integer").interval("[1,10]").build();
+  }
+
+  // The range is never empty, so generating values cannot fail.
+  private static ParamCfg dependent(String id, String expression) {
+    return Helper.pb()
+      .id(id)
+      .type("integer")
+      .inclMin(expression + " - 10")
+      .inclMax(expression + " + 10")
+      .build();
+  }
+}
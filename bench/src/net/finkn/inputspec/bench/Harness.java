@@ -0,0 +1,288 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Minimal harness for timing operations.
+ * Each benchmark is run for a number of warmup iterations, whose results
+ * are discarded, followed by a number of measured iterations. Every
+ * iteration runs the operation repeatedly for a fixed amount of time.
+ * The operation is called in batches, so that reading the clock does not
+ * dominate the cost of cheap operations. The batch size is calibrated
+ * during warmup.
+ * <p>
+ * The value returned by the operation is stored in a volatile field, so
+ * that the JIT compiler cannot eliminate the work. Where the JVM supports
+ * it, the number of bytes allocated per operation is also reported.
+ * <p>
+ * The harness can be configured with system properties:
+ * "bench.warmups" and "bench.iterations" (the number of iterations),
+ * "bench.time" (milliseconds per iteration), and "bench.filter" (only
+ * benchmarks whose names contain this string are run).
+ * <p>
+ * A harness is not thread-safe. Benchmarks are run on the calling thread.
+ *
+ * @author Christoffer Fink
+ */
+public final class Harness {
+  private static final String FORMAT = "%-60s %14s %8s %12s%n";
+  private static volatile Object sink;
+
+  private final int warmups;
+  private final int iterations;
+  private final long nanos;
+  private final String filter;
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  private final List<Result> results = new ArrayList<>();
+
+  private Harness(Builder b) {
+    this.warmups = b.warmups;
+    this.iterations = b.iterations;
+    this.nanos = b.millis * 1_000_000;
+    this.filter = b.filter;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Returns a harness configured by system properties (or defaults). */
+  public static Harness fromProperties() {
+    Builder b = builder();
+    return b.warmups(Integer.getInteger("bench.warmups", b.warmups))
+      .iterations(Integer.getInteger("bench.iterations", b.iterations))
+      .time(Long.getLong("bench.time", b.millis))
+      .filter(System.getProperty("bench.filter", ""))
+      .build();
+  }
+
+  /**
+   * Measures the operation, unless filtered out, and prints the result.
+   * The operation is run once before measuring, so a broken benchmark
+   * fails fast.
+   * @throws IllegalStateException if the operation throws an exception
+   */
+  public void run(String name, Op op) {
+    if (!name.contains(filter)) {
+      return;
+    }
+    if (results.isEmpty()) {
+      System.out.printf(FORMAT, "Benchmark", "ns/op", "error", "B/op");
+    }
+    Result result = measure(name, op);
+    results.add(result);
+    System.out.print(result);
+  }
+
+  /**
+   * Returns a supplier that cycles through the items, so that a benchmark
+   * does not keep hitting the same item.
+   */
+  @SafeVarargs
+  public static <T> Supplier<T> cycle(T ... items) {
+    if (items.length == 0) {
+      throw new IllegalArgumentException("Nothing to cycle through.");
+    }
+    int[] next = {0};
+    return () -> {
+      T item = items[next[0]];
+      next[0] = (next[0] + 1) % items.length;
+      return item;
+    };
+  }
+
+  /** Returns the results so far, in the order they were measured. */
+  public List<Result> getResults() {
+    return Collections.unmodifiableList(results);
+  }
+
+  private Result measure(String name, Op op) {
+    try {
+      sink = op.run();
+      int batch = 1;
+      for (int i = 0; i < warmups; i++) {
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < nanos) {
+          long t = System.nanoTime();
+          batch(op, batch);
+          // Aim for about a thousand clock readings per iteration.
+          if (System.nanoTime() - t < nanos / 1000 && batch < 1 << 30) {
+            batch *= 2;
+          }
+        }
+      }
+      double[] nsPerOp = new double[iterations];
+      long bytes = 0;
+      long ops = 0;
+      for (int i = 0; i < iterations; i++) {
+        long allocated = allocated();
+        long start = System.nanoTime();
+        long n = 0;
+        long elapsed;
+        do {
+          batch(op, batch);
+          n += batch;
+          elapsed = System.nanoTime() - start;
+        } while (elapsed < nanos);
+        bytes += allocated() - allocated;
+        ops += n;
+        nsPerOp[i] = (double) elapsed / n;
+      }
+      return new Result(name, nsPerOp, allocated() < 0 ? -1 : bytes / ops);
+    } catch (Exception e) {
+      throw new IllegalStateException(name + " failed.", e);
+    }
+  }
+
+  private static void batch(Op op, int n) throws Exception {
+    for (int i = 0; i < n; i++) {
+      sink = op.run();
+    }
+  }
+
+  // Returns -1 if allocations cannot be measured.
+  private long allocated() {
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads)
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  /** An operation to measure. */
+  @FunctionalInterface
+  public interface Op {
+    /** Performs the operation once, returning some result of it. */
+    Object run() throws Exception;
+  }
+
+  /**
+   * The measurements of a benchmark.
+   * This class is immutable.
+   */
+  public static final class Result {
+    private final String name;
+    private final double mean;
+    private final double error;
+    private final long bytes;
+
+    private Result(String name, double[] nsPerOp, long bytes) {
+      double sum = 0;
+      for (double x : nsPerOp) {
+        sum += x;
+      }
+      double mean = sum / nsPerOp.length;
+      double squares = 0;
+      for (double x : nsPerOp) {
+        squares += (x - mean) * (x - mean);
+      }
+      double sd = nsPerOp.length < 2
+        ? 0 : Math.sqrt(squares / (nsPerOp.length - 1));
+      this.name = name;
+      this.mean = mean;
+      this.error = mean == 0 ? 0 : sd / mean;
+      this.bytes = bytes;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /** Returns the mean time per operation, in nanoseconds. */
+    public double getNanos() {
+      return mean;
+    }
+
+    /** Returns the relative standard deviation between iterations. */
+    public double getError() {
+      return error;
+    }
+
+    /** Returns the bytes allocated per operation, or -1 if unknown. */
+    public long getBytes() {
+      return bytes;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(FORMAT, name, String.format("%.1f", mean),
+          String.format("%.1f%%", error * 100),
+          bytes < 0 ? "?" : String.valueOf(bytes));
+    }
+  }
+
+  /**
+   * Builder of harnesses. By default, there are 5 warmup iterations and 5
+   * measured iterations of 500 milliseconds each, and nothing is filtered.
+   */
+  public static class Builder {
+    private int warmups = 5;
+    private int iterations = 5;
+    private long millis = 500;
+    private String filter = "";
+
+    private Builder() {
+    }
+
+    public Builder warmups(int warmups) {
+      if (warmups < 0) {
+        throw new IllegalArgumentException("Negative number of warmups.");
+      }
+      this.warmups = warmups;
+      return this;
+    }
+
+    public Builder iterations(int iterations) {
+      if (iterations < 1) {
+        throw new IllegalArgumentException(
+            "Number of iterations must be positive.");
+      }
+      this.iterations = iterations;
+      return this;
+    }
+
+    /** Sets the duration of each iteration, in milliseconds. */
+    public Builder time(long millis) {
+      if (millis < 1) {
+        throw new IllegalArgumentException("Time must be positive.");
+      }
+      this.millis = millis;
+      return this;
+    }
+
+    /** Only runs benchmarks whose names contain the string. */
+    public Builder filter(String filter) {
+      this.filter = filter;
+      return this;
+    }
+
+    public Harness build() {
+      return new Harness(this);
+    }
+  }
+}
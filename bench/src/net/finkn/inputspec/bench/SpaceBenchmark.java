@@ -0,0 +1,164 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.bench;
+
+import java.util.function.Supplier;
+
+import net.finkn.inputspec.tools.CodeMappingCfg;
+import net.finkn.inputspec.tools.DesignSpaceCfg;
+import net.finkn.inputspec.tools.Helper;
+import net.finkn.inputspec.tools.MappingCfg;
+import net.finkn.inputspec.tools.ParamCfg;
+import net.finkn.inputspec.tools.Synthesizer;
+import net.finkn.inputspec.tools.TestCleanup;
+import net.finkn.inputspec.tools.types.Point;
+import se.miun.itm.input.model.InPUTException;
+import se.miun.itm.input.model.design.IDesign;
+import se.miun.itm.input.model.design.IDesignSpace;
+
+/**
+ * Benchmarks of the core InPUT operations: constructing a design space,
+ * generating values and designs, and getting and setting values in a
+ * design. Structured parameter initialization is measured separately, with
+ * one {@link Point} per structured parameter.
+ * <p>
+ * The design spaces are {@link Synthesizer synthesized}. They vary in the
+ * number of top-level parameters, their type and the nesting depth of
+ * structured parameters. One dimension is varied at a time, starting from
+ * 100 integer parameters without nesting. The values are generated and
+ * set for the numeric top-level parameters, in turn.
+ * <p>
+ * InPUT keeps every design space it has seen, by ID (see
+ * {@code DesignSpaceCachingTest}), and returns the kept space for a known ID.
+ * So construction is measured in two ways. "space.construct" uses a fresh ID
+ * every time, so every operation parses and builds a design space. To keep
+ * the memory held by InPUT from growing with the duration of the benchmark,
+ * InPUT's stores are {@link TestCleanup#cleanup() released} after every
+ * {@value #IDS} constructions, which adds a small amortized cost.
+ * "space.constructCached" cycles through a fixed pool of {@value #IDS} IDs,
+ * so apart from the first pass through the pool, it measures constructing
+ * a design space whose ID InPUT already knows, which is what an application
+ * that reloads its configurations sees. Since releasing affects all design
+ * spaces, construction is measured last for each configuration.
+ *
+ * @author Christoffer Fink
+ */
+public final class SpaceBenchmark {
+  private static final int[] COUNTS = {10, 100, 1000};
+  private static final String[] TYPES = {"integer", "double", "decimal"};
+  private static final int[] DEPTHS = {0, 1, 2};
+  private static final int[] POINTS = {1, 10, 100};
+  private static final int IDS = 16;
+
+  private static long serial = 0;
+
+  private SpaceBenchmark() {
+  }
+
+  public static void main(String[] args) throws InPUTException {
+    run(Harness.fromProperties());
+  }
+
+  public static void run(Harness h) throws InPUTException {
+    for (int count : COUNTS) {
+      space(h, count, TYPES[0], DEPTHS[0]);
+    }
+    for (int i = 1; i < TYPES.length; i++) {
+      space(h, COUNTS[1], TYPES[i], DEPTHS[0]);
+    }
+    for (int i = 1; i < DEPTHS.length; i++) {
+      space(h, COUNTS[1], TYPES[0], DEPTHS[i]);
+    }
+    for (int points : POINTS) {
+      structured(h, points);
+    }
+  }
+
+  private static void space(Harness h, int count, String type, int depth)
+      throws InPUTException {
+    DesignSpaceCfg cfg = Synthesizer.builder()
+      .params(count)
+      .types(type)
+      .structured(depth == 0 ? 0 : 0.5)
+      .depth(depth)
+      .arrays(0)
+      .dependencies(0)
+      .build()
+      .generate();
+    String params = String.format("[params=%d,type=%s,depth=%d]",
+        count, type, depth);
+    String[] ids = cfg.getParameters()
+      .filter(p -> p.getParamType() == ParamCfg.ParamType.NUMERIC)
+      .map(ParamCfg::getId)
+      .toArray(String[]::new);
+    IDesignSpace space = cfg.getDesignSpace();
+    IDesign design = space.nextDesign("Design");
+    Supplier<String> next = Harness.cycle(ids);
+    DesignSpaceCfg[] pool = new DesignSpaceCfg[IDS];
+    for (int i = 0; i < IDS; i++) {
+      pool[i] = cfg.withId("Bench_" + serial++);
+    }
+    Supplier<DesignSpaceCfg> configs = Harness.cycle(pool);
+
+    h.run("space.next" + params, () -> space.next(next.get()));
+    h.run("space.nextDesign" + params, () -> space.nextDesign("Design"));
+    h.run("design.getValue" + params, () -> design.getValue(next.get()));
+    h.run("design.setValue" + params, () -> {
+      String id = next.get();
+      design.setValue(id, design.getValue(id));
+      return design;
+    });
+    h.run("space.constructCached" + params,
+        () -> configs.get().getDesignSpace());
+    h.run("space.construct" + params, () -> {
+      IDesignSpace fresh = cfg.withId("Bench_" + serial++).getDesignSpace();
+      if (serial % IDS == 0) {
+        TestCleanup.cleanup();
+      }
+      return fresh;
+    });
+    TestCleanup.cleanup();
+  }
+
+  private static void structured(Harness h, int points)
+      throws InPUTException {
+    ParamCfg[] params = new ParamCfg[points];
+    MappingCfg[] mappings = new MappingCfg[points];
+    for (int i = 0; i < points; i++) {
+      params[i] = Helper.pb()
+        .id("X").interval("[1,10]").add()
+        .id("Y").interval("[1,10]").add()
+        .id("Point" + i)
+        .structured()
+        .build();
+      mappings[i] = Helper.mapping(Point.class, params[i]);
+    }
+    IDesignSpace space = DesignSpaceCfg.builder()
+      .param(params)
+      .mapping(CodeMappingCfg.builder().mapping(mappings).build())
+      .build()
+      .getDesignSpace();
+    String suffix = "[points=" + points + "]";
+    h.run("structured.next" + suffix, () -> space.next("Point0"));
+    h.run("structured.nextDesign" + suffix,
+        () -> space.nextDesign("Design"));
+  }
+}
@@ -0,0 +1,242 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Statically known bounds of the numeric parameters in a design space.
+ * The bounds are computed by propagating intervals through the limit
+ * {@link Expression expressions}, following the dependency order. So
+ * dependent parameters can be checked without sampling their dependees.
+ * <p>
+ * For every numeric parameter, the bounds are a list of intervals, one per
+ * range in a multi-range definition. Ranges that are empty no matter what
+ * values the referenced parameters take are left out, and a parameter
+ * without any remaining ranges is reported as {@link #getEmpty() empty}.
+ * Integer, long and short parameters get tightened inclusive integer bounds.
+ * <p>
+ * The bounds describe the <em>declared</em> meaning of a configuration. They
+ * deliberately do not model InPUT quirks such as references resolving to 0,
+ * swapped limits or max exclusion. Comparing generated values against the
+ * declared bounds is exactly how such quirks are exposed. The bounds are
+ * conservative: every legal value is contained, but not every contained value
+ * is necessarily legal. A parameter that references unknown parameters, or
+ * that is involved in a circular dependency, is treated as unbounded.
+ * <p>
+ * Array elements (such as "A.1.2") share the bounds of their array.
+ * Boolean parameters have no numeric bounds and are ignored.
+ * <p>
+ * This class is immutable.
+ *
+ * @author Christoffer Fink
+ * @see GenTestCase#intervals(java.util.Collection)
+ */
+public class Bounds {
+  private static final Interval UNBOUNDED = Interval.valueOf("]*,*[");
+
+  private final ImpactIndex index;
+  private final Map<String, List<Interval>> bounds;
+  private final Set<String> empty;
+
+  private Bounds(ImpactIndex index, Map<String, List<Interval>> bounds) {
+    this.index = index;
+    this.bounds = Collections.unmodifiableMap(bounds);
+    Set<String> empty = bounds.entrySet().stream()
+      .filter(e -> e.getValue().isEmpty())
+      .map(Map.Entry::getKey)
+      .collect(Collectors.toCollection(LinkedHashSet::new));
+    this.empty = Collections.unmodifiableSet(empty);
+  }
+
+  /** Computes the bounds of all numeric parameters in the design space. */
+  public static Bounds of(DesignSpaceCfg space) {
+    return of(space.getParameters());
+  }
+
+  /** Computes the bounds of all numeric parameters (and nested ones). */
+  public static Bounds of(ParamCfg ... params) {
+    return of(Stream.of(params));
+  }
+
+  private static Bounds of(Stream<ParamCfg> params) {
+    ImpactIndex index = ImpactIndex.of(params);
+    Map<String, List<Interval>> result = new LinkedHashMap<>();
+    for (String id : index.getOrder()) {
+      ParamCfg param = index.getParam(id);
+      if (isBounded(param)) {
+        List<Interval> intervals = index.getCircular().contains(id)
+          ? Collections.singletonList(UNBOUNDED)
+          : propagate(param, index, result);
+        result.put(id, Collections.unmodifiableList(intervals));
+      }
+    }
+    return new Bounds(index, result);
+  }
+
+  /** Returns the IDs of all parameters that have bounds. */
+  public Set<String> getIds() {
+    return bounds.keySet();
+  }
+
+  /**
+   * Returns the intervals that the parameter is statically known to lie in.
+   * An empty list means that the parameter has no legal values.
+   * @throws IllegalArgumentException if there are no bounds for the ID
+   */
+  public List<Interval> getIntervals(String id) {
+    List<Interval> result = bounds.get(index.resolve(id));
+    if (result == null) {
+      throw new IllegalArgumentException("No bounds for " + id);
+    }
+    return result;
+  }
+
+  /** Checks whether the value is within the bounds of the parameter. */
+  public boolean contains(String id, Number value) {
+    for (Interval interval : getIntervals(id)) {
+      if (interval.contains(value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Returns the IDs of all parameters that cannot take any legal value. */
+  public Set<String> getEmpty() {
+    return empty;
+  }
+
+  private static boolean isBounded(ParamCfg param) {
+    return param.getParamType() == ParamCfg.ParamType.NUMERIC
+      && !"boolean".equals(baseType(param));
+  }
+
+  // Dependees come first in the dependency order, so their bounds are known.
+  private static List<Interval> propagate(ParamCfg param, ImpactIndex index,
+      Map<String, List<Interval>> result) {
+    Map<String, Interval> env = new HashMap<>();
+    for (Expression e : ImpactIndex.getLimits(param)) {
+      for (String ref : e.getReferences()) {
+        List<Interval> b = result.get(index.resolve(ref));
+        if (b == null || b.isEmpty()) {
+          return Collections.singletonList(UNBOUNDED);
+        }
+        env.put(ref, hull(b));
+      }
+    }
+    return getIntervals(param, env);
+  }
+
+  private static List<Interval> getIntervals(ParamCfg param,
+      Map<String, Interval> env) {
+    boolean integral = isIntegral(param);
+    Range range = param.getRange();
+    List<Interval> result = new ArrayList<>();
+    Double fixed = parseFixed(param.getFixed());
+    if (fixed != null) {
+      // Fixed values are truncated for integer parameters.
+      double value = integral ? (long) fixed.doubleValue() : fixed;
+      result.add(Interval.of(value, true, value, true));
+      return result;
+    }
+    boolean inclMin = range.inclMin().isPresent();
+    boolean inclMax = range.inclMax().isPresent();
+    List<Expression> mins = Expression.split(
+        range.inclMin().orElse(range.exclMin().orElse(null)));
+    List<Expression> maxs = Expression.split(
+        range.inclMax().orElse(range.exclMax().orElse(null)));
+    int n = Math.max(1, Math.max(mins.size(), maxs.size()));
+    for (int i = 0; i < n; i++) {
+      double min = i < mins.size()
+        ? lower(mins.get(i).bounds(env::get)) : Double.NEGATIVE_INFINITY;
+      double max = i < maxs.size()
+        ? upper(maxs.get(i).bounds(env::get)) : Double.POSITIVE_INFINITY;
+      Interval interval = integral
+        ? integral(min, inclMin, max, inclMax)
+        : Interval.of(min, inclMin, max, inclMax);
+      if (!interval.isEmpty()) {
+        result.add(interval);
+      }
+    }
+    return result;
+  }
+
+  // Tightens the limits to the integers that are actually contained.
+  private static Interval integral(double min, boolean inclMin,
+      double max, boolean inclMax) {
+    double lo = inclMin ? Math.ceil(min) : Math.floor(min) + 1;
+    double hi = inclMax ? Math.floor(max) : Math.ceil(max) - 1;
+    return Interval.of(lo, true, hi, true);
+  }
+
+  private static Interval hull(List<Interval> intervals) {
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+    for (Interval i : intervals) {
+      min = Math.min(min, lower(i));
+      max = Math.max(max, upper(i));
+    }
+    return Interval.of(min, true, max, true);
+  }
+
+  private static double lower(Interval i) {
+    return i.getInclMin().orElse(i.getExclMin()
+        .orElse(Double.NEGATIVE_INFINITY)).doubleValue();
+  }
+
+  private static double upper(Interval i) {
+    return i.getInclMax().orElse(i.getExclMax()
+        .orElse(Double.POSITIVE_INFINITY)).doubleValue();
+  }
+
+  private static boolean isIntegral(ParamCfg param) {
+    String type = baseType(param);
+    return "integer".equals(type) || "long".equals(type)
+      || "short".equals(type);
+  }
+
+  private static String baseType(ParamCfg param) {
+    String type = param.getType();
+    if (type == null) {
+      return null;
+    }
+    int bracket = type.indexOf('[');
+    return bracket < 0 ? type.trim() : type.substring(0, bracket).trim();
+  }
+
+  private static Double parseFixed(String fixed) {
+    try {
+      return fixed == null ? null : Double.valueOf(fixed);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+}
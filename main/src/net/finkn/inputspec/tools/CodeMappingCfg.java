@@ -20,8 +20,11 @@ SOFTWARE.
 */
 package net.finkn.inputspec.tools;
 
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
 /**
@@ -37,7 +40,8 @@ public class CodeMappingCfg {
 
   private final String id;
   private final Collection<MappingCfg> mappings;
-  private final Xml xml = Xml.getInstance().prefix(X.PREFIX);
+  private Fingerprint fingerprint;
+  private Fingerprint contentFingerprint;
 
   private CodeMappingCfg(String id, Collection<MappingCfg> mappings) {
     this.id = id;
@@ -52,22 +56,105 @@ public class CodeMappingCfg {
     return mappings.stream();
   }
 
+  /**
+   * Returns the content fingerprint of this code mapping, computed from the
+   * fingerprints of the mappings.
+   */
+  public Fingerprint fingerprint() {
+    Fingerprint result = fingerprint;
+    if (result == null) {
+      result = hash(id);
+      fingerprint = result;
+    }
+    return result;
+  }
+
+  /**
+   * Returns a fingerprint of everything except the ID. Code mappings that
+   * only differ in their IDs (such as the generated default IDs) have the
+   * same content fingerprint.
+   */
+  public Fingerprint contentFingerprint() {
+    Fingerprint result = contentFingerprint;
+    if (result == null) {
+      result = hash(null);
+      contentFingerprint = result;
+    }
+    return result;
+  }
+
+  private Fingerprint hash(String id) {
+    Fingerprint.Hasher hasher = Fingerprint.hasher()
+      .add(X.CODE_MAPPING)
+      .add(id)
+      .add(mappings.size());
+    mappings.forEach(m -> hasher.add(m.fingerprint()));
+    return hasher.build();
+  }
+
+  /**
+   * Checks whether the code mappings are structurally equal, meaning that they
+   * have the same XML. Code mappings with different (cached) fingerprints are
+   * rejected in constant time.
+   * @see Difference
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof CodeMappingCfg)) {
+      return false;
+    }
+    CodeMappingCfg that = (CodeMappingCfg) o;
+    return fingerprint().equals(that.fingerprint())
+      && !Difference.of(this, that).isPresent();
+  }
+
+  /** Returns a hash code derived from the fingerprint. */
+  @Override
+  public int hashCode() {
+    return fingerprint().hashCode();
+  }
+
+  /**
+   * Returns the XML document. The serialization is canonical: attributes
+   * always come in the same order, so equal configurations give equal
+   * documents.
+   */
   public String xml() {
-    String root = xml.e(X.CODE_MAPPING, getAttributes(), getChildren());
-    return xml.declaration() + "\n" + root;
+    StringBuilder sb = new StringBuilder();
+    xml(XmlWriter.of(sb, X.PREFIX));
+    return sb.toString();
   }
 
-  private Map<String, Optional<? extends Object>> getAttributes() {
-    Map<String, Optional<? extends Object>> attrib = new HashMap<>();
-    attrib.put(X.XML_XSI, Optional.of(X.NS));
-    attrib.put(X.INPUT_XMLNS, Optional.of(X.CODE_MAPPING_NS));
-    attrib.put(X.SCHEMA, Optional.of(X.CODE_MAPPING_SCHEMA));
-    attrib.put(X.ID, Optional.ofNullable(id));
-    return attrib;
+  /**
+   * Streams the XML document to the writer.
+   * @throws UncheckedIOException if writing fails
+   */
+  public void xml(Writer out) {
+    xml(XmlWriter.of(out, X.PREFIX));
+  }
+
+  /**
+   * Streams the XML document to the output stream, encoded as UTF-8.
+   * @throws UncheckedIOException if writing fails
+   */
+  public void xml(OutputStream out) {
+    XmlWriter writer = XmlWriter.of(out, X.PREFIX);
+    xml(writer);
+    writer.flush();
   }
 
-  private List<String> getChildren() {
-    return getMappings().map(x -> x.xml(1)).collect(Collectors.toList());
+  void xml(XmlWriter out) {
+    out.declaration()
+      .start(X.CODE_MAPPING)
+      .attribute(X.XML_XSI, X.NS)
+      .attribute(X.INPUT_XMLNS, X.CODE_MAPPING_NS)
+      .attribute(X.SCHEMA, X.CODE_MAPPING_SCHEMA)
+      .attribute(X.ID, id);
+    mappings.forEach(m -> m.xml(out));
+    out.end();
   }
 
   /** Returns a builder that can create instances of this class. */
@@ -86,7 +173,7 @@ public class CodeMappingCfg {
    * @author Christoffer Fink
    */
   public static class Builder {
-    private static long counter = 0;
+    private static final AtomicLong counter = new AtomicLong();
     private boolean idSet = false;
     private String id = DEFAULT_ID;
     private Collection<MappingCfg> mappings = new ArrayList<>();
@@ -115,7 +202,7 @@ public class CodeMappingCfg {
       if (idSet) {
         return id;
       } else {
-        return DEFAULT_ID + "_" + counter++;
+        return DEFAULT_ID + "_" + counter.getAndIncrement();
       }
     }
   }
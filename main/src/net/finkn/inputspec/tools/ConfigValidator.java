@@ -21,34 +21,724 @@ SOFTWARE.
 package net.finkn.inputspec.tools;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+
+import org.w3c.dom.ls.DOMImplementationLS;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+import org.xml.sax.SAXException;
+
+import se.miun.itm.input.model.InPUTException;
 import se.miun.itm.input.model.design.DesignSpace;
+import se.miun.itm.input.model.design.IDesignSpace;
 
 /**
  * A tool for checking whether a configuration is legal.
  * This is a very early and basic version. A more advanced version might
  * make a good candidate for a stand-alone tool.
+ * <p>
+ * By default, a configuration is validated by constructing a design space,
+ * which is the final word on legality but also slow. A validator that is
+ * created with a {@link #getInstance(Path) schema catalog} can additionally
+ * check documents against the InPUT XML schemas only. The catalog is a local
+ * directory containing the schema files (such as "DesignSpace.xsd" and
+ * "CodeMappings.xsd"). Schema locations under {@value X#INPUT_URL} are
+ * resolved to files in that directory, and nothing is ever fetched over the
+ * network. The schemas in a catalog are compiled only once, and the compiled
+ * schemas are shared by all validators and threads.
+ * <p>
+ * Before a design space is constructed, the configuration is
+ * {@link #precheck(DesignSpaceCfg) prechecked} directly on the object model.
+ * Configurations with problems that InPUT is known to refuse are rejected
+ * right away, without involving InPUT at all.
+ * <p>
+ * Large numbers of configurations can be {@link #validateAll(Collection)
+ * validated in parallel}. Each configuration gets a unique ID before its
+ * design space is constructed, so that concurrent validations do not
+ * interfere through the InPUT cache (see {@code DesignSpaceCachingTest}).
+ * The verdicts are remembered by content fingerprint, so a configuration
+ * that has been validated before by the same validator, even under another
+ * ID, is not validated again. Remembered verdicts are never evicted, but
+ * they are small and can be {@link #clearVerdicts() cleared}.
+ * <p>
+ * InPUT keeps every design space it has constructed, by ID. So that a large
+ * batch does not fill the memory with isolated design spaces, batches are
+ * validated in chunks of {@value #CHUNK}, and all of InPUT's stores are
+ * {@link TestCleanup#cleanup() released} after each chunk. Batches should
+ * therefore not be validated while other code relies on InPUT remembering
+ * its design spaces.
  *
  * @author Christoffer Fink
  */
 public class ConfigValidator {
-  private ConfigValidator() {
+  private static final String SUFFIX = ".xsd";
+  private static final Map<Path, Schema> schemas = new ConcurrentHashMap<>();
+  private static final String ISOLATED_ID = "Validated_";
+  private static final AtomicLong counter = new AtomicLong();
+  private static final Pattern ATTRIBUTE =
+    Pattern.compile("\\s+([^\\s=/>]+)\\s*=\\s*(\"[^\"]*\"|'[^']*')");
+  /** The number of configurations validated between releases. */
+  static final int CHUNK = 1000;
+
+  private final Schema schema;
+  private final DesignSpaceCache.Factory factory;
+  private final DocumentFactory documents;
+  private final Runnable release;
+  private final Map<Fingerprint, Verdict> verdicts = new ConcurrentHashMap<>();
+
+  private ConfigValidator(Schema schema, DesignSpaceCache.Factory factory,
+      DocumentFactory documents, Runnable release) {
+    this.schema = schema;
+    this.factory = factory;
+    this.documents = documents;
+    this.release = release;
   }
 
   public void validParamConfig(ParamCfg ... param) {
     validDesignSpaceConfig(DesignSpaceCfg.builder().param(param).build());
   }
   public void validDesignSpaceConfig(DesignSpaceCfg space) {
-    validDesignSpaceConfig(space.xml());
+    for (Problem problem : precheck(space)) {
+      if (problem.getKind().isIllegal()) {
+        throw new AssertionError("Illegal config. Error: " + problem);
+      }
+    }
+    validate(space::getDesignSpaceStream);
   }
   public void validDesignSpaceConfig(String spaceXml) {
+    validate(() -> new ByteArrayInputStream(
+        spaceXml.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Checks that the design space document conforms to the schemas.
+   * @throws IllegalStateException if this validator has no schema catalog
+   */
+  public void validDesignSpaceSchema(DesignSpaceCfg space) {
+    XmlBuffer buffer = XmlBuffer.get(XmlBuffer.SPACE);
+    space.xml(buffer);
+    validateSchema(new StreamSource(buffer.getInputStream()));
+  }
+
+  /**
+   * Checks that the code mapping document conforms to the schemas.
+   * @throws IllegalStateException if this validator has no schema catalog
+   */
+  public void validCodeMappingSchema(CodeMappingCfg mapping) {
+    XmlBuffer buffer = XmlBuffer.get(XmlBuffer.MAPPING);
+    mapping.xml(buffer);
+    validateSchema(new StreamSource(buffer.getInputStream()));
+  }
+
+  /**
+   * Checks that the document (a design space or a code mapping) conforms to
+   * the schemas.
+   * @throws IllegalStateException if this validator has no schema catalog
+   */
+  public void validSchema(String xml) {
+    validateSchema(new StreamSource(new StringReader(xml)));
+  }
+
+  /**
+   * Checks the structure of the parameters without constructing a design
+   * space. See {@link #precheck(DesignSpaceCfg)}.
+   */
+  public List<Problem> precheck(ParamCfg ... params) {
+    return precheck(DesignSpaceCfg.builder().param(params).build());
+  }
+
+  /**
+   * Checks the structure of the configuration without constructing a design
+   * space. The problems are reported in declaration order. An empty list does
+   * not mean that the configuration is legal, only that none of the known
+   * problems were found. The cost is linear in the number of parameters and
+   * limits.
+   */
+  public List<Problem> precheck(DesignSpaceCfg space) {
+    List<Problem> result = new ArrayList<>();
+    if (!space.getId().isPresent()) {
+      result.add(new Problem(Kind.MISSING_ID, null, "design space"));
+    }
+    boolean parsed = true;
+    for (Traversal.Node node : (Iterable<Traversal.Node>)
+        Traversal.of(space).preOrder()::iterator) {
+      ParamCfg param = node.getParam();
+      String id = node.getId();
+      if (param.getId() == null) {
+        result.add(new Problem(Kind.MISSING_ID, id, "parameter"));
+      }
+      if (param.getParamType() == ParamCfg.ParamType.NUMERIC) {
+        parsed &= checkLimits(id, param.getRange(), result);
+      }
+    }
+    for (IdIndex.Conflict conflict : IdIndex.of(space).getConflicts()) {
+      Kind kind = conflict.getKind() == IdIndex.Kind.OUTER_AFTER_INNER
+        ? Kind.OUTER_AFTER_INNER : Kind.DUPLICATE_ID;
+      result.add(new Problem(kind,
+            conflict.getSecond().getId(), conflict.toString()));
+    }
+    // Dependencies can only be analyzed once all the limits are parsed.
+    if (parsed) {
+      checkReferences(ImpactIndex.of(space), result);
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  // Returns false if some limit could not be parsed.
+  private static boolean checkLimits(String id, Range range,
+      List<Problem> result) {
+    if (range.inclMin().isPresent() && range.exclMin().isPresent()) {
+      result.add(new Problem(Kind.MIXED_LIMITS, id, "min"));
+    }
+    if (range.inclMax().isPresent() && range.exclMax().isPresent()) {
+      result.add(new Problem(Kind.MIXED_LIMITS, id, "max"));
+    }
+    int mins = 0;
+    int maxs = 0;
+    try {
+      mins = checkLimit(id, range.inclMin().orElse(
+            range.exclMin().orElse(null)), result);
+      maxs = checkLimit(id, range.inclMax().orElse(
+            range.exclMax().orElse(null)), result);
+    } catch (IllegalArgumentException e) {
+      result.add(new Problem(Kind.UNPARSED_LIMIT, id, e.getMessage()));
+      return false;
+    }
+    if (maxs > 1 && maxs > mins) {
+      result.add(new Problem(Kind.MISSING_MIN, id,
+            mins + " mins, " + maxs + " maxes"));
+    } else if (mins > 1 && maxs < mins) {
+      result.add(new Problem(Kind.MISSING_MAX, id,
+            mins + " mins, " + maxs + " maxes"));
+    }
+    return true;
+  }
+
+  // A limit is either a list of numbers, or a list of expressions where at
+  // least one references a parameter. A plain reference is illegal.
+  private static int checkLimit(String id, String limit,
+      List<Problem> result) {
+    List<Expression> split = Expression.split(limit);
+    boolean literal = true;
+    boolean references = false;
+    for (Expression e : split) {
+      String s = e.toString();
+      literal &= isNumber(s);
+      references |= e.hasReferences();
+      if (e.getReferences().contains(s)) {
+        result.add(new Problem(Kind.BAD_LIMIT, id, "plain reference " + s));
+      }
+    }
+    if (!literal && !references) {
+      result.add(new Problem(Kind.BAD_LIMIT, id,
+            "expression without reference in " + limit));
+    }
+    return split.size();
+  }
+
+  private static void checkReferences(ImpactIndex index,
+      List<Problem> result) {
+    for (String id : index.getIds()) {
+      for (String ref : index.getDependencies(id)) {
+        if (!index.getIds().contains(ref)) {
+          result.add(new Problem(Kind.UNRESOLVED_REFERENCE, id, ref));
+        }
+      }
+      if (index.getCircular().contains(id)) {
+        result.add(new Problem(Kind.CIRCULAR, id, "circular dependency"));
+      }
+    }
+  }
+
+  private static boolean isNumber(String s) {
+    try {
+      Double.parseDouble(s);
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Validates the configurations in parallel. The verdicts are returned in
+   * the same order as the configurations.
+   * @throws IllegalStateException if the validation is interrupted
+   */
+  public List<Verdict> validateAll(Collection<DesignSpaceCfg> spaces) {
+    List<DesignSpaceCfg> list = new ArrayList<>(spaces);
+    return validateAll(list.size(), i -> verdict(i, list.get(i)));
+  }
+
+  /** Collects and validates the configurations. */
+  public List<Verdict> validateAll(Stream<DesignSpaceCfg> spaces) {
+    return validateAll(spaces.collect(Collectors.toList()));
+  }
+
+  /**
+   * Validates the design space documents in parallel. The verdicts are
+   * returned in the same order as the documents. Each document is given
+   * to InPUT as it is, except that the ID of the root element is replaced
+   * by a unique one, so that documents that share an ID do not interfere.
+   * A document that can be {@link XmlReader read} is
+   * {@link #precheck(DesignSpaceCfg) prechecked} first. The verdicts are
+   * remembered by the text of the document.
+   * @throws IllegalStateException if the validation is interrupted
+   */
+  public List<Verdict> validateAllXml(Collection<String> spaceXml) {
+    List<String> list = new ArrayList<>(spaceXml);
+    return validateAll(list.size(), i -> verdict(i, list.get(i)));
+  }
+
+  /** Collects and validates the design space documents. */
+  public List<Verdict> validateAllXml(Stream<String> spaceXml) {
+    return validateAllXml(spaceXml.collect(Collectors.toList()));
+  }
+
+  /** Forgets all remembered verdicts. */
+  public void clearVerdicts() {
+    verdicts.clear();
+  }
+
+  // Nothing is being constructed between chunks, so releasing is safe.
+  private List<Verdict> validateAll(int n, IntFunction<Verdict> verdict) {
+    ForkJoinPool pool =
+      new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    List<Verdict> result = new ArrayList<>(n);
+    try {
+      for (int start = 0; start < n; start += CHUNK) {
+        int from = start;
+        int to = Math.min(n, start + CHUNK);
+        result.addAll(pool.submit(() -> IntStream.range(from, to).parallel()
+            .mapToObj(verdict)
+            .collect(Collectors.toList())).get());
+        release.run();
+      }
+      return result;
+    } catch (InterruptedException | ExecutionException e) {
+      throw new IllegalStateException("Validation failed.", e);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  // The key ignores the ID, except for whether there is one.
+  private Verdict verdict(int index, DesignSpaceCfg space) {
+    Fingerprint key = Fingerprint.hasher()
+      .add(space.contentFingerprint())
+      .add(space.getId().isPresent() ? 1 : 0)
+      .build();
+    return remembered(index, key, () -> {
+      List<Problem> problems = precheck(space);
+      for (Problem problem : problems) {
+        if (problem.getKind().isIllegal()) {
+          return new Verdict(problems, problem.toString());
+        }
+      }
+      String id = ISOLATED_ID + counter.getAndIncrement();
+      try {
+        factory.create(space.withId(id));
+        return new Verdict(problems, null);
+      } catch (Throwable e) {
+        return new Verdict(problems, String.valueOf(e.getMessage()));
+      }
+    });
+  }
+
+  private Verdict verdict(int index, String spaceXml) {
+    return remembered(index, Fingerprint.of(spaceXml), () -> {
+      List<Problem> problems = Collections.emptyList();
+      try {
+        problems = precheck(XmlReader.designSpace(spaceXml));
+      } catch (IllegalArgumentException e) {
+        // Not readable as a configuration. Leave it to InPUT.
+      }
+      for (Problem problem : problems) {
+        if (problem.getKind().isIllegal()) {
+          return new Verdict(problems, problem.toString());
+        }
+      }
+      String isolated =
+        withRootId(spaceXml, ISOLATED_ID + counter.getAndIncrement());
+      try {
+        documents.create(new ByteArrayInputStream(
+              isolated.getBytes(StandardCharsets.UTF_8)));
+        return new Verdict(problems, null);
+      } catch (Throwable e) {
+        return new Verdict(problems, String.valueOf(e.getMessage()));
+      }
+    });
+  }
+
+  // Replaces the value of the id attribute of the root element. Documents
+  // without one (or that cannot be scanned) are returned as they are.
+  private static String withRootId(String xml, String id) {
+    int start = 0;
+    while (true) {
+      while (start < xml.length()
+          && (Character.isWhitespace(xml.charAt(start))
+            || xml.charAt(start) == '\uFEFF')) {
+        start++;
+      }
+      // Skip the declaration, processing instructions and comments.
+      String close = xml.startsWith("<?", start) ? "?>"
+        : xml.startsWith("<!--", start) ? "-->" : null;
+      if (close == null) {
+        break;
+      }
+      int end = xml.indexOf(close, start);
+      if (end < 0) {
+        return xml;
+      }
+      start = end + close.length();
+    }
+    if (!xml.startsWith("<", start) || xml.startsWith("<!", start)) {
+      return xml;
+    }
+    Matcher m = ATTRIBUTE.matcher(xml);
+    int name = start + 1;
+    while (name < xml.length() && !Character.isWhitespace(xml.charAt(name))
+        && xml.charAt(name) != '>' && xml.charAt(name) != '/') {
+      name++;
+    }
+    for (m.region(name, xml.length()); m.lookingAt();
+        m.region(m.end(), xml.length())) {
+      if (m.group(1).equals(X.ID)) {
+        return xml.substring(0, m.start(2)) + '"' + id + '"'
+          + xml.substring(m.end(2));
+      }
+    }
+    return xml;
+  }
+
+  // Concurrent validations of the same configuration may both compute the
+  // verdict. They agree, so it does not matter which one is kept.
+  private Verdict remembered(int index, Fingerprint key,
+      Supplier<Verdict> compute) {
+    Verdict verdict = verdicts.get(key);
+    if (verdict != null) {
+      return verdict.at(index, true);
+    }
+    verdict = compute.get();
+    verdicts.putIfAbsent(key, verdict);
+    return verdict.at(index, false);
+  }
+
+  private void validate(Supplier<InputStream> spaceXml) {
     try {
-      new DesignSpace(new ByteArrayInputStream(spaceXml.getBytes()));
+      documents.create(spaceXml.get());
     } catch (Throwable e) {
       throw new AssertionError("Illegal config. Error: " + e.getMessage());
     }
   }
 
+  // A compiled schema is thread-safe, but validators are not.
+  private void validateSchema(Source document) {
+    if (schema == null) {
+      throw new IllegalStateException("No schema catalog");
+    }
+    Validator validator = schema.newValidator();
+    try {
+      validator.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+      validator.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+      validator.validate(document);
+    } catch (SAXException e) {
+      throw new AssertionError("Illegal config. Error: " + e.getMessage());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Returns the compiled schemas, or null if there is no catalog. */
+  Schema getSchema() {
+    return schema;
+  }
+
   public static ConfigValidator getInstance() {
-    return new ConfigValidator();
+    return new ConfigValidator(null, DesignSpaceCfg::getDesignSpace,
+        DesignSpace::new, TestCleanup::cleanup);
+  }
+
+  /** Returns a validator that constructs design spaces using the factory. */
+  static ConfigValidator getInstance(DesignSpaceCache.Factory factory) {
+    return getInstance(factory, DesignSpace::new);
+  }
+
+  /**
+   * Returns a validator that constructs design spaces using the factories,
+   * from configurations and from documents, respectively.
+   */
+  static ConfigValidator getInstance(DesignSpaceCache.Factory factory,
+      DocumentFactory documents) {
+    return getInstance(factory, documents, TestCleanup::cleanup);
+  }
+
+  /**
+   * Returns a validator that constructs design spaces using the factories,
+   * and that calls {@code release} instead of releasing InPUT's stores.
+   */
+  static ConfigValidator getInstance(DesignSpaceCache.Factory factory,
+      DocumentFactory documents, Runnable release) {
+    return new ConfigValidator(null, factory, documents, release);
+  }
+
+  /**
+   * Returns a validator that can also check documents against the schemas
+   * in the catalog directory. Every schema file directly in the directory
+   * is compiled, the first time the directory is used.
+   * @throws IllegalArgumentException if the directory contains no schemas,
+   * or if the schemas cannot be compiled
+   * @throws UncheckedIOException if the directory cannot be read
+   */
+  public static ConfigValidator getInstance(Path catalog) {
+    Path dir = catalog.toAbsolutePath().normalize();
+    return new ConfigValidator(schemas.computeIfAbsent(dir,
+          ConfigValidator::compile), DesignSpaceCfg::getDesignSpace,
+        DesignSpace::new, TestCleanup::cleanup);
+  }
+
+  private static Schema compile(Path catalog) {
+    List<Source> sources = new ArrayList<>();
+    try (Stream<Path> files = Files.list(catalog)) {
+      files.sorted()
+        .filter(p -> p.getFileName().toString().endsWith(SUFFIX))
+        .forEach(p -> sources.add(new StreamSource(p.toUri().toString())));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (sources.isEmpty()) {
+      throw new IllegalArgumentException("No schemas in " + catalog);
+    }
+    SchemaFactory factory =
+      SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+    try {
+      // Only local files may be read, and only the catalog resolves them.
+      factory.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+      factory.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "file");
+      factory.setResourceResolver(resolver(catalog));
+      return factory.newSchema(sources.toArray(new Source[sources.size()]));
+    } catch (SAXException e) {
+      throw new IllegalArgumentException("Bad schemas in " + catalog
+          + ": " + e.getMessage(), e);
+    }
+  }
+
+  // Maps schemas on the InPUT site, and relative ones, into the catalog.
+  // Anything else is refused rather than downloaded.
+  private static LSResourceResolver resolver(Path catalog) {
+    DOMImplementationLS ls = getDomImplementation();
+    return (type, namespace, publicId, systemId, baseUri) -> {
+      if (systemId == null) {
+        return null;
+      }
+      String name = systemId.substring(systemId.lastIndexOf('/') + 1);
+      boolean local = systemId.startsWith(X.INPUT_URL + "/")
+        || systemId.startsWith(catalog.toUri().toString())
+        || !systemId.contains(":");
+      Path file = catalog.resolve(name).normalize();
+      if (!local || !file.startsWith(catalog) || !Files.isRegularFile(file)) {
+        throw new IllegalArgumentException("Schema not in catalog: "
+            + systemId);
+      }
+      LSInput input = ls.createLSInput();
+      input.setPublicId(publicId);
+      input.setSystemId(file.toUri().toString());
+      input.setBaseURI(baseUri);
+      return input;
+    };
+  }
+
+  private static DOMImplementationLS getDomImplementation() {
+    try {
+      return (DOMImplementationLS) DocumentBuilderFactory.newInstance()
+        .newDocumentBuilder().getDOMImplementation();
+    } catch (ParserConfigurationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Constructs design spaces from documents. */
+  interface DocumentFactory {
+    IDesignSpace create(InputStream spaceXml) throws InPUTException;
+  }
+
+  /** The kinds of structural problems that a precheck can find. */
+  public enum Kind {
+    /** The design space or a parameter has no ID. */
+    MISSING_ID(true),
+    /** An inclusive and an exclusive limit on the same side. */
+    MIXED_LIMITS(true),
+    /** A multi-range with more max limits than min limits. */
+    MISSING_MIN(true),
+    /** A plain reference, or an expression without references. */
+    BAD_LIMIT(true),
+    /** A parameter that is part of, or depends on, a circular dependency. */
+    CIRCULAR(true),
+    /**
+     * An outer parameter with the same absolute ID as an earlier nested
+     * parameter (see {@link IdIndex}). Creating a design fails.
+     */
+    OUTER_AFTER_INNER(true),
+    /**
+     * A multi-range with fewer max limits than min limits. Such a design
+     * space can be created, but generating values fails randomly.
+     */
+    MISSING_MAX(false),
+    /**
+     * Other colliding IDs (see {@link IdIndex}). InPUT ignores one of the
+     * parameters or derives surprising IDs.
+     */
+    DUPLICATE_ID(false),
+    /** A reference to a parameter that does not exist. It resolves to 0. */
+    UNRESOLVED_REFERENCE(false),
+    /**
+     * A limit that this tool cannot {@link Expression parse}, such as one
+     * that calls a Math function it does not know. Whether the limit is
+     * legal is left for InPUT to decide.
+     */
+    UNPARSED_LIMIT(false);
+
+    private final boolean illegal;
+
+    private Kind(boolean illegal) {
+      this.illegal = illegal;
+    }
+
+    /**
+     * Checks whether InPUT refuses configurations with this problem, as
+     * opposed to accepting them with surprising results.
+     */
+    public boolean isIllegal() {
+      return illegal;
+    }
+  }
+
+  /**
+   * A structural problem found by a precheck.
+   * This class is immutable.
+   */
+  public static class Problem {
+    private final Kind kind;
+    private final String id;
+    private final String detail;
+
+    private Problem(Kind kind, String id, String detail) {
+      this.kind = kind;
+      this.id = id;
+      this.detail = detail;
+    }
+
+    public Kind getKind() {
+      return kind;
+    }
+
+    /**
+     * Returns the absolute ID of the offending parameter, or null if the
+     * problem concerns the design space itself.
+     */
+    public String getId() {
+      return id;
+    }
+
+    /** Returns a description, such as the offending limit or reference. */
+    public String getDetail() {
+      return detail;
+    }
+
+    @Override
+    public String toString() {
+      return kind + " " + (id == null ? "" : id + " ") + detail;
+    }
+  }
+
+  /**
+   * The outcome of validating one configuration in a batch.
+   * This class is immutable.
+   */
+  public static class Verdict {
+    private final int index;
+    private final boolean cached;
+    private final List<Problem> problems;
+    private final Optional<String> error;
+
+    private Verdict(List<Problem> problems, String error) {
+      this(-1, false, problems, Optional.ofNullable(error));
+    }
+
+    private Verdict(int index, boolean cached, List<Problem> problems,
+        Optional<String> error) {
+      this.index = index;
+      this.cached = cached;
+      this.problems = problems;
+      this.error = error;
+    }
+
+    private Verdict at(int index, boolean cached) {
+      return new Verdict(index, cached, problems, error);
+    }
+
+    /** Returns the position of the configuration in the batch. */
+    public int getIndex() {
+      return index;
+    }
+
+    public boolean isLegal() {
+      return !error.isPresent();
+    }
+
+    /** Returns why the configuration is illegal, if it is. */
+    public Optional<String> getError() {
+      return error;
+    }
+
+    /**
+     * Returns the problems found by the precheck. A legal configuration may
+     * still have problems that InPUT accepts.
+     */
+    public List<Problem> getProblems() {
+      return problems;
+    }
+
+    /** Checks whether the verdict was remembered from an earlier one. */
+    public boolean isCached() {
+      return cached;
+    }
+
+    @Override
+    public String toString() {
+      return index + ": " + error.map(e -> "illegal (" + e + ")")
+        .orElse("legal") + (cached ? " (cached)" : "");
+    }
   }
 }
@@ -0,0 +1,168 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import se.miun.itm.input.model.InPUTException;
+import se.miun.itm.input.model.design.IDesignSpace;
+
+/**
+ * Content-addressed cache of design spaces.
+ * As {@code DesignSpaceCachingTest} demonstrates, InPUT caches design spaces
+ * by ID, which is why the {@link DesignSpaceCfg.Builder builder} generates
+ * unique IDs. The downside is that every structurally identical
+ * configuration is parsed and constructed again. This cache is keyed by the
+ * {@link DesignSpaceCfg#contentFingerprint() content fingerprint} instead,
+ * so configurations that only differ in their IDs share a design space, and
+ * repeated configurations skip serialization, parsing and construction.
+ * <p>
+ * Note that a cached design space keeps the ID of the configuration it was
+ * created from. The cache should only be used for design spaces that are not
+ * modified (such as with {@code setFixed}), since modifications are visible
+ * to everyone who gets the same design space.
+ * <p>
+ * The cache has a bounded size and evicts the least recently used design
+ * space. Construction happens outside the lock, so the same configuration
+ * may occasionally be constructed twice by concurrent threads; the first
+ * one to finish is kept. Failed constructions are not cached.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Christoffer Fink
+ */
+public class DesignSpaceCache {
+  private final int capacity;
+  private final Factory factory;
+  private final Map<Fingerprint, IDesignSpace> spaces;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  private DesignSpaceCache(int capacity, Factory factory) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be positive.");
+    }
+    this.capacity = capacity;
+    this.factory = factory;
+    this.spaces = new LinkedHashMap<Fingerprint, IDesignSpace>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(
+          Map.Entry<Fingerprint, IDesignSpace> eldest) {
+        if (size() > DesignSpaceCache.this.capacity) {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /** Creates a cache that holds at most {@code capacity} design spaces. */
+  public static DesignSpaceCache of(int capacity) {
+    return of(capacity, DesignSpaceCfg::getDesignSpace);
+  }
+
+  static DesignSpaceCache of(int capacity, Factory factory) {
+    return new DesignSpaceCache(capacity, factory);
+  }
+
+  /**
+   * Returns a design space for the configuration, constructing it only if no
+   * configuration with the same content is cached.
+   * @throws InPUTException if the design space cannot be created
+   */
+  public IDesignSpace get(DesignSpaceCfg config) throws InPUTException {
+    Fingerprint key = config.contentFingerprint();
+    synchronized (spaces) {
+      IDesignSpace space = spaces.get(key);
+      if (space != null) {
+        hits++;
+        return space;
+      }
+      misses++;
+    }
+    IDesignSpace space = factory.create(config);
+    synchronized (spaces) {
+      IDesignSpace existing = spaces.putIfAbsent(key, space);
+      return existing == null ? space : existing;
+    }
+  }
+
+  /** Removes all design spaces. The statistics are kept. */
+  public void clear() {
+    synchronized (spaces) {
+      spaces.clear();
+    }
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /** Returns the number of cached design spaces. */
+  public int size() {
+    synchronized (spaces) {
+      return spaces.size();
+    }
+  }
+
+  public long getHits() {
+    synchronized (spaces) {
+      return hits;
+    }
+  }
+
+  public long getMisses() {
+    synchronized (spaces) {
+      return misses;
+    }
+  }
+
+  public long getEvictions() {
+    synchronized (spaces) {
+      return evictions;
+    }
+  }
+
+  /** Returns the fraction of lookups that were hits (0 if none). */
+  public double getHitRate() {
+    synchronized (spaces) {
+      long total = hits + misses;
+      return total == 0 ? 0 : (double) hits / total;
+    }
+  }
+
+  @Override
+  public String toString() {
+    synchronized (spaces) {
+      return String.format("%d/%d spaces, %d hits, %d misses, %d evictions",
+          spaces.size(), capacity, hits, misses, evictions);
+    }
+  }
+
+  /** Creates design spaces from configurations. */
+  @FunctionalInterface
+  interface Factory {
+    IDesignSpace create(DesignSpaceCfg config) throws InPUTException;
+  }
+}
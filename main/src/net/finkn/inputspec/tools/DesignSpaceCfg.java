@@ -26,14 +26,11 @@ import se.miun.itm.input.model.design.DesignSpace;
 import se.miun.itm.input.model.design.IDesignSpace;
 
 import java.io.InputStream;
-import java.io.ByteArrayInputStream;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
 /**
@@ -49,14 +46,15 @@ public class DesignSpaceCfg {
   private final Optional<String> id;
   private final Optional<String> mappingRef;
   private final Optional<CodeMappingCfg> mapping;
-  private final Collection<ParamCfg> parameters;
-  private final Xml xml = Xml.getInstance().prefix(X.PREFIX);
+  private final PersistentList<ParamCfg> parameters;
+  private Fingerprint fingerprint;
+  private Fingerprint contentFingerprint;
 
-  private DesignSpaceCfg(Optional<String> id, Optional<String> ref, Optional<CodeMappingCfg> mapping, Collection<ParamCfg> params) {
+  private DesignSpaceCfg(Optional<String> id, Optional<String> ref, Optional<CodeMappingCfg> mapping, PersistentList<ParamCfg> params) {
     this.id = id;
     this.mappingRef = ref;
     this.mapping = mapping;
-    this.parameters = new ArrayList<>(params);
+    this.parameters = params;
   }
 
   public Optional<String> getId() {
@@ -75,6 +73,36 @@ public class DesignSpaceCfg {
     return parameters.stream();
   }
 
+  /**
+   * Returns the top-level parameter at the index.
+   * @throws IndexOutOfBoundsException if there is no such parameter
+   */
+  public ParamCfg getParameter(int index) {
+    return parameters.get(index);
+  }
+
+  /** Returns the number of top-level parameters. */
+  public int getParameterCount() {
+    return parameters.size();
+  }
+
+  /** Returns a copy of this design space with a different ID. */
+  public DesignSpaceCfg withId(String id) {
+    return new DesignSpaceCfg(Optional.ofNullable(id), mappingRef, mapping,
+        parameters);
+  }
+
+  /**
+   * Returns a copy of this design space where the top-level parameter at the
+   * index has been replaced. All other parameters are shared, so this only
+   * allocates O(log n) for n parameters.
+   * @throws IndexOutOfBoundsException if there is no such parameter
+   */
+  public DesignSpaceCfg withParameter(int index, ParamCfg param) {
+    return new DesignSpaceCfg(id, mappingRef, mapping,
+        parameters.with(index, param));
+  }
+
   public static Builder builder() {
     return new Builder();
   }
@@ -93,31 +121,124 @@ public class DesignSpaceCfg {
     return new DesignSpace(spaceStream);
   }
 
+  /**
+   * Returns the content fingerprint of this design space, computed from the
+   * fingerprints of the parameters and the code mapping.
+   * Design spaces with the same XML documents have the same fingerprint.
+   */
+  public Fingerprint fingerprint() {
+    Fingerprint result = fingerprint;
+    if (result == null) {
+      result = hash(id.orElse(null), false);
+      fingerprint = result;
+    }
+    return result;
+  }
+
+  /**
+   * Returns a fingerprint of everything except the IDs of the design space
+   * and its code mapping. Design spaces that only differ in their IDs (such
+   * as the generated default IDs) have the same content fingerprint.
+   */
+  public Fingerprint contentFingerprint() {
+    Fingerprint result = contentFingerprint;
+    if (result == null) {
+      result = hash(null, true);
+      contentFingerprint = result;
+    }
+    return result;
+  }
+
+  private Fingerprint hash(String id, boolean content) {
+    Fingerprint.Hasher hasher = Fingerprint.hasher()
+      .add(X.DESIGN_SPACE)
+      .add(id)
+      .add(mappingRef.orElse(null))
+      .add(mapping.isPresent() ? 1 : 0);
+    mapping.ifPresent(m -> hasher.add(content
+          ? m.contentFingerprint() : m.fingerprint()));
+    hasher.add(parameters.size());
+    parameters.forEach(p -> hasher.add(p.fingerprint()));
+    return hasher.build();
+  }
+
+  /**
+   * Checks whether the design spaces are structurally equal, meaning that they
+   * have the same XML. Design spaces with different (cached) fingerprints are
+   * rejected in constant time.
+   * @see Difference
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof DesignSpaceCfg)) {
+      return false;
+    }
+    DesignSpaceCfg that = (DesignSpaceCfg) o;
+    return fingerprint().equals(that.fingerprint())
+      && !Difference.of(this, that).isPresent();
+  }
+
+  /** Returns a hash code derived from the fingerprint. */
+  @Override
+  public int hashCode() {
+    return fingerprint().hashCode();
+  }
+
+  /**
+   * Returns the XML document. The serialization is canonical: attributes
+   * always come in the same order, so equal configurations give equal
+   * documents.
+   */
   public String xml() {
-    String root = xml.e(X.DESIGN_SPACE, getAttributes(), getChildren());
-    return xml.declaration() + "\n" + root;
+    StringBuilder sb = new StringBuilder();
+    xml(XmlWriter.of(sb, X.PREFIX));
+    return sb.toString();
   }
 
-  private InputStream getCodeMappingStream() {
-    return new ByteArrayInputStream(mapping.get().xml().getBytes());
+  /**
+   * Streams the XML document to the writer.
+   * @throws UncheckedIOException if writing fails
+   */
+  public void xml(Writer out) {
+    xml(XmlWriter.of(out, X.PREFIX));
   }
 
-  private InputStream getDesignSpaceStream() {
-    return new ByteArrayInputStream(xml().getBytes());
+  /**
+   * Streams the XML document to the output stream, encoded as UTF-8.
+   * @throws UncheckedIOException if writing fails
+   */
+  public void xml(OutputStream out) {
+    XmlWriter writer = XmlWriter.of(out, X.PREFIX);
+    xml(writer);
+    writer.flush();
   }
 
-  private Map<String, Optional<? extends Object>> getAttributes() {
-    Map<String, Optional<? extends Object>> attrib = new HashMap<>();
-    attrib.put(X.XML_XSI, Optional.of(X.NS));
-    attrib.put(X.INPUT_XMLNS, Optional.of(X.SPACE_NS));
-    attrib.put(X.SCHEMA, Optional.of(X.SPACE_SCHEMA));
-    attrib.put(X.ID, id);
-    attrib.put(X.MAPPING_REF, mappingRef);
-    return attrib;
+  void xml(XmlWriter out) {
+    out.declaration()
+      .start(X.DESIGN_SPACE)
+      .attribute(X.XML_XSI, X.NS)
+      .attribute(X.INPUT_XMLNS, X.SPACE_NS)
+      .attribute(X.SCHEMA, X.SPACE_SCHEMA)
+      .attribute(X.ID, id)
+      .attribute(X.MAPPING_REF, mappingRef);
+    parameters.forEach(p -> p.xml(out));
+    out.end();
+  }
+
+  // The documents are serialized straight into reusable byte buffers.
+  private InputStream getCodeMappingStream() {
+    XmlBuffer buffer = XmlBuffer.get(XmlBuffer.MAPPING);
+    mapping.get().xml(buffer);
+    return buffer.getInputStream();
   }
 
-  private List<String> getChildren() {
-    return getParameters().map(x -> x.xml(1)).collect(Collectors.toList());
+  InputStream getDesignSpaceStream() {
+    XmlBuffer buffer = XmlBuffer.get(XmlBuffer.SPACE);
+    xml(buffer);
+    return buffer.getInputStream();
   }
 
   /**
@@ -138,12 +259,12 @@ public class DesignSpaceCfg {
    * @author Christoffer Fink
    */
   public static class Builder {
-    private static long counter = 0;
+    private static final AtomicLong counter = new AtomicLong();
 
     private Optional<String> id = Optional.empty();
     private Optional<String> ref = Optional.empty();
     private Optional<CodeMappingCfg> mapping = Optional.empty();
-    private Collection<ParamCfg> params = new ArrayList<>();
+    private PersistentList<ParamCfg> params = PersistentList.empty();
     private boolean idSet = false;
 
     private Builder() {
@@ -192,14 +313,14 @@ public class DesignSpaceCfg {
       if (param == null) {
         throw new NullPointerException("Cannot add null parameter.");
       }
-      params.add(param);
+      params = params.plus(param);
     }
 
     private Optional<String> getId() {
       if (idSet) {
         return id;
       } else {
-        return Optional.of(DEFAULT_ID + "_" + counter++);
+        return Optional.of(DEFAULT_ID + "_" + counter.getAndIncrement());
       }
     }
   }
@@ -0,0 +1,270 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * The first structural difference between two configurations.
+ * Configurations are compared attribute by attribute, with parameters (and
+ * mappings) in declaration order and nested parameters visited before the
+ * next sibling. The comparison stops at the first difference, and subtrees
+ * that are shared (the same instance on both sides) are skipped without
+ * being looked at. Nested parameters are compared without recursion, so
+ * arbitrarily deep parameters are fine.
+ * <p>
+ * This is also what the {@code equals} methods of the configuration classes
+ * use once the (cached) fingerprints match, so two configurations are equal
+ * exactly when there is no difference between them.
+ * <p>
+ * A difference is located by a path and an attribute. The path is the
+ * absolute dotted ID of the parameter (such as "Point.X"), or the ID of a
+ * mapping, and it is empty for the attributes of the design space or code
+ * mapping itself. IDs are taken from the left side. The attribute is an XML
+ * attribute name (such as "inclMin"), or one of the pseudo attributes
+ * {@value #COUNT} (the number of nested parameters or mappings) and
+ * {@value #KIND} (the kind of element).
+ * <p>
+ * This class is immutable.
+ *
+ * @author Christoffer Fink
+ * @see Fingerprint
+ */
+public final class Difference {
+  /** Pseudo attribute for the number of parameters or mappings. */
+  public static final String COUNT = "count";
+  /** Pseudo attribute for the kind of parameter or mapping. */
+  public static final String KIND = "kind";
+
+  private final String path;
+  private final String attribute;
+  private final Object left;
+  private final Object right;
+
+  private Difference(String path, String attribute, Object left,
+      Object right) {
+    this.path = path;
+    this.attribute = attribute;
+    this.left = left;
+    this.right = right;
+  }
+
+  /** Returns the first difference between the design spaces, if any. */
+  public static Optional<Difference> of(DesignSpaceCfg a, DesignSpaceCfg b) {
+    if (a == b) {
+      return Optional.empty();
+    }
+    Difference result = diff("", X.ID, a.getId(), b.getId());
+    result = result != null ? result
+      : diff("", X.MAPPING_REF, a.getMappingRef(), b.getMappingRef());
+    if (result == null) {
+      Optional<CodeMappingCfg> am = a.getMapping();
+      Optional<CodeMappingCfg> bm = b.getMapping();
+      if (am.isPresent() != bm.isPresent()) {
+        result = new Difference("", X.CODE_MAPPING, am.isPresent(),
+            bm.isPresent());
+      } else if (am.isPresent()) {
+        result = of(am.get(), bm.get()).orElse(null);
+      }
+    }
+    if (result == null) {
+      result = params(list(a), list(b));
+    }
+    return Optional.ofNullable(result);
+  }
+
+  /** Returns the first difference between the code mappings, if any. */
+  public static Optional<Difference> of(CodeMappingCfg a, CodeMappingCfg b) {
+    if (a == b) {
+      return Optional.empty();
+    }
+    Difference result = diff("", X.ID, a.getId(), b.getId());
+    if (result != null) {
+      return Optional.of(result);
+    }
+    List<MappingCfg> am = a.getMappings().collect(Collectors.toList());
+    List<MappingCfg> bm = b.getMappings().collect(Collectors.toList());
+    if (am.size() != bm.size()) {
+      return Optional.of(new Difference("", COUNT, am.size(), bm.size()));
+    }
+    for (int i = 0; i < am.size(); i++) {
+      Optional<Difference> d = of(am.get(i), bm.get(i));
+      if (d.isPresent()) {
+        return d;
+      }
+    }
+    return Optional.empty();
+  }
+
+  /** Returns the first difference between the mappings, if any. */
+  public static Optional<Difference> of(MappingCfg a, MappingCfg b) {
+    if (a == b) {
+      return Optional.empty();
+    }
+    String path = a.getId();
+    Difference result = diff(path, KIND, a.getMappingType(),
+        b.getMappingType());
+    result = result != null ? result : diff(path, X.ID, a.getId(), b.getId());
+    result = result != null ? result
+      : diff(path, X.TYPE, a.getType(), b.getType());
+    result = result != null ? result
+      : diff(path, X.ADD, a.getAdd(), b.getAdd());
+    result = result != null ? result
+      : diff(path, X.CONSTRUCTOR, a.getConstructor(), b.getConstructor());
+    result = result != null ? result
+      : diff(path, X.GET, a.getGet(), b.getGet());
+    result = result != null ? result
+      : diff(path, X.SET, a.getSet(), b.getSet());
+    return Optional.ofNullable(result);
+  }
+
+  /** Returns the first difference between the parameters, if any. */
+  public static Optional<Difference> of(ParamCfg a, ParamCfg b) {
+    return Optional.ofNullable(params(single(a), single(b)));
+  }
+
+  /**
+   * Returns the path to the differing parameter or mapping. The path is
+   * empty if the difference is in a design space or code mapping attribute.
+   */
+  public String getPath() {
+    return path;
+  }
+
+  /** Returns the name of the attribute that differs. */
+  public String getAttribute() {
+    return attribute;
+  }
+
+  /** Returns the value on the left side (possibly null). */
+  public Object getLeft() {
+    return left;
+  }
+
+  /** Returns the value on the right side (possibly null). */
+  public Object getRight() {
+    return right;
+  }
+
+  @Override
+  public String toString() {
+    String where = path.isEmpty() ? attribute : path + "@" + attribute;
+    return where + ": " + left + " != " + right;
+  }
+
+  // Pairs of parameter lists are compared in pre-order, using an explicit
+  // stack of sibling iterators. Paths are only built for the difference.
+  private static Difference params(List<ParamCfg> a, List<ParamCfg> b) {
+    if (a.size() != b.size()) {
+      return new Difference("", COUNT, a.size(), b.size());
+    }
+    Deque<Frame> stack = new ArrayDeque<>();
+    stack.push(new Frame(null, null, a.iterator(), b.iterator()));
+    while (!stack.isEmpty()) {
+      Frame top = stack.peek();
+      if (!top.left.hasNext()) {
+        stack.pop();
+        continue;
+      }
+      ParamCfg l = top.left.next();
+      ParamCfg r = top.right.next();
+      if (l == r) {
+        continue;
+      }
+      Frame frame = new Frame(top, l.getId(), l.nested().iterator(),
+          r.nested().iterator());
+      Difference d = param(l, r);
+      if (d != null) {
+        return new Difference(frame.path(), d.attribute, d.left, d.right);
+      }
+      stack.push(frame);
+    }
+    return null;
+  }
+
+  // Compares everything but the nested parameters themselves.
+  private static Difference param(ParamCfg a, ParamCfg b) {
+    Range ra = a.getRange();
+    Range rb = b.getRange();
+    Difference result = diff(null, KIND, a.getParamType(), b.getParamType());
+    result = result != null ? result : diff(null, X.ID, a.getId(), b.getId());
+    result = result != null ? result
+      : diff(null, X.TYPE, a.getType(), b.getType());
+    result = result != null ? result
+      : diff(null, X.FIXED, a.getFixed(), b.getFixed());
+    result = result != null ? result
+      : diff(null, X.INCLMIN, ra.inclMin(), rb.inclMin());
+    result = result != null ? result
+      : diff(null, X.EXCLMIN, ra.exclMin(), rb.exclMin());
+    result = result != null ? result
+      : diff(null, X.INCLMAX, ra.inclMax(), rb.inclMax());
+    result = result != null ? result
+      : diff(null, X.EXCLMAX, ra.exclMax(), rb.exclMax());
+    result = result != null ? result
+      : diff(null, COUNT, a.nested().size(), b.nested().size());
+    return result;
+  }
+
+  private static Difference diff(String path, String attribute, Object a,
+      Object b) {
+    Object left = a instanceof Optional ? ((Optional<?>) a).orElse(null) : a;
+    Object right = b instanceof Optional ? ((Optional<?>) b).orElse(null) : b;
+    return Objects.equals(left, right) ? null
+      : new Difference(path, attribute, left, right);
+  }
+
+  private static List<ParamCfg> list(DesignSpaceCfg space) {
+    return space.getParameters().collect(Collectors.toList());
+  }
+
+  private static List<ParamCfg> single(ParamCfg param) {
+    return PersistentList.<ParamCfg>empty().plus(param);
+  }
+
+  private static final class Frame {
+    private final Frame parent;
+    private final String id;
+    private final Iterator<ParamCfg> left;
+    private final Iterator<ParamCfg> right;
+
+    private Frame(Frame parent, String id, Iterator<ParamCfg> left,
+        Iterator<ParamCfg> right) {
+      this.parent = parent;
+      this.id = id;
+      this.left = left;
+      this.right = right;
+    }
+
+    private String path() {
+      Deque<String> ids = new ArrayDeque<>();
+      for (Frame f = this; f.id != null; f = f.parent) {
+        ids.push(f.id);
+      }
+      return String.join(MappingCfg.NESTING_DELIM, ids);
+    }
+  }
+}
@@ -0,0 +1,604 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A parsed parameter limit, such as {@code "3"}, {@code "A + 2"} or
+ * {@code "Math.sqrt(Point.X) * 2"}.
+ * Expressions can be evaluated for concrete values of the parameters they
+ * reference, or, using interval arithmetic, for a range of possible values.
+ * The latter makes it possible to reason about dependent parameters without
+ * sampling.
+ * <p>
+ * The supported syntax covers what the specification tests use: numbers,
+ * (possibly dotted) parameter references, the four arithmetic operators plus
+ * remainder, parentheses, {@code Math.PI}, {@code Math.E}, and a selection of
+ * {@code Math} functions. Anything else is rejected with an
+ * IllegalArgumentException. Note that an Expression only describes what the
+ * limit means. Whether InPUT accepts it (plain references are illegal, for
+ * example) is a different matter.
+ * <p>
+ * Interval evaluation is conservative. The result always contains every value
+ * the expression can take, but it may contain more.
+ * <p>
+ * This class is immutable.
+ *
+ * @author Christoffer Fink
+ */
+public class Expression {
+  private static final Hull UNBOUNDED =
+    new Hull(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+  private final String spec;
+  private final Node root;
+  private final Set<String> references;
+
+  private Expression(String spec, Node root) {
+    this.spec = spec;
+    this.root = root;
+    Set<String> refs = new LinkedHashSet<>();
+    root.collect(refs);
+    this.references = Collections.unmodifiableSet(refs);
+  }
+
+  /**
+   * Parses a single expression.
+   * @throws IllegalArgumentException if the expression cannot be parsed
+   */
+  public static Expression valueOf(String spec) {
+    Parser parser = new Parser(spec);
+    Node root = parser.expression();
+    parser.expectEnd();
+    return new Expression(spec.trim(), root);
+  }
+
+  /**
+   * Parses a (multi-range) limit, such as {@code "1, A + 1, Math.max(A,2)"}.
+   * The limit is split on commas that are not nested inside parentheses.
+   * A {@code null} limit results in an empty list.
+   */
+  public static List<Expression> split(String limit) {
+    List<Expression> result = new ArrayList<>();
+    if (limit == null) {
+      return result;
+    }
+    int depth = 0;
+    int start = 0;
+    for (int i = 0; i < limit.length(); i++) {
+      char c = limit.charAt(i);
+      if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      } else if (c == ',' && depth == 0) {
+        result.add(valueOf(limit.substring(start, i)));
+        start = i + 1;
+      }
+    }
+    result.add(valueOf(limit.substring(start)));
+    return result;
+  }
+
+  /** Returns the IDs of all referenced parameters, in order of appearance. */
+  public Set<String> getReferences() {
+    return references;
+  }
+
+  /** Checks whether this expression references any parameters. */
+  public boolean hasReferences() {
+    return !references.isEmpty();
+  }
+
+  /**
+   * Evaluates the expression, looking up the values of referenced
+   * parameters in the environment.
+   */
+  public double evaluate(ToDoubleFunction<String> env) {
+    return root.value(env);
+  }
+
+  /**
+   * Evaluates the expression using interval arithmetic, given the possible
+   * values of referenced parameters. The result is a closed interval (or
+   * unbounded on either side) that contains every possible value.
+   */
+  public Interval bounds(Function<String, Interval> env) {
+    Hull hull = root.hull(id -> Hull.of(env.apply(id)));
+    return Interval.of(hull.lo, true, hull.hi, true);
+  }
+
+  @Override
+  public String toString() {
+    return spec;
+  }
+
+  /** A closed interval used for the actual arithmetic. */
+  private static final class Hull {
+    final double lo;
+    final double hi;
+
+    Hull(double lo, double hi) {
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    static Hull of(Interval interval) {
+      double lo = interval.getInclMin().orElse(interval.getExclMin()
+          .orElse(Double.NEGATIVE_INFINITY)).doubleValue();
+      double hi = interval.getInclMax().orElse(interval.getExclMax()
+          .orElse(Double.POSITIVE_INFINITY)).doubleValue();
+      return new Hull(lo, hi);
+    }
+
+    static Hull point(double x) {
+      return new Hull(x, x);
+    }
+
+    /** Smallest hull containing all the values, or unbounded given a NaN. */
+    static Hull span(double ... values) {
+      double lo = Double.POSITIVE_INFINITY;
+      double hi = Double.NEGATIVE_INFINITY;
+      for (double x : values) {
+        if (Double.isNaN(x)) {
+          return UNBOUNDED;
+        }
+        lo = Math.min(lo, x);
+        hi = Math.max(hi, x);
+      }
+      return new Hull(lo, hi);
+    }
+
+    boolean isPoint() {
+      return lo == hi;
+    }
+
+    boolean contains(double x) {
+      return lo <= x && x <= hi;
+    }
+  }
+
+  /** Node in the expression tree. */
+  private static abstract class Node {
+    abstract double value(ToDoubleFunction<String> env);
+    abstract Hull hull(Function<String, Hull> env);
+    void collect(Set<String> refs) {
+    }
+  }
+
+  private static final class Num extends Node {
+    private final double value;
+
+    Num(double value) {
+      this.value = value;
+    }
+
+    @Override
+    double value(ToDoubleFunction<String> env) {
+      return value;
+    }
+
+    @Override
+    Hull hull(Function<String, Hull> env) {
+      return Hull.point(value);
+    }
+  }
+
+  private static final class Ref extends Node {
+    private final String id;
+
+    Ref(String id) {
+      this.id = id;
+    }
+
+    @Override
+    double value(ToDoubleFunction<String> env) {
+      return env.applyAsDouble(id);
+    }
+
+    @Override
+    Hull hull(Function<String, Hull> env) {
+      return env.apply(id);
+    }
+
+    @Override
+    void collect(Set<String> refs) {
+      refs.add(id);
+    }
+  }
+
+  private static final class Neg extends Node {
+    private final Node arg;
+
+    Neg(Node arg) {
+      this.arg = arg;
+    }
+
+    @Override
+    double value(ToDoubleFunction<String> env) {
+      return -arg.value(env);
+    }
+
+    @Override
+    Hull hull(Function<String, Hull> env) {
+      Hull h = arg.hull(env);
+      return new Hull(-h.hi, -h.lo);
+    }
+
+    @Override
+    void collect(Set<String> refs) {
+      arg.collect(refs);
+    }
+  }
+
+  private static final class Binary extends Node {
+    private final char op;
+    private final Node left;
+    private final Node right;
+
+    Binary(char op, Node left, Node right) {
+      this.op = op;
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    double value(ToDoubleFunction<String> env) {
+      double a = left.value(env);
+      double b = right.value(env);
+      switch (op) {
+        case '+': return a + b;
+        case '-': return a - b;
+        case '*': return a * b;
+        case '/': return a / b;
+        default:  return a % b;
+      }
+    }
+
+    @Override
+    Hull hull(Function<String, Hull> env) {
+      Hull a = left.hull(env);
+      Hull b = right.hull(env);
+      switch (op) {
+        case '+': return Hull.span(a.lo + b.lo, a.hi + b.hi);
+        case '-': return Hull.span(a.lo - b.hi, a.hi - b.lo);
+        case '*': return multiply(a, b);
+        case '/': return divide(a, b);
+        default:  return remainder(a, b);
+      }
+    }
+
+    @Override
+    void collect(Set<String> refs) {
+      left.collect(refs);
+      right.collect(refs);
+    }
+
+    private static Hull multiply(Hull a, Hull b) {
+      return Hull.span(times(a.lo, b.lo), times(a.lo, b.hi),
+          times(a.hi, b.lo), times(a.hi, b.hi));
+    }
+
+    // Treats 0 * infinity as 0, which is what the limit would be.
+    private static double times(double a, double b) {
+      return a == 0 || b == 0 ? 0 : a * b;
+    }
+
+    private static Hull divide(Hull a, Hull b) {
+      if (b.contains(0)) {
+        return UNBOUNDED;
+      }
+      return multiply(a, Hull.span(1 / b.lo, 1 / b.hi));
+    }
+
+    // The sign of the result follows the dividend, and its magnitude is
+    // below that of the divisor.
+    private static Hull remainder(Hull a, Hull b) {
+      double m = Math.max(Math.abs(b.lo), Math.abs(b.hi));
+      double lo = a.lo >= 0 ? 0 : Math.max(-m, a.lo);
+      double hi = a.hi <= 0 ? 0 : Math.min(m, a.hi);
+      return new Hull(lo, hi);
+    }
+  }
+
+  private static final class Call extends Node {
+    private final String name;
+    private final Node[] args;
+
+    Call(String name, List<Node> args) {
+      this.name = name;
+      this.args = args.toArray(new Node[args.size()]);
+      if (this.args.length != arity(name)) {
+        String msg = "Wrong number of arguments to Math." + name;
+        throw new IllegalArgumentException(msg);
+      }
+    }
+
+    private static int arity(String name) {
+      switch (name) {
+        case "abs": case "sqrt": case "cbrt": case "exp": case "log":
+        case "log10": case "floor": case "ceil": case "round": case "rint":
+        case "signum": case "sin": case "cos":
+          return 1;
+        case "max": case "min": case "pow":
+          return 2;
+        default:
+          throw new IllegalArgumentException("Unsupported function Math."
+              + name);
+      }
+    }
+
+    @Override
+    double value(ToDoubleFunction<String> env) {
+      double a = args[0].value(env);
+      double b = args.length > 1 ? args[1].value(env) : 0;
+      return apply(a, b);
+    }
+
+    private double apply(double a, double b) {
+      switch (name) {
+        case "abs":    return Math.abs(a);
+        case "sqrt":   return Math.sqrt(a);
+        case "cbrt":   return Math.cbrt(a);
+        case "exp":    return Math.exp(a);
+        case "log":    return Math.log(a);
+        case "log10":  return Math.log10(a);
+        case "floor":  return Math.floor(a);
+        case "ceil":   return Math.ceil(a);
+        case "round":  return Math.round(a);
+        case "rint":   return Math.rint(a);
+        case "signum": return Math.signum(a);
+        case "sin":    return Math.sin(a);
+        case "cos":    return Math.cos(a);
+        case "max":    return Math.max(a, b);
+        case "min":    return Math.min(a, b);
+        default:       return Math.pow(a, b);
+      }
+    }
+
+    @Override
+    Hull hull(Function<String, Hull> env) {
+      Hull a = args[0].hull(env);
+      Hull b = args.length > 1 ? args[1].hull(env) : Hull.point(0);
+      if (a.isPoint() && b.isPoint()) {
+        return Hull.span(apply(a.lo, b.lo));
+      }
+      switch (name) {
+        case "abs":
+          if (a.contains(0)) {
+            return new Hull(0, Math.max(-a.lo, a.hi));
+          }
+          return Hull.span(Math.abs(a.lo), Math.abs(a.hi));
+        case "sqrt": case "log": case "log10":
+          // Clamp to the domain. Outside of it there are no values.
+          Hull clamped = new Hull(Math.max(a.lo, 0), Math.max(a.hi, 0));
+          return Hull.span(apply(clamped.lo, 0), apply(clamped.hi, 0));
+        case "sin": case "cos":
+          return new Hull(-1, 1);
+        case "max":
+          return new Hull(Math.max(a.lo, b.lo), Math.max(a.hi, b.hi));
+        case "min":
+          return new Hull(Math.min(a.lo, b.lo), Math.min(a.hi, b.hi));
+        case "pow":
+          return pow(a, b);
+        default: // Monotonically increasing.
+          return Hull.span(apply(a.lo, 0), apply(a.hi, 0));
+      }
+    }
+
+    // For a non-negative base, pow is monotonic in each argument, so the
+    // extremes are found in the corners. For a negative base, only integral
+    // exponents are defined.
+    private static Hull pow(Hull a, Hull b) {
+      if (a.lo >= 0) {
+        return Hull.span(Math.pow(a.lo, b.lo), Math.pow(a.lo, b.hi),
+            Math.pow(a.hi, b.lo), Math.pow(a.hi, b.hi));
+      }
+      if (!b.isPoint() || b.lo != Math.rint(b.lo) || b.lo < 0) {
+        return UNBOUNDED;
+      }
+      double lo = Math.pow(a.lo, b.lo);
+      double hi = Math.pow(a.hi, b.lo);
+      if (b.lo % 2 != 0) {
+        return Hull.span(lo, hi);
+      }
+      return a.contains(0) ? new Hull(0, Math.max(lo, hi)) : Hull.span(lo, hi);
+    }
+
+    @Override
+    void collect(Set<String> refs) {
+      for (Node arg : args) {
+        arg.collect(refs);
+      }
+    }
+  }
+
+  /** Recursive descent parser. Whitespace is insignificant. */
+  private static class Parser {
+    private static final String MATH = "Math.";
+    private final String s;
+    private int pos;
+
+    Parser(String s) {
+      if (s == null) {
+        throw new IllegalArgumentException("Cannot parse null expression.");
+      }
+      this.s = s;
+    }
+
+    Node expression() {
+      Node node = term();
+      for (char c = peek(); c == '+' || c == '-'; c = peek()) {
+        pos++;
+        node = new Binary(c, node, term());
+      }
+      return node;
+    }
+
+    void expectEnd() {
+      if (peek() != 0) {
+        throw error("Unexpected '" + peek() + "'");
+      }
+    }
+
+    private Node term() {
+      Node node = unary();
+      for (char c = peek(); c == '*' || c == '/' || c == '%'; c = peek()) {
+        pos++;
+        node = new Binary(c, node, unary());
+      }
+      return node;
+    }
+
+    private Node unary() {
+      char c = peek();
+      if (c == '-' || c == '+') {
+        pos++;
+        Node arg = unary();
+        return c == '-' ? new Neg(arg) : arg;
+      }
+      return primary();
+    }
+
+    private Node primary() {
+      char c = peek();
+      if (c == '(') {
+        pos++;
+        Node node = expression();
+        expect(')');
+        return node;
+      }
+      if (Character.isDigit(c) || c == '.') {
+        return number();
+      }
+      if (Character.isJavaIdentifierStart(c)) {
+        return identifier();
+      }
+      throw error(c == 0 ? "Unexpected end" : "Unexpected '" + c + "'");
+    }
+
+    private Node number() {
+      int start = pos;
+      while (pos < s.length() && isNumberChar(s.charAt(pos))) {
+        pos++;
+      }
+      String token = s.substring(start, pos);
+      try {
+        return new Num(Double.parseDouble(token));
+      } catch (NumberFormatException e) {
+        throw error("Malformed number '" + token + "'");
+      }
+    }
+
+    private boolean isNumberChar(char c) {
+      if (c == '+' || c == '-') {
+        char prev = s.charAt(pos - 1);
+        return prev == 'e' || prev == 'E';
+      }
+      return Character.isDigit(c) || c == '.' || c == 'e' || c == 'E';
+    }
+
+    // Dotted identifiers may contain whitespace around the dots, and the
+    // parts after the first may be numeric (array elements such as "A.1").
+    private Node identifier() {
+      StringBuilder id = new StringBuilder(part());
+      while (peek() == '.') {
+        pos++;
+        skipWhitespace();
+        id.append('.').append(part());
+      }
+      String name = id.toString();
+      if (peek() == '(') {
+        pos++;
+        return call(name);
+      }
+      if (name.startsWith(MATH)) {
+        return constant(name.substring(MATH.length()));
+      }
+      return new Ref(name);
+    }
+
+    private String part() {
+      int start = pos;
+      while (pos < s.length() && Character.isJavaIdentifierPart(s.charAt(pos))) {
+        pos++;
+      }
+      if (start == pos) {
+        throw error("Expected identifier");
+      }
+      return s.substring(start, pos);
+    }
+
+    private Node call(String name) {
+      if (!name.startsWith(MATH)) {
+        throw error("Unsupported function " + name);
+      }
+      List<Node> args = new ArrayList<>();
+      if (peek() != ')') {
+        args.add(expression());
+        while (peek() == ',') {
+          pos++;
+          args.add(expression());
+        }
+      }
+      expect(')');
+      return new Call(name.substring(MATH.length()), args);
+    }
+
+    private Node constant(String name) {
+      switch (name) {
+        case "PI": return new Num(Math.PI);
+        case "E":  return new Num(Math.E);
+        default:   throw error("Unsupported constant Math." + name);
+      }
+    }
+
+    private void expect(char c) {
+      if (peek() != c) {
+        throw error("Expected '" + c + "'");
+      }
+      pos++;
+    }
+
+    private char peek() {
+      skipWhitespace();
+      return pos < s.length() ? s.charAt(pos) : 0;
+    }
+
+    private void skipWhitespace() {
+      while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+        pos++;
+      }
+    }
+
+    private IllegalArgumentException error(String msg) {
+      return new IllegalArgumentException(msg + " at " + pos + " in '" + s
+          + "'");
+    }
+  }
+}
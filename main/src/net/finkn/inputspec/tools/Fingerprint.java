@@ -0,0 +1,191 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+/**
+ * A 128-bit content fingerprint.
+ * Configurations compute their fingerprints incrementally: every node hashes
+ * its own attributes together with the (cached) fingerprints of its children,
+ * so the fingerprint of a tree is never computed by hashing a serialized
+ * string. Two configurations that serialize to the same XML have the same
+ * fingerprint, which makes fingerprints suitable as cache keys and for
+ * deduplication.
+ * <p>
+ * The hash is MurmurHash3 (x64, 128 bits), applied to a stream of 64-bit
+ * words. It is fast and well distributed, but not cryptographic.
+ * <p>
+ * This class is immutable, and since all its fields are final, a reference
+ * to a fingerprint can be published without synchronization. Configurations
+ * rely on this to cache their fingerprints lazily in plain fields: threads
+ * that race to compute a fingerprint may both compute it, but they compute
+ * equal values, and no thread ever sees a partially constructed one.
+ *
+ * @author Christoffer Fink
+ */
+public class Fingerprint {
+  private final long high;
+  private final long low;
+
+  private Fingerprint(long high, long low) {
+    this.high = high;
+    this.low = low;
+  }
+
+  /** Computes the fingerprint of a character sequence. */
+  public static Fingerprint of(CharSequence s) {
+    return hasher().add(s).build();
+  }
+
+  /** Returns a hasher for computing a fingerprint incrementally. */
+  static Hasher hasher() {
+    return new Hasher();
+  }
+
+  public long getHigh() {
+    return high;
+  }
+
+  public long getLow() {
+    return low;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof Fingerprint)) {
+      return false;
+    }
+    Fingerprint other = (Fingerprint) obj;
+    return high == other.high && low == other.low;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) low;
+  }
+
+  /** Returns the fingerprint as 32 hexadecimal digits. */
+  @Override
+  public String toString() {
+    return String.format("%016x%016x", high, low);
+  }
+
+  /**
+   * Incremental MurmurHash3 over 64-bit words. Strings are length-prefixed
+   * and null is distinct from the empty string, so different sequences of
+   * values cannot produce the same stream of words.
+   * <p>
+   * This class is not thread-safe.
+   */
+  static final class Hasher {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private long h1;
+    private long h2;
+    private long pending;
+    private boolean half;
+    private long length;
+
+    private Hasher() {
+    }
+
+    /** Adds a string, which may be null. */
+    Hasher add(CharSequence s) {
+      if (s == null) {
+        return add(-1L);
+      }
+      int n = s.length();
+      add((long) n);
+      long word = 0;
+      for (int i = 0; i < n; i++) {
+        word = (word << 16) | s.charAt(i);
+        if ((i & 3) == 3) {
+          add(word);
+          word = 0;
+        }
+      }
+      return (n & 3) == 0 ? this : add(word);
+    }
+
+    /** Adds a fingerprint, such as the fingerprint of a child node. */
+    Hasher add(Fingerprint f) {
+      return add(f.high).add(f.low);
+    }
+
+    Hasher add(long word) {
+      length += 8;
+      if (!half) {
+        pending = word;
+        half = true;
+        return this;
+      }
+      half = false;
+      long k1 = pending;
+      long k2 = word;
+
+      k1 *= C1;
+      k1 = Long.rotateLeft(k1, 31);
+      k1 *= C2;
+      h1 ^= k1;
+      h1 = Long.rotateLeft(h1, 27);
+      h1 += h2;
+      h1 = h1 * 5 + 0x52dce729;
+
+      k2 *= C2;
+      k2 = Long.rotateLeft(k2, 33);
+      k2 *= C1;
+      h2 ^= k2;
+      h2 = Long.rotateLeft(h2, 31);
+      h2 += h1;
+      h2 = h2 * 5 + 0x38495ab5;
+      return this;
+    }
+
+    Fingerprint build() {
+      long a = h1;
+      long b = h2;
+      if (half) {
+        long k1 = pending * C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        a ^= k1;
+      }
+      a ^= length;
+      b ^= length;
+      a += b;
+      b += a;
+      a = fmix(a);
+      b = fmix(b);
+      a += b;
+      b += a;
+      return new Fingerprint(a, b);
+    }
+
+    private static long fmix(long k) {
+      k ^= k >>> 33;
+      k *= 0xff51afd7ed558ccdL;
+      k ^= k >>> 33;
+      k *= 0xc4ceb9fe1a85ec53L;
+      k ^= k >>> 33;
+      return k;
+    }
+  }
+}
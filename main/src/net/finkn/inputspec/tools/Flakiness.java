@@ -0,0 +1,339 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+/**
+ * Statistical engine for characterizing nondeterministic behavior.
+ * Some behavior only fails some of the time (see
+ * {@code MultiRangeMismatchTest}), so a single run says very little. This
+ * engine runs a {@link Trial} many times in parallel and
+ * {@link Estimate estimates} the failure probability with a Wilson score
+ * confidence interval. Runs are executed in batches, and the engine stops
+ * early once the interval is narrow enough (or the maximum number of runs
+ * has been reached).
+ * <p>
+ * Every run gets its own run number, which trials should use to make
+ * isolated design spaces (for example with a unique ID), so that runs do not
+ * interfere with each other through InPUT's caches. Since InPUT keeps every
+ * design space it has constructed, all of its stores are
+ * {@link TestCleanup#cleanup() released} after each batch, when no run is in
+ * progress. Estimation should therefore not run while other code relies on
+ * InPUT remembering its design spaces.
+ * <p>
+ * This class is immutable.
+ *
+ * @author Christoffer Fink
+ */
+public class Flakiness {
+  private final double z;
+  private final double width;
+  private final int minRuns;
+  private final int maxRuns;
+  private final int threads;
+  private final Runnable release;
+
+  private Flakiness(double z, double width, int minRuns, int maxRuns,
+      int threads, Runnable release) {
+    this.z = z;
+    this.width = width;
+    this.minRuns = minRuns;
+    this.maxRuns = maxRuns;
+    this.threads = threads;
+    this.release = release;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Estimates the failure probability of the trial. A run fails if it throws
+   * anything (including assertion errors).
+   * @throws IllegalStateException if the estimation is interrupted
+   */
+  public Estimate estimate(Trial trial) {
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    int batch = Math.max(minRuns, threads);
+    int runs = 0;
+    int failures = 0;
+    try {
+      Estimate estimate = new Estimate(0, 0, z);
+      while (runs < maxRuns && (runs < minRuns || estimate.getWidth() > width)) {
+        int start = runs;
+        int end = Math.min(maxRuns, runs + batch);
+        failures += pool.submit(() -> IntStream.range(start, end).parallel()
+            .map(i -> fails(trial, i) ? 1 : 0)
+            .sum()).get();
+        release.run();
+        runs = end;
+        estimate = new Estimate(runs, failures, z);
+      }
+      return estimate;
+    } catch (InterruptedException | ExecutionException e) {
+      throw new IllegalStateException("Estimation failed.", e);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Estimates how often generating a value for the parameter fails. Every run
+   * creates a new design space with a unique ID.
+   */
+  public Estimate estimate(ParamCfg param) {
+    return estimate(run -> DesignSpaceCfg.builder()
+        .param(param)
+        .build()
+        .getDesignSpace()
+        .next(param.getId()));
+  }
+
+  /**
+   * Estimates how often a range test of the parameter fails. Every run
+   * creates a {@link RangeTestCase} with a new design space, with a unique
+   * ID, and then adds the expectations using {@code test}. For example,
+   * {@code estimate(param, t -> t.expected(1, 2, 3))}.
+   * <p>
+   * (A finished range test case cannot be estimated directly, since all runs
+   * would then share its design space and design.)
+   */
+  public Estimate estimate(ParamCfg param, UnaryOperator<RangeTestCase> test) {
+    return estimate(run -> test.apply(RangeTestCase.getInstance().param(param))
+        .run());
+  }
+
+  private static boolean fails(Trial trial, int run) {
+    try {
+      trial.run(run);
+      return false;
+    } catch (Throwable t) {
+      return true;
+    }
+  }
+
+  /** A single run of some nondeterministic behavior. */
+  @FunctionalInterface
+  public interface Trial {
+    /** Runs the behavior. Failing means throwing. */
+    void run(int run) throws Throwable;
+
+    /**
+     * Creates a trial from a JUnit test method, such as a spec method.
+     * Every run uses a new instance of the class, just like JUnit. If the
+     * method expects an exception, then the run fails unless that exception
+     * is thrown.
+     * @throws IllegalArgumentException if there is no such method
+     */
+    static Trial of(Class<?> testClass, String methodName) {
+      Method method;
+      try {
+        method = testClass.getMethod(methodName);
+      } catch (NoSuchMethodException e) {
+        throw new IllegalArgumentException("No test method " + methodName, e);
+      }
+      Test test = method.getAnnotation(Test.class);
+      Class<? extends Throwable> expected = test == null
+        ? Test.None.class : test.expected();
+      return run -> {
+        try {
+          method.invoke(testClass.getDeclaredConstructor().newInstance());
+        } catch (InvocationTargetException e) {
+          if (!expected.isInstance(e.getCause())) {
+            throw e.getCause();
+          }
+          return;
+        }
+        if (expected != Test.None.class) {
+          throw new AssertionError("Expected " + expected.getName());
+        }
+      };
+    }
+  }
+
+  /**
+   * An estimated failure probability with a Wilson score interval.
+   * This class is immutable.
+   */
+  public static class Estimate {
+    private final int runs;
+    private final int failures;
+    private final double lower;
+    private final double upper;
+
+    private Estimate(int runs, int failures, double z) {
+      this.runs = runs;
+      this.failures = failures;
+      if (runs == 0) {
+        lower = 0;
+        upper = 1;
+      } else {
+        double p = (double) failures / runs;
+        double z2 = z * z;
+        double denominator = 1 + z2 / runs;
+        double center = (p + z2 / (2 * runs)) / denominator;
+        double spread = z / denominator
+          * Math.sqrt(p * (1 - p) / runs + z2 / (4.0 * runs * runs));
+        lower = Math.max(0, center - spread);
+        upper = Math.min(1, center + spread);
+      }
+    }
+
+    public int getRuns() {
+      return runs;
+    }
+
+    public int getFailures() {
+      return failures;
+    }
+
+    /** Returns the observed failure rate. */
+    public double getRate() {
+      return runs == 0 ? 0 : (double) failures / runs;
+    }
+
+    public double getLower() {
+      return lower;
+    }
+
+    public double getUpper() {
+      return upper;
+    }
+
+    public double getWidth() {
+      return upper - lower;
+    }
+
+    /** Checks whether the probability is within the confidence interval. */
+    public boolean contains(double probability) {
+      return lower <= probability && probability <= upper;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%.1f%% [%.1f%%, %.1f%%] after %d runs",
+          100 * getRate(), 100 * lower, 100 * upper, runs);
+    }
+  }
+
+  /**
+   * Builder of flakiness engines.
+   * By default, the engine uses a 95% confidence level, stops when the
+   * interval is at most 0.1 wide, does at least 100 and at most 10000 runs,
+   * and uses all available cores.
+   */
+  public static class Builder {
+    private double z = 1.96;
+    private double width = 0.1;
+    private int minRuns = 100;
+    private int maxRuns = 10000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Runnable release = TestCleanup::cleanup;
+
+    private Builder() {
+    }
+
+    /**
+     * Sets the confidence level, such as 0.95 or 0.99.
+     * @throws IllegalArgumentException unless the level is in ]0,1[
+     */
+    public Builder confidence(double level) {
+      if (!(level > 0 && level < 1)) {
+        throw new IllegalArgumentException("Illegal confidence " + level);
+      }
+      this.z = quantile(1 - (1 - level) / 2);
+      return this;
+    }
+
+    /** Sets the interval width that is narrow enough to stop early. */
+    public Builder width(double width) {
+      if (!(width > 0)) {
+        throw new IllegalArgumentException("Width must be positive.");
+      }
+      this.width = width;
+      return this;
+    }
+
+    /** Sets the minimum and maximum number of runs. */
+    public Builder runs(int min, int max) {
+      if (min < 1 || max < min) {
+        throw new IllegalArgumentException("Illegal runs " + min + ", " + max);
+      }
+      this.minRuns = min;
+      this.maxRuns = max;
+      return this;
+    }
+
+    public Builder threads(int threads) {
+      if (threads < 1) {
+        throw new IllegalArgumentException("Number of threads must be positive.");
+      }
+      this.threads = threads;
+      return this;
+    }
+
+    /** Sets what to call instead of releasing InPUT's stores. */
+    Builder release(Runnable release) {
+      this.release = release;
+      return this;
+    }
+
+    public Flakiness build() {
+      return new Flakiness(z, width, minRuns, maxRuns, threads, release);
+    }
+
+    // Standard normal quantile, using Acklam's rational approximation.
+    private static double quantile(double p) {
+      double[] a = {-3.969683028665376e+01, 2.209460984245205e+02,
+        -2.759285104469687e+02, 1.383577518672690e+02,
+        -3.066479806614716e+01, 2.506628277459239e+00};
+      double[] b = {-5.447609879822406e+01, 1.615858368580409e+02,
+        -1.556989798598866e+02, 6.680131188771972e+01,
+        -1.328068155288572e+01};
+      double[] c = {-7.784894002430293e-03, -3.223964580411365e-01,
+        -2.400758277161838e+00, -2.549732539343734e+00,
+        4.374664141464968e+00, 2.938163982698783e+00};
+      double[] d = {7.784695709041462e-03, 3.224671290700398e-01,
+        2.445134137142996e+00, 3.754408661907416e+00};
+      if (p > 0.97575) {
+        return -quantile(1 - p);
+      }
+      if (p < 0.02425) {
+        double q = Math.sqrt(-2 * Math.log(p));
+        return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q
+            + c[5]) / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+      }
+      double q = p - 0.5;
+      double r = q * q;
+      return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r
+          + a[5]) * q / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r
+            + b[4]) * r + 1);
+    }
+  }
+}
@@ -0,0 +1,700 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import net.finkn.inputspec.tools.types.Point;
+import se.miun.itm.input.model.design.IDesign;
+import se.miun.itm.input.model.design.IDesignSpace;
+
+/**
+ * Differential fuzzer for numeric parameters.
+ * The fuzzer generates random but well-formed design space configurations,
+ * covering all numeric types, arrays, inclusive and exclusive limits,
+ * multi-ranges, fixed values and expressions referencing other parameters.
+ * Some parameters are structured {@link Point points} with numeric nested
+ * parameters, in which case the design space has a code mapping.
+ * Each configuration is run through a {@link Target} (normally InPUT itself),
+ * and the observed behavior is compared against the <em>declared</em>
+ * semantics, as computed by {@link Bounds}:
+ * <ul>
+ *   <li>every value produced by {@code next} must be within bounds, and</li>
+ *   <li>{@code setValue} must accept exactly the values that are within
+ *   bounds (probed at and just beyond the limits).</li>
+ * </ul>
+ * Any disagreement is recorded as a {@link Finding}. Findings are
+ * deduplicated by kind and parameter shape, so the resulting corpus contains
+ * one (the first) configuration per distinct kind of interesting behavior.
+ * <p>
+ * Configurations are fuzzed in parallel by a work-stealing pool. Each
+ * configuration gets its own random seed (derived from the fuzzer seed and
+ * the configuration number), so the results do not depend on scheduling.
+ * The target sees each configuration under design space and code mapping
+ * IDs that are unique within the process, so InPUT caches never mix up
+ * design spaces, not even across runs or fuzzers with different settings.
+ * Since InPUT keeps every design space it has seen, the configurations are
+ * fuzzed in chunks of {@value #CHUNK}, and the target is
+ * {@link Target#release() released} after each chunk. For {@link #INPUT},
+ * that releases all of InPUT's stores, so fuzzing should not run while other
+ * code relies on InPUT remembering its design spaces.
+ * <p>
+ * This class is immutable.
+ *
+ * @author Christoffer Fink
+ * @see Oracle
+ */
+public class Fuzzer {
+  /** Runs configurations through InPUT. */
+  public static final Target INPUT = new Target() {
+    @Override
+    public Subject open(DesignSpaceCfg space, Random random)
+        throws Exception {
+      IDesignSpace designSpace = space.getDesignSpace();
+      IDesign design =
+        designSpace.nextDesign(space.getId().get() + "_Design");
+      return new Subject() {
+        @Override
+        public Object next(String paramId) throws Exception {
+          return designSpace.next(paramId);
+        }
+        @Override
+        public boolean accepts(String paramId, Object value) {
+          return Sink.fromSettable(design, paramId).test(value);
+        }
+      };
+    }
+    @Override
+    public void release() {
+      TestCleanup.cleanup();
+    }
+  };
+
+  /** Runs configurations through the {@link Oracle reference model}. */
+  public static final Target ORACLE = (space, random) -> {
+    Map<String, Oracle> oracles = Traversal.of(space).preOrder()
+      .filter(n -> n.getParam().getParamType() == ParamCfg.ParamType.NUMERIC)
+      .collect(Collectors.toMap(Traversal.Node::getId,
+            n -> Oracle.of(n.getParam())));
+    return new Subject() {
+      @Override
+      public Object next(String paramId) {
+        return oracles.get(paramId).next(random);
+      }
+      @Override
+      public boolean accepts(String paramId, Object value) {
+        return oracles.get(paramId).accepts(value);
+      }
+    };
+  };
+
+  private static final String[] TYPES = {
+    "integer", "long", "short", "double", "float", "decimal", "boolean",
+  };
+  private static final AtomicLong opened = new AtomicLong();
+  /** The number of configurations fuzzed between releases. */
+  static final int CHUNK = 100;
+
+  private final long seed;
+  private final int configs;
+  private final int params;
+  private final int samples;
+  private final int threads;
+  private final Target target;
+
+  private Fuzzer(long seed, int configs, int params, int samples,
+      int threads, Target target) {
+    this.seed = seed;
+    this.configs = configs;
+    this.params = params;
+    this.samples = samples;
+    this.threads = threads;
+    this.target = target;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Fuzzes all configurations and reports the findings.
+   * @throws IllegalStateException if the fuzzing is interrupted
+   */
+  public Report run() {
+    Map<String, Finding> corpus = new ConcurrentHashMap<>();
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    long start = System.nanoTime();
+    try {
+      // Nothing is open between chunks, so releasing is safe.
+      for (int from = 0; from < configs; from += CHUNK) {
+        IntStream chunk = IntStream.range(from, Math.min(configs,
+              from + CHUNK));
+        pool.submit(() -> chunk.parallel()
+            .forEach(i -> fuzz(i, corpus))).get();
+        target.release();
+      }
+    } catch (InterruptedException | ExecutionException e) {
+      throw new IllegalStateException("Fuzzing failed.", e);
+    } finally {
+      pool.shutdown();
+    }
+    return new Report(configs, System.nanoTime() - start, corpus);
+  }
+
+  /**
+   * Returns the configuration with the given number. The same seed and
+   * number always give the same configuration.
+   */
+  public DesignSpaceCfg getConfig(int number) {
+    return config(number, random(number));
+  }
+
+  private Random random(int number) {
+    return new Random(seed ^ (number * 0x9E3779B97F4A7C15L));
+  }
+
+  private void fuzz(int number, Map<String, Finding> corpus) {
+    Random random = random(number);
+    DesignSpaceCfg space = config(number, random);
+    Subject subject;
+    try {
+      subject = target.open(isolated(space), random);
+    } catch (Exception e) {
+      report(corpus, new Finding(Kind.REJECTED, number, space, null, e));
+      return;
+    }
+    Bounds bounds = Bounds.of(space);
+    Traversal.of(space).preOrder()
+      .filter(n -> bounds.getIds().contains(n.getId()))
+      .forEach(n -> {
+        checkNext(number, space, subject, bounds, n.getId(), n.getParam(),
+            corpus);
+        checkSetValue(number, space, subject, bounds, n.getId(),
+            n.getParam(), corpus);
+      });
+  }
+
+  // A copy with unique design space and code mapping IDs.
+  private static DesignSpaceCfg isolated(DesignSpaceCfg space) {
+    String suffix = "_" + opened.getAndIncrement();
+    DesignSpaceCfg.Builder builder = DesignSpaceCfg.builder()
+      .id(space.getId().get() + suffix)
+      .param(space.getParameters().toArray(ParamCfg[]::new));
+    space.getMapping().ifPresent(m -> builder.mapping(CodeMappingCfg.builder()
+          .id(m.getId() + suffix)
+          .mapping(m.getMappings().toArray(MappingCfg[]::new))
+          .build()));
+    return builder.build();
+  }
+
+  private void checkNext(int number, DesignSpaceCfg space, Subject subject,
+      Bounds bounds, String id, ParamCfg param,
+      Map<String, Finding> corpus) {
+    for (int i = 0; i < samples; i++) {
+      List<Object> values = new ArrayList<>();
+      try {
+        flatten(subject.next(id), values);
+      } catch (Exception e) {
+        report(corpus, new Finding(Kind.NEXT_FAILED, number, space, param, e));
+        return;
+      }
+      for (Object value : values) {
+        if (!(value instanceof Number)
+            || !contains(bounds, id, baseType(param), (Number) value)) {
+          report(corpus, new Finding(Kind.OUT_OF_BOUNDS, number, space, param,
+                value));
+          return;
+        }
+      }
+    }
+  }
+
+  // Only scalar parameters without references can be probed independently.
+  private void checkSetValue(int number, DesignSpaceCfg space,
+      Subject subject, Bounds bounds, String id, ParamCfg param,
+      Map<String, Finding> corpus) {
+    if (isArray(param) || ImpactIndex.getLimits(param).stream()
+        .anyMatch(Expression::hasReferences)) {
+      return;
+    }
+    for (Object value : probes(param, bounds.getIntervals(id))) {
+      boolean legal = contains(bounds, id, baseType(param), (Number) value);
+      if (subject.accepts(id, value) != legal) {
+        Kind kind = legal ? Kind.REJECTS_LEGAL : Kind.ACCEPTS_ILLEGAL;
+        report(corpus, new Finding(kind, number, space, param, value));
+        return;
+      }
+    }
+  }
+
+  private static void report(Map<String, Finding> corpus, Finding finding) {
+    corpus.merge(finding.getKey(), finding,
+        (a, b) -> a.getConfig() <= b.getConfig() ? a : b);
+  }
+
+  // ----- probing -----
+
+  // The limits of a float parameter are floats too, so a float value is
+  // compared with them in float precision. Otherwise, a limit such as 0.1
+  // would be compared with 0.1f, which is larger.
+  static boolean contains(Bounds bounds, String id, String type,
+      Number value) {
+    if (!"float".equals(type)) {
+      return bounds.contains(id, value);
+    }
+    float x = value.floatValue();
+    for (Interval interval : bounds.getIntervals(id)) {
+      if (interval.getInclMin().map(m -> x >= m.floatValue()).orElse(true)
+          && interval.getExclMin().map(m -> x > m.floatValue()).orElse(true)
+          && interval.getInclMax().map(m -> x <= m.floatValue()).orElse(true)
+          && interval.getExclMax().map(m -> x < m.floatValue()).orElse(true)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Values at and just beyond every finite limit, boxed to the right type.
+  // The neighbors of a float limit are taken in float precision, since the
+  // neighbors of the double would mostly round back to the limit.
+  static List<Object> probes(ParamCfg param, List<Interval> bounds) {
+    String type = baseType(param);
+    boolean integral = isIntegral(type);
+    List<Object> result = new ArrayList<>();
+    for (Interval interval : bounds) {
+      for (Optional<Number> limit : Arrays.asList(interval.getInclMin(),
+            interval.getExclMin(), interval.getInclMax(),
+            interval.getExclMax())) {
+        if (!limit.isPresent()
+            || Double.isInfinite(limit.get().doubleValue())) {
+          continue;
+        }
+        double x = limit.get().doubleValue();
+        if ("float".equals(type)) {
+          float f = (float) x;
+          result.addAll(Arrays.asList(Math.nextDown(f), f, Math.nextUp(f)));
+          continue;
+        }
+        double below = integral ? x - 1 : Math.nextDown(x);
+        double above = integral ? x + 1 : Math.nextUp(x);
+        for (double value : new double[] {below, x, above}) {
+          box(type, value).ifPresent(result::add);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static Optional<Object> box(String type, double value) {
+    switch (type) {
+      case "integer":
+        return fits(value, Integer.MIN_VALUE, Integer.MAX_VALUE)
+          ? Optional.of((int) value) : Optional.empty();
+      case "short":
+        return fits(value, Short.MIN_VALUE, Short.MAX_VALUE)
+          ? Optional.of((short) value) : Optional.empty();
+      case "long":
+        return fits(value, Long.MIN_VALUE, Long.MAX_VALUE)
+          ? Optional.of((long) value) : Optional.empty();
+      case "decimal":
+        return Optional.of(BigDecimal.valueOf(value));
+      default:
+        return Optional.of(value);
+    }
+  }
+
+  private static boolean fits(double value, double min, double max) {
+    return value >= min && value <= max;
+  }
+
+  private static void flatten(Object value, List<Object> result) {
+    if (value != null && value.getClass().isArray()) {
+      for (int i = 0; i < Array.getLength(value); i++) {
+        flatten(Array.get(value, i), result);
+      }
+    } else {
+      result.add(value);
+    }
+  }
+
+  // ----- configuration generation -----
+
+  private DesignSpaceCfg config(int number, Random random) {
+    DesignSpaceCfg.Builder builder = DesignSpaceCfg.builder()
+      .id("Fuzz_" + seed + "_" + number);
+    List<String> referable = new ArrayList<>();
+    List<MappingCfg> mappings = new ArrayList<>();
+    int n = 1 + random.nextInt(params);
+    for (int i = 0; i < n; i++) {
+      if (random.nextInt(6) == 0) {
+        ParamCfg point = point("P" + i, random);
+        builder.param(point);
+        mappings.add(Helper.mapping(Point.class, point));
+        continue;
+      }
+      ParamCfg param = param("P" + i, random, referable);
+      builder.param(param);
+      if (!isArray(param) && !"boolean".equals(baseType(param))) {
+        referable.add(param.getId());
+      }
+    }
+    if (!mappings.isEmpty()) {
+      builder.mapping(CodeMappingCfg.builder()
+          .id("FuzzMapping_" + seed + "_" + number)
+          .mapping(mappings.toArray(new MappingCfg[mappings.size()]))
+          .build());
+    }
+    return builder.build();
+  }
+
+  // A structured parameter of type Point, whose coordinates are integers.
+  private static ParamCfg point(String id, Random random) {
+    List<String> none = Collections.emptyList();
+    return ParamCfg.builder()
+      .id(id)
+      .structured()
+      .add(numeric("X", "integer", random, none),
+          numeric("Y", "integer", random, none))
+      .build();
+  }
+
+  private static ParamCfg param(String id, Random random,
+      List<String> referable) {
+    String type = TYPES[random.nextInt(TYPES.length)];
+    if (random.nextInt(5) == 0) {
+      type += "[" + (1 + random.nextInt(3)) + "]";
+    }
+    return numeric(id, type, random, referable);
+  }
+
+  private static ParamCfg numeric(String id, String type, Random random,
+      List<String> referable) {
+    ParamCfg.Builder builder = ParamCfg.builder().id(id).type(type);
+    if (type.startsWith("boolean")) {
+      return builder.build();
+    }
+    if (random.nextInt(8) == 0) {
+      return builder.fixed(number(random, type)).build();
+    }
+    int ranges = random.nextInt(4) == 0 ? 2 + random.nextInt(2) : 1;
+    boolean exprs = !referable.isEmpty() && random.nextInt(3) == 0;
+    int minCount = random.nextInt(6) == 0 ? 0 : ranges;
+    int maxCount = random.nextInt(6) == 0 ? 0 : ranges;
+    if (ranges > 1 && random.nextInt(6) == 0) {
+      maxCount--; // Mismatched multi-range.
+    }
+    List<String> mins = new ArrayList<>();
+    List<String> maxs = new ArrayList<>();
+    for (int i = 0; i < ranges; i++) {
+      String min = number(random, type);
+      // Occasionally produce an empty range.
+      double width = random.nextInt(8) == 0 ? -random.nextInt(5)
+        : random.nextInt(10);
+      String max = format(Double.parseDouble(min) + width, type);
+      if (exprs && (i == 0 || random.nextBoolean())) {
+        String ref = referable.get(random.nextInt(referable.size()));
+        min = expression(ref, min, random);
+        max = expression(ref, max, random);
+      }
+      mins.add(min);
+      maxs.add(max);
+    }
+    if (minCount > 0) {
+      String limit = String.join(",", mins.subList(0, minCount));
+      builder = random.nextBoolean()
+        ? builder.inclMin(limit) : builder.exclMin(limit);
+    }
+    if (maxCount > 0) {
+      String limit = String.join(",", maxs.subList(0, maxCount));
+      builder = random.nextBoolean()
+        ? builder.inclMax(limit) : builder.exclMax(limit);
+    }
+    return builder.build();
+  }
+
+  private static String expression(String ref, String limit, Random random) {
+    switch (random.nextInt(4)) {
+      case 0:  return ref + " + " + limit;
+      case 1:  return ref + " - " + limit;
+      case 2:  return ref + " * 2 + " + limit;
+      default: return "Math.max(" + ref + ", " + limit + ")";
+    }
+  }
+
+  private static String number(Random random, String type) {
+    return format(random.nextInt(41) - 20 + (random.nextInt(4) == 0 ? 0.5 : 0),
+        type);
+  }
+
+  private static String format(double value, String type) {
+    boolean integral = isIntegral(type.replaceAll("\\[.*", ""));
+    if (value == Math.rint(value) && (integral || value == 0)) {
+      return Long.toString((long) value);
+    }
+    return Double.toString(value);
+  }
+
+  private static boolean isArray(ParamCfg param) {
+    return param.getType() != null && param.getType().contains("[");
+  }
+
+  private static String baseType(ParamCfg param) {
+    String type = param.getType() == null ? "" : param.getType();
+    return type.replaceAll("\\[.*", "").trim();
+  }
+
+  private static boolean isIntegral(String type) {
+    return "integer".equals(type) || "long".equals(type)
+      || "short".equals(type);
+  }
+
+  /** The system under test. */
+  @FunctionalInterface
+  public interface Target {
+    /**
+     * Prepares a design space. Failing means that the configuration was
+     * rejected. The random generator may be used by models.
+     */
+    Subject open(DesignSpaceCfg space, Random random) throws Exception;
+
+    /**
+     * Releases whatever the target keeps for the configurations it has
+     * opened. This is called when none of them is in use anymore.
+     */
+    default void release() {
+    }
+  }
+
+  /** A design space prepared by a {@link Target}. */
+  public interface Subject {
+    /** Generates a value for the parameter. */
+    Object next(String paramId) throws Exception;
+
+    /** Checks whether the parameter can be set to the value. */
+    boolean accepts(String paramId, Object value);
+  }
+
+  /** The kinds of disagreement with the declared semantics. */
+  public enum Kind {
+    /** The configuration was rejected. */
+    REJECTED,
+    /** Generating a value failed. */
+    NEXT_FAILED,
+    /** A generated value was out of bounds. */
+    OUT_OF_BOUNDS,
+    /** A value within bounds was rejected by setValue. */
+    REJECTS_LEGAL,
+    /** A value out of bounds was accepted by setValue. */
+    ACCEPTS_ILLEGAL,
+  }
+
+  /**
+   * A configuration where the target disagreed with the declared semantics.
+   * This class is immutable.
+   */
+  public static class Finding {
+    private final Kind kind;
+    private final int config;
+    private final DesignSpaceCfg space;
+    private final Optional<ParamCfg> param;
+    private final Object detail;
+
+    private Finding(Kind kind, int config, DesignSpaceCfg space,
+        ParamCfg param, Object detail) {
+      this.kind = kind;
+      this.config = config;
+      this.space = space;
+      this.param = Optional.ofNullable(param);
+      this.detail = detail;
+    }
+
+    public Kind getKind() {
+      return kind;
+    }
+
+    /** Returns the number of the configuration (see {@link #getConfig}). */
+    public int getConfig() {
+      return config;
+    }
+
+    public DesignSpaceCfg getSpace() {
+      return space;
+    }
+
+    /** Returns the offending parameter, unless the whole space failed. */
+    public Optional<ParamCfg> getParam() {
+      return param;
+    }
+
+    /** Returns the offending value or the exception that was thrown. */
+    public Object getDetail() {
+      return detail;
+    }
+
+    /** The deduplication key: the kind and the shape of the parameter. */
+    public String getKey() {
+      return kind + " " + param.map(Fuzzer::shape).orElse("");
+    }
+
+    @Override
+    public String toString() {
+      return getKey() + " in config " + config + ": "
+        + param.map(p -> p.getId() + " ").orElse("") + detail;
+    }
+  }
+
+  // Type, limit kinds and features, ignoring the actual numbers.
+  private static String shape(ParamCfg param) {
+    Range r = param.getRange();
+    List<Expression> limits = ImpactIndex.getLimits(param);
+    int mins = Expression.split(r.inclMin().orElse(r.exclMin().orElse(null)))
+      .size();
+    int maxs = Expression.split(r.inclMax().orElse(r.exclMax().orElse(null)))
+      .size();
+    return (isArray(param) ? baseType(param) + "[]" : baseType(param))
+      + (r.inclMin().isPresent() ? " [" : r.exclMin().isPresent() ? " ]" : " -")
+      + mins + "," + maxs
+      + (r.inclMax().isPresent() ? "]" : r.exclMax().isPresent() ? "[" : "-")
+      + (param.getFixed() != null ? " fixed" : "")
+      + (limits.stream().anyMatch(Expression::hasReferences) ? " expr" : "");
+  }
+
+  /**
+   * The result of a fuzzing run.
+   * This class is immutable.
+   */
+  public static class Report {
+    private final int configs;
+    private final long nanos;
+    private final List<Finding> findings;
+
+    private Report(int configs, long nanos, Map<String, Finding> corpus) {
+      this.configs = configs;
+      this.nanos = nanos;
+      List<Finding> findings = new ArrayList<>(corpus.values());
+      findings.sort((a, b) -> a.getKey().compareTo(b.getKey()));
+      this.findings = Collections.unmodifiableList(findings);
+    }
+
+    public int getConfigs() {
+      return configs;
+    }
+
+    public long getNanos() {
+      return nanos;
+    }
+
+    /** Returns the throughput in configurations per second. */
+    public double getConfigsPerSecond() {
+      return configs * 1e9 / Math.max(1, nanos);
+    }
+
+    /** Returns the deduplicated findings, ordered by key. */
+    public List<Finding> getFindings() {
+      return findings;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d configs, %.1f configs/s, %d findings",
+          configs, getConfigsPerSecond(), findings.size());
+    }
+  }
+
+  /**
+   * Builder of fuzzers.
+   * By default, the fuzzer uses seed 0, 1000 configurations of up to 4
+   * parameters, 20 samples per parameter, all available cores and InPUT as
+   * the target.
+   */
+  public static class Builder {
+    private long seed = 0;
+    private int configs = 1000;
+    private int params = 4;
+    private int samples = Unit.DEFAULT_ITERATIONS;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Target target = INPUT;
+
+    private Builder() {
+    }
+
+    public Builder seed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    public Builder configs(int configs) {
+      this.configs = positive(configs, "configurations");
+      return this;
+    }
+
+    /** Sets the maximum number of parameters per configuration. */
+    public Builder params(int params) {
+      this.params = positive(params, "parameters");
+      return this;
+    }
+
+    /** Sets the number of values to generate per parameter. */
+    public Builder samples(int samples) {
+      this.samples = positive(samples, "samples");
+      return this;
+    }
+
+    public Builder threads(int threads) {
+      this.threads = positive(threads, "threads");
+      return this;
+    }
+
+    public Builder target(Target target) {
+      if (target == null) {
+        throw new NullPointerException("Target must not be null.");
+      }
+      this.target = target;
+      return this;
+    }
+
+    public Fuzzer build() {
+      return new Fuzzer(seed, configs, params, samples, threads, target);
+    }
+
+    private static int positive(int n, String what) {
+      if (n < 1) {
+        throw new IllegalArgumentException("Number of " + what
+            + " must be positive.");
+      }
+      return n;
+    }
+  }
+}
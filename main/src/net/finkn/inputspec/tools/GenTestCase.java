@@ -20,6 +20,8 @@ SOFTWARE.
 */
 package net.finkn.inputspec.tools;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Optional;
 
 /**
@@ -94,11 +96,19 @@ public class GenTestCase {
   }
   /** All values are expected to be in <em>any</em> of these intervals. */
   public GenTestCase intervals(String ... intervals) {
-    failIfPresent(this.intervals, "Already added an 'intervals' test.");
     Interval[] tmp = new Interval[intervals.length];
     for (int i = 0; i < intervals.length; i++) {
       tmp[i] = Interval.valueOf(intervals[i]);
     }
+    return intervals(Arrays.asList(tmp));
+  }
+  /**
+   * All values are expected to be in <em>any</em> of these intervals.
+   * Useful with the intervals computed by {@link Bounds}.
+   */
+  public GenTestCase intervals(Collection<Interval> intervals) {
+    failIfPresent(this.intervals, "Already added an 'intervals' test.");
+    Interval[] tmp = intervals.toArray(new Interval[intervals.size()]);
     return new GenTestCase(gen, all, only, any, none, Optional.of(tmp));
   }
   /** Set the generator. */
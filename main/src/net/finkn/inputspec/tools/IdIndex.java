@@ -0,0 +1,323 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Index of the absolute parameter IDs in a design space, and the duplicate
+ * IDs among them.
+ * As {@code DuplicateIdTest} demonstrates, InPUT does not reject duplicate
+ * IDs. Depending on where and in which order the duplicates occur, one of
+ * the parameters is silently ignored, IDs are derived in surprising ways, or
+ * creating a design fails. This index finds all such
+ * {@link Conflict conflicts} up front and reports where they are:
+ * <ul>
+ *   <li>{@link Kind#DUPLICATE}: two parameters with the same absolute ID.
+ *   The first one is ignored.</li>
+ *   <li>{@link Kind#OUTER_AFTER_INNER}: an outer parameter with the same
+ *   absolute ID as an earlier nested parameter. Creating a design
+ *   fails.</li>
+ *   <li>{@link Kind#ELEMENT_IGNORED}: a parameter with the ID of an element
+ *   of a later array. The parameter is ignored.</li>
+ *   <li>{@link Kind#ELEMENT_RELOCATED}: a parameter with the ID of an element
+ *   of an earlier array. The elements of the parameter get surprising IDs
+ *   (such as "A.A.1.1").</li>
+ *   <li>{@link Kind#SHADOWED}: an outer parameter with the same ID as the
+ *   relative ID of a later nested parameter (such as "X" and "Point.X").
+ *   The nested parameter gets the value of the outer one.</li>
+ * </ul>
+ * Every parameter is indexed once by its hashed absolute ID, so building
+ * the index is linear in the number of parameters (times the nesting depth
+ * of their IDs). Array elements are not enumerated; instead, IDs that look
+ * like element IDs are checked against the array dimensions. Parameters
+ * without an ID are left out.
+ * <p>
+ * This class is immutable.
+ *
+ * @author Christoffer Fink
+ * @see ImpactIndex
+ */
+public class IdIndex {
+  private static final Pattern DIMENSION = Pattern.compile("\\[(\\d{0,9})\\]");
+  private static final Pattern ELEMENT = Pattern.compile("(.+)\\.(\\d{1,9})");
+
+  private final Map<String, Location> ids;
+  private final List<Conflict> conflicts;
+
+  private IdIndex(Map<String, Location> ids, List<Conflict> conflicts) {
+    this.ids = ids;
+    this.conflicts = Collections.unmodifiableList(conflicts);
+  }
+
+  /** Indexes all the parameters in the design space. */
+  public static IdIndex of(DesignSpaceCfg space) {
+    return of(space.getParameters());
+  }
+
+  /** Indexes the parameters (and all nested parameters). */
+  public static IdIndex of(ParamCfg ... params) {
+    return of(Stream.of(params));
+  }
+
+  private static IdIndex of(Stream<ParamCfg> params) {
+    Map<String, Location> ids = new HashMap<>();
+    Map<String, Location> outer = new HashMap<>();
+    List<Location> all = new ArrayList<>();
+    List<Conflict> conflicts = new ArrayList<>();
+    // The position of the current parameter among its siblings, per level.
+    Deque<int[]> position = new ArrayDeque<>();
+    position.push(new int[] {-1});
+    Traversal.of(params).walk(new Traversal.Visitor() {
+      @Override
+      public Traversal.Action enter(Traversal.Node node) {
+        position.peek()[0]++;
+        int[] path = new int[position.size()];
+        int i = path.length;
+        for (int[] p : position) {
+          path[--i] = p[0];
+        }
+        position.push(new int[] {-1});
+        ParamCfg param = node.getParam();
+        if (param.getId() == null) {
+          return Traversal.Action.CONTINUE;
+        }
+        Location here = new Location(node.getId(), path, all.size(), param);
+        all.add(here);
+        Location previous = ids.put(here.id, here);
+        if (previous != null) {
+          conflicts.add(new Conflict(previous.isOuter() || !here.isOuter()
+                ? Kind.DUPLICATE : Kind.OUTER_AFTER_INNER, previous, here));
+        }
+        if (here.isOuter()) {
+          outer.putIfAbsent(here.id, here);
+        } else {
+          // A parameter does not shadow its own nested parameters.
+          Location shadow = outer.get(param.getId());
+          if (shadow != null && shadow.path[0] != path[0]) {
+            conflicts.add(new Conflict(Kind.SHADOWED, shadow, here));
+          }
+        }
+        return Traversal.Action.CONTINUE;
+      }
+
+      @Override
+      public Traversal.Action leave(Traversal.Node node) {
+        position.pop();
+        return Traversal.Action.CONTINUE;
+      }
+    });
+    // Arrays may come after the parameters that collide with their elements.
+    for (Location here : all) {
+      Location array = getArray(here.id, ids);
+      if (array != null && array.order < here.order) {
+        conflicts.add(new Conflict(Kind.ELEMENT_RELOCATED, array, here));
+      } else if (array != null) {
+        conflicts.add(new Conflict(Kind.ELEMENT_IGNORED, here, array));
+      }
+    }
+    return new IdIndex(ids, conflicts);
+  }
+
+  /** Checks whether some parameter has the absolute ID. */
+  public boolean contains(String id) {
+    return ids.containsKey(id);
+  }
+
+  /** Returns the location of the last parameter with the absolute ID. */
+  public Optional<Location> getLocation(String id) {
+    return Optional.ofNullable(ids.get(id));
+  }
+
+  /** Returns the number of distinct absolute IDs. */
+  public int size() {
+    return ids.size();
+  }
+
+  /**
+   * Returns all conflicts. Duplicates and shadowed parameters come in
+   * declaration order, followed by collisions with array elements.
+   */
+  public List<Conflict> getConflicts() {
+    return conflicts;
+  }
+
+  /** Checks whether there are any conflicts. */
+  public boolean hasConflicts() {
+    return !conflicts.isEmpty();
+  }
+
+  // Returns the array that the ID is an element of, if any.
+  // "A.1.2" is an element of A if A has at least two dimensions, and the
+  // indices are within the sizes. It is also an element of "A.1" if that is
+  // an array itself.
+  private static Location getArray(String id, Map<String, Location> ids) {
+    List<Integer> indices = new ArrayList<>();
+    String prefix = id;
+    Matcher m = ELEMENT.matcher(prefix);
+    while (m.matches()) {
+      prefix = m.group(1);
+      indices.add(0, Integer.valueOf(m.group(2)));
+      Location array = ids.get(prefix);
+      if (array != null && array.contains(indices)) {
+        return array;
+      }
+      m = ELEMENT.matcher(prefix);
+    }
+    return null;
+  }
+
+  /** The kinds of conflicts between parameter IDs. */
+  public enum Kind {
+    /** Same absolute ID. The first parameter is ignored. */
+    DUPLICATE,
+    /**
+     * An outer parameter with the same absolute ID as an earlier nested
+     * parameter. Creating a design fails.
+     */
+    OUTER_AFTER_INNER,
+    /** A parameter with the ID of an element of a later array. */
+    ELEMENT_IGNORED,
+    /** A parameter with the ID of an element of an earlier array. */
+    ELEMENT_RELOCATED,
+    /**
+     * An outer parameter with the same ID as the relative ID of a later
+     * nested parameter.
+     */
+    SHADOWED,
+  }
+
+  /**
+   * Where a parameter is declared.
+   * This class is immutable.
+   */
+  public static class Location {
+    private final String id;
+    private final int[] path;
+    private final int order;
+    private final int[] dimensions;
+
+    private Location(String id, int[] path, int order, ParamCfg param) {
+      this.id = id;
+      this.path = path;
+      this.order = order;
+      this.dimensions = dimensions(param.getType());
+    }
+
+    /** Returns the absolute ID. */
+    public String getId() {
+      return id;
+    }
+
+    /**
+     * Returns the position of the parameter, first among the top-level
+     * parameters, then among the nested parameters at each level.
+     */
+    public List<Integer> getPath() {
+      List<Integer> result = new ArrayList<>(path.length);
+      for (int i : path) {
+        result.add(i);
+      }
+      return result;
+    }
+
+    /** Checks whether this is a top-level parameter. */
+    public boolean isOuter() {
+      return path.length == 1;
+    }
+
+    @Override
+    public String toString() {
+      return id + " at " + Arrays.toString(path);
+    }
+
+    // Sizes that are not given (as in "integer[]") are unbounded.
+    private boolean contains(List<Integer> indices) {
+      if (indices.size() > dimensions.length) {
+        return false;
+      }
+      for (int i = 0; i < indices.size(); i++) {
+        int index = indices.get(i);
+        if (index < 1 || (dimensions[i] >= 0 && index > dimensions[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static int[] dimensions(String type) {
+      if (type == null) {
+        return new int[0];
+      }
+      List<Integer> sizes = new ArrayList<>();
+      Matcher m = DIMENSION.matcher(type);
+      while (m.find()) {
+        sizes.add(m.group(1).isEmpty() ? -1 : Integer.parseInt(m.group(1)));
+      }
+      return sizes.stream().mapToInt(Integer::intValue).toArray();
+    }
+  }
+
+  /**
+   * Two parameters whose IDs collide. The first one is declared before the
+   * second one.
+   * This class is immutable.
+   */
+  public static class Conflict {
+    private final Kind kind;
+    private final Location first;
+    private final Location second;
+
+    private Conflict(Kind kind, Location first, Location second) {
+      this.kind = kind;
+      this.first = first;
+      this.second = second;
+    }
+
+    public Kind getKind() {
+      return kind;
+    }
+
+    public Location getFirst() {
+      return first;
+    }
+
+    public Location getSecond() {
+      return second;
+    }
+
+    @Override
+    public String toString() {
+      return kind + " " + first + " and " + second;
+    }
+  }
+}
@@ -0,0 +1,248 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Dependency index over the parameters of a design space.
+ * As demonstrated by the {@code AdvancedSetValueTest} specification, the legal
+ * values of a parameter depend on the current values of the parameters it
+ * references. So after setting the value of a parameter, the parameters that
+ * (directly or indirectly) reference it may need to be rechecked, and no
+ * others. This index answers which ones, and in which order.
+ * <p>
+ * Parameters are identified by absolute IDs, such as "Point.X". A reference to
+ * an array element (such as "A.1") counts as a reference to the array, and a
+ * change to a structured parameter counts as a change to all of its nested
+ * parameters.
+ * <p>
+ * This class is immutable.
+ *
+ * @author Christoffer Fink
+ * @see Bounds
+ */
+public class ImpactIndex {
+  private final Map<String, ParamCfg> params;
+  private final Map<String, Set<String>> dependencies = new HashMap<>();
+  private final Map<String, Set<String>> dependents = new HashMap<>();
+  private final Map<String, Integer> rank = new HashMap<>();
+  private final List<String> order;
+  private final Set<String> circular;
+
+  private ImpactIndex(Map<String, ParamCfg> params) {
+    this.params = params;
+    params.keySet().forEach(id -> dependents.put(id, new LinkedHashSet<>()));
+    params.forEach((id, param) -> {
+      Set<String> deps = new LinkedHashSet<>();
+      getLimits(param).forEach(e -> e.getReferences()
+          .forEach(ref -> deps.add(resolve(ref))));
+      dependencies.put(id, Collections.unmodifiableSet(deps));
+      deps.stream()
+        .filter(params::containsKey)
+        .forEach(dep -> dependents.get(dep).add(id));
+    });
+    List<String> sorted = sort();
+    Set<String> unordered = new LinkedHashSet<>(params.keySet());
+    unordered.removeAll(sorted);
+    sorted.addAll(unordered);
+    for (int i = 0; i < sorted.size(); i++) {
+      rank.put(sorted.get(i), i);
+    }
+    this.order = Collections.unmodifiableList(sorted);
+    this.circular = Collections.unmodifiableSet(unordered);
+  }
+
+  /** Indexes all the parameters in the design space. */
+  public static ImpactIndex of(DesignSpaceCfg space) {
+    return of(space.getParameters());
+  }
+
+  /** Indexes the parameters (and all nested parameters). */
+  public static ImpactIndex of(ParamCfg ... params) {
+    return of(Stream.of(params));
+  }
+
+  // Records all parameters by absolute ID.
+  // Later duplicates replace earlier ones, just like in InPUT.
+  static ImpactIndex of(Stream<ParamCfg> params) {
+    Map<String, ParamCfg> flat = new LinkedHashMap<>();
+    Traversal.of(params).preOrder()
+      .forEach(node -> flat.put(node.getId(), node.getParam()));
+    return new ImpactIndex(flat);
+  }
+
+  /** Returns the absolute IDs of all parameters, in declaration order. */
+  public Set<String> getIds() {
+    return Collections.unmodifiableSet(params.keySet());
+  }
+
+  /**
+   * Returns the IDs that the parameter references directly. These may
+   * include IDs of parameters that do not exist.
+   */
+  public Set<String> getDependencies(String id) {
+    return dependencies.getOrDefault(resolve(id), Collections.emptySet());
+  }
+
+  /** Returns the IDs of the parameters that reference this one directly. */
+  public Set<String> getDependents(String id) {
+    Set<String> result = dependents.get(resolve(id));
+    return result == null ? Collections.emptySet()
+      : Collections.unmodifiableSet(result);
+  }
+
+  /**
+   * Returns all IDs that are affected, directly or indirectly, when the value
+   * of the given parameter changes. The changed parameter itself is not
+   * included. The IDs are in {@link #getOrder() dependency order}, so each
+   * parameter can be rechecked after all the parameters it depends on.
+   * The cost is proportional to the number of affected parameters and their
+   * dependency edges, not to the size of the design space.
+   */
+  public List<String> getAffected(String id) {
+    Set<String> changed = getChanged(resolve(id));
+    Set<String> seen = new HashSet<>(changed);
+    Deque<Iterator<String>> stack = new ArrayDeque<>();
+    List<String> postOrder = new ArrayList<>();
+    Deque<String> path = new ArrayDeque<>();
+    for (String start : changed) {
+      stack.push(dependents.get(start).iterator());
+      path.push(start);
+      while (!stack.isEmpty()) {
+        Iterator<String> it = stack.peek();
+        if (it.hasNext()) {
+          String next = it.next();
+          if (seen.add(next)) {
+            stack.push(dependents.get(next).iterator());
+            path.push(next);
+          }
+        } else {
+          stack.pop();
+          String done = path.pop();
+          if (!changed.contains(done)) {
+            postOrder.add(done);
+          }
+        }
+      }
+    }
+    Collections.reverse(postOrder);
+    if (!circular.isEmpty()) {
+      // Reverse post-order cannot be trusted in the presence of cycles.
+      postOrder.sort((a, b) -> rank.get(a) - rank.get(b));
+    }
+    return postOrder;
+  }
+
+  /**
+   * Returns all IDs such that every parameter comes after the parameters it
+   * depends on. Parameters that cannot be ordered, because they are part of
+   * or depend on a {@link #getCircular() circular dependency}, come last.
+   */
+  public List<String> getOrder() {
+    return order;
+  }
+
+  /**
+   * Returns the IDs of parameters that are part of, or depend on, a circular
+   * dependency.
+   */
+  public Set<String> getCircular() {
+    return circular;
+  }
+
+  /** Returns the parameter configuration with this absolute ID, or null. */
+  ParamCfg getParam(String id) {
+    return params.get(id);
+  }
+
+  /** Maps array element IDs ("A.1.2") to the ID of the array ("A"). */
+  String resolve(String id) {
+    String result = id;
+    while (!params.containsKey(result) && result.matches(".+\\.\\d+")) {
+      result = result.substring(0, result.lastIndexOf('.'));
+    }
+    return result;
+  }
+
+  /** Returns the limits of the parameter as parsed expressions. */
+  static List<Expression> getLimits(ParamCfg param) {
+    Range r = param.getRange();
+    List<Expression> result = new ArrayList<>();
+    Stream.of(r.inclMin(), r.exclMin(), r.inclMax(), r.exclMax())
+      .forEach(limit -> result.addAll(Expression.split(limit.orElse(null))));
+    return result;
+  }
+
+  // Changing a structured parameter changes everything nested inside it.
+  private Set<String> getChanged(String id) {
+    Set<String> result = new LinkedHashSet<>();
+    ParamCfg param = params.get(id);
+    if (param != null) {
+      // The traversal IDs are relative to the parent of the parameter.
+      String parent = id.substring(0, id.length() - param.getId().length());
+      Traversal.of(param).preOrder()
+        .map(node -> parent + node.getId())
+        .filter(params::containsKey)
+        .forEach(result::add);
+    }
+    return result;
+  }
+
+  // Kahn's algorithm. Parameters that end up with unresolved dependencies
+  // are left out.
+  private List<String> sort() {
+    Map<String, Integer> indegree = new HashMap<>();
+    Deque<String> ready = new ArrayDeque<>();
+    params.keySet().forEach(id -> {
+      int n = (int) dependencies.get(id).stream()
+        .filter(params::containsKey)
+        .count();
+      indegree.put(id, n);
+      if (n == 0) {
+        ready.add(id);
+      }
+    });
+    List<String> result = new ArrayList<>();
+    while (!ready.isEmpty()) {
+      String id = ready.poll();
+      result.add(id);
+      for (String dependent : dependents.get(id)) {
+        if (indegree.merge(dependent, -1, Integer::sum) == 0) {
+          ready.add(dependent);
+        }
+      }
+    }
+    return result;
+  }
+}
@@ -68,6 +68,38 @@ public class Interval {
     return new Interval(limits[0], limits[1], limits[2], limits[3], spec);
   }
 
+  /**
+   * Returns an Interval with the given endpoints. Infinite endpoints are
+   * translated to the asterisk notation (and are always exclusive), so that
+   * the result is equivalent to parsing the corresponding string.
+   *
+   * @param min the lower endpoint, possibly negative infinity
+   * @param inclMin whether the lower endpoint is inclusive
+   * @param max the upper endpoint, possibly positive infinity
+   * @param inclMax whether the upper endpoint is inclusive
+   */
+  public static Interval of(double min, boolean inclMin,
+      double max, boolean inclMax) {
+    boolean finiteMin = !Double.isInfinite(min);
+    boolean finiteMax = !Double.isInfinite(max);
+    String spec = (inclMin && finiteMin ? "[" : "]")
+      + (finiteMin ? Double.toString(min) : "*") + ","
+      + (finiteMax ? Double.toString(max) : "*")
+      + (inclMax && finiteMax ? "]" : "[");
+    return valueOf(spec);
+  }
+
+  /**
+   * Checks whether this interval is empty. That is, the lower endpoint is
+   * above the upper endpoint, or they coincide and at least one is exclusive.
+   */
+  public boolean isEmpty() {
+    double min = getMin();
+    double max = getMax();
+    return min > max || (min == max && !(inclMin.isPresent()
+        && inclMax.isPresent()));
+  }
+
   /**
    * Checks whether this interval contains a given number.
    * @param value the value to test for membership
@@ -136,6 +168,16 @@ public class Interval {
     return Optional.ofNullable(limit != null ? Double.valueOf(limit) : null);
   }
 
+  private double getMin() {
+    return inclMin.orElse(exclMin.orElse(Double.NEGATIVE_INFINITY))
+      .doubleValue();
+  }
+
+  private double getMax() {
+    return inclMax.orElse(exclMax.orElse(Double.POSITIVE_INFINITY))
+      .doubleValue();
+  }
+
   private boolean lowerLimitMatches(Number value) {
     if (inclMin.isPresent()) {
       return value.doubleValue() >= inclMin.get().doubleValue();
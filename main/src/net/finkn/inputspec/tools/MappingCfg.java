@@ -64,7 +64,8 @@ public class MappingCfg {
   private final String set;
   private final String type;
   private final Type mappingType;
-  private final Xml xml = Xml.getInstance().prefix(X.PREFIX);
+  private Fingerprint fingerprint;
+  private XmlWriter.Fragment fragment;
 
   private MappingCfg(String id, String add, String con, String get, String set,
       String type, Type mt) {
@@ -105,34 +106,89 @@ public class MappingCfg {
     return mappingType;
   }
 
+  /**
+   * Returns the content fingerprint of this mapping.
+   * Mappings with the same XML have the same fingerprint.
+   */
+  public Fingerprint fingerprint() {
+    Fingerprint result = fingerprint;
+    if (result == null) {
+      result = Fingerprint.hasher()
+        .add(mappingType.name())
+        .add(id)
+        .add(type)
+        .add(add)
+        .add(constructor)
+        .add(get)
+        .add(set)
+        .build();
+      fingerprint = result;
+    }
+    return result;
+  }
+
+  /**
+   * Checks whether the mappings are structurally equal, meaning that they
+   * have the same XML. Mappings with different (cached) fingerprints are
+   * rejected in constant time.
+   * @see Difference
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof MappingCfg)) {
+      return false;
+    }
+    MappingCfg that = (MappingCfg) o;
+    return fingerprint().equals(that.fingerprint())
+      && !Difference.of(this, that).isPresent();
+  }
+
+  /** Returns a hash code derived from the fingerprint. */
+  @Override
+  public int hashCode() {
+    return fingerprint().hashCode();
+  }
+
   public String xml() {
-    return xml(0);
+    StringBuilder sb = new StringBuilder();
+    xml(XmlWriter.of(sb, X.PREFIX));
+    return sb.toString();
   }
-  String xml(int level) {
-    return xml.level(level).e(getTag(), getAttributes(), getChildren(level));
+
+  void xml(XmlWriter out) {
+    out.write(fragment());
+  }
+
+  private XmlWriter.Fragment fragment() {
+    XmlWriter.Fragment result = fragment;
+    if (result == null) {
+      List<XmlWriter.Fragment> children = new ArrayList<>();
+      if (mappingType.equals(Type.WRAPPER)
+          || mappingType.equals(Type.COMPLEX)) {
+        String tag = mappingType.equals(Type.COMPLEX) ? X.COMPLEX : X.WRAPPER;
+        children.add(XmlWriter.fragment(X.PREFIX, tag, out -> { },
+              Collections.emptyList()));
+      }
+      result = XmlWriter.fragment(X.PREFIX, getTag(), out -> out
+          .attribute(X.ID, id)
+          .attribute(X.TYPE, type)
+          .attribute(X.ADD, add)
+          .attribute(X.CONSTRUCTOR, constructor)
+          .attribute(X.GET, get)
+          .attribute(X.SET, set),
+        children);
+      fragment = result;
+    }
+    return result;
   }
 
   // TODO: This Mapping + (Wrapper|Complex) business is pretty awkward.
   private String getTag() {
     return mappingType.equals(Type.MAPPING_TYPE) ? X.MAPPING_TYPE : X.MAPPING;
   }
-  private Map<String, Optional<? extends Object>> getAttributes() {
-    Map<String, Optional<? extends Object>> attrib = new HashMap<>();
-    attrib.put(X.ID, Optional.ofNullable(getId()));
-    attrib.put(X.TYPE, Optional.ofNullable(getType()));
-    attrib.put(X.ADD, Optional.ofNullable(getAdd()));
-    attrib.put(X.CONSTRUCTOR, Optional.ofNullable(getConstructor()));
-    attrib.put(X.GET, Optional.ofNullable(getGet()));
-    attrib.put(X.SET, Optional.ofNullable(getSet()));
-    return attrib;
-  }
-  private List<String> getChildren(int level) {
-    if (mappingType.equals(Type.WRAPPER) || mappingType.equals(Type.COMPLEX)) {
-      String tag = mappingType.equals(Type.COMPLEX) ? X.COMPLEX : X.WRAPPER;
-      return Arrays.asList(xml.level(level + 1).e(tag));
-    }
-    return Collections.emptyList();
-  }
 
   /** Returns a builder that can create instances of this class. */
   public static Builder builder() {
@@ -0,0 +1,367 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Delta debugging minimizer for design space configurations.
+ * Given a configuration that triggers some failure, the minimizer searches
+ * for a smaller configuration that still triggers it. The top-level
+ * parameters are reduced with the ddmin algorithm, after which individual
+ * parameters are simplified one step at a time: parameters are removed,
+ * structured parameters are replaced by their nested parameters, fixed values
+ * and limits are dropped, multi-ranges lose ranges, array types lose their
+ * dimensions, and expressions are replaced by their value (with references
+ * resolving to 0). This continues until no single step preserves the
+ * failure, so the result is 1-minimal with respect to these steps.
+ * <p>
+ * The failure predicate is re-run for every candidate, and the candidates of
+ * each step are tested in parallel. Of the failing candidates, the first one
+ * is always chosen, so the result does not depend on scheduling. A predicate
+ * that throws an exception is considered to not fail. Since InPUT caches
+ * design spaces by ID, every candidate gets a unique ID, derived from the ID
+ * of the original configuration. The result is the last failing candidate
+ * (or the original, if nothing could be simplified), so the predicate has
+ * been run on exactly that configuration.
+ * <p>
+ * InPUT keeps every design space it has constructed, and most predicates
+ * construct one per candidate. So all of InPUT's stores are
+ * {@link TestCleanup#cleanup() released} after each step, when no predicate
+ * is running. Minimization should therefore not run while other code relies
+ * on InPUT remembering its design spaces.
+ * <p>
+ * This class is immutable.
+ *
+ * @author Christoffer Fink
+ * @see Fuzzer
+ */
+public class Minimizer {
+  private static final AtomicLong counter = new AtomicLong();
+
+  private final Predicate<DesignSpaceCfg> failure;
+  private final int threads;
+  private final Runnable release;
+
+  private Minimizer(Predicate<DesignSpaceCfg> failure, int threads,
+      Runnable release) {
+    this.failure = failure;
+    this.threads = threads;
+    this.release = release;
+  }
+
+  /**
+   * Creates a minimizer that preserves the failure, using all available
+   * cores.
+   */
+  public static Minimizer of(Predicate<DesignSpaceCfg> failure) {
+    return of(failure, TestCleanup::cleanup);
+  }
+
+  /**
+   * Creates a minimizer that calls {@code release} instead of releasing
+   * InPUT's stores.
+   */
+  static Minimizer of(Predicate<DesignSpaceCfg> failure, Runnable release) {
+    if (failure == null) {
+      throw new NullPointerException("Failure predicate must not be null.");
+    }
+    return new Minimizer(failure, Runtime.getRuntime().availableProcessors(),
+        release);
+  }
+
+  /** Returns a minimizer that tests candidates using this many threads. */
+  public Minimizer threads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Number of threads must be positive.");
+    }
+    return new Minimizer(failure, threads, release);
+  }
+
+  /**
+   * Minimizes the configuration.
+   * @throws IllegalArgumentException if the configuration does not fail
+   */
+  public DesignSpaceCfg minimize(DesignSpaceCfg space) {
+    if (!fails(space)) {
+      throw new IllegalArgumentException("Configuration does not fail.");
+    }
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      DesignSpaceCfg current = ddmin(pool, space, ps -> with(space, ps));
+      Optional<DesignSpaceCfg> next = first(pool, candidates(current));
+      while (next.isPresent()) {
+        current = next.get();
+        next = first(pool, candidates(current));
+      }
+      return current;
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  // ----- ddmin -----
+
+  // Returns the last failing candidate, or the space if none failed.
+  private DesignSpaceCfg ddmin(ForkJoinPool pool, DesignSpaceCfg space,
+      Function<List<ParamCfg>, DesignSpaceCfg> wrap) {
+    DesignSpaceCfg result = space;
+    List<ParamCfg> items = list(space);
+    int n = 2;
+    while (items.size() >= 2) {
+      List<List<ParamCfg>> subsets = split(items, n);
+      List<List<ParamCfg>> reduced = new ArrayList<>(subsets);
+      if (n > 2) {
+        for (int i = 0; i < n; i++) {
+          reduced.add(complement(subsets, i));
+        }
+      }
+      List<DesignSpaceCfg> candidates = reduced.stream()
+        .map(wrap)
+        .collect(Collectors.toList());
+      OptionalInt found = firstIndex(pool, candidates);
+      if (found.isPresent()) {
+        result = candidates.get(found.getAsInt());
+        items = reduced.get(found.getAsInt());
+        n = found.getAsInt() < subsets.size() ? 2 : Math.max(n - 1, 2);
+      } else if (n >= items.size()) {
+        break;
+      } else {
+        n = Math.min(2 * n, items.size());
+      }
+    }
+    return result;
+  }
+
+  private static List<List<ParamCfg>> split(List<ParamCfg> items, int n) {
+    List<List<ParamCfg>> result = new ArrayList<>();
+    int start = 0;
+    for (int i = 0; i < n; i++) {
+      int end = start + (items.size() - start) / (n - i);
+      result.add(items.subList(start, end));
+      start = end;
+    }
+    return result;
+  }
+
+  private static List<ParamCfg> complement(List<List<ParamCfg>> subsets,
+      int skip) {
+    List<ParamCfg> result = new ArrayList<>();
+    for (int i = 0; i < subsets.size(); i++) {
+      if (i != skip) {
+        result.addAll(subsets.get(i));
+      }
+    }
+    return result;
+  }
+
+  // ----- simplification steps -----
+
+  private List<DesignSpaceCfg> candidates(DesignSpaceCfg space) {
+    List<DesignSpaceCfg> result = new ArrayList<>();
+    candidates(list(space), ps -> with(space, ps), result);
+    return result;
+  }
+
+  private static void candidates(List<ParamCfg> params,
+      Function<List<ParamCfg>, DesignSpaceCfg> wrap,
+      List<DesignSpaceCfg> result) {
+    for (int i = 0; i < params.size(); i++) {
+      int index = i;
+      ParamCfg param = params.get(i);
+      reductions(param).forEach(r -> result.add(
+            wrap.apply(splice(params, index, r))));
+      List<ParamCfg> nested = param.getNested().collect(Collectors.toList());
+      candidates(nested, ns -> wrap.apply(splice(params, index,
+              Collections.singletonList(copy(param).add(toArray(ns))
+                .build()))), result);
+    }
+  }
+
+  // Ways to replace the parameter with something simpler, biggest first.
+  private static List<List<ParamCfg>> reductions(ParamCfg param) {
+    List<List<ParamCfg>> result = new ArrayList<>();
+    result.add(Collections.emptyList());
+    if (param.getParamType() != ParamCfg.ParamType.NUMERIC) {
+      List<ParamCfg> nested = param.getNested().collect(Collectors.toList());
+      if (!nested.isEmpty()) {
+        result.add(nested);
+      }
+      return result;
+    }
+    Range r = param.getRange();
+    if (param.getFixed() != null) {
+      result.add(single(copy(param).fixed(null)));
+    }
+    if (param.getType() != null && param.getType().contains("[")) {
+      String type = param.getType();
+      result.add(single(copy(param).type(type.substring(0, type.indexOf('[')))));
+    }
+    reduceLimit(param, r.inclMin(), (b, s) -> b.inclMin(s), result);
+    reduceLimit(param, r.exclMin(), (b, s) -> b.exclMin(s), result);
+    reduceLimit(param, r.inclMax(), (b, s) -> b.inclMax(s), result);
+    reduceLimit(param, r.exclMax(), (b, s) -> b.exclMax(s), result);
+    return result;
+  }
+
+  private static void reduceLimit(ParamCfg param, Optional<String> limit,
+      Setter setter, List<List<ParamCfg>> result) {
+    if (!limit.isPresent()) {
+      return;
+    }
+    result.add(single(setter.set(copy(param), null)));
+    List<Expression> parts = Expression.split(limit.get());
+    for (int i = 0; parts.size() > 1 && i < parts.size(); i++) {
+      List<Expression> fewer = new ArrayList<>(parts);
+      fewer.remove(i);
+      result.add(single(setter.set(copy(param), join(fewer, -1, null))));
+    }
+    for (int i = 0; i < parts.size(); i++) {
+      if (parts.get(i).hasReferences()) {
+        double value = parts.get(i).evaluate(id -> 0);
+        if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+          result.add(single(setter.set(copy(param),
+                  join(parts, i, format(value)))));
+        }
+      }
+    }
+  }
+
+  private static String join(List<Expression> parts, int index,
+      String replacement) {
+    List<String> result = new ArrayList<>();
+    for (int i = 0; i < parts.size(); i++) {
+      result.add(i == index ? replacement : parts.get(i).toString());
+    }
+    return String.join(",", result);
+  }
+
+  private static String format(double value) {
+    return value == Math.rint(value) && Math.abs(value) < 1e15
+      ? Long.toString((long) value) : Double.toString(value);
+  }
+
+  // ----- parameter and space reconstruction -----
+
+  /** Returns a builder that builds a copy of the parameter. */
+  private static ParamCfg.Builder copy(ParamCfg param) {
+    ParamCfg.Builder builder = ParamCfg.builder()
+      .id(param.getId())
+      .type(param.getType())
+      .fixed(param.getFixed());
+    switch (param.getParamType()) {
+      case STRUCTURED:
+        builder = builder.structured();
+        break;
+      case CHOICE:
+        builder = builder.choice();
+        break;
+      default:
+        Range r = param.getRange();
+        builder = builder
+          .inclMin(r.inclMin().orElse(null))
+          .exclMin(r.exclMin().orElse(null))
+          .inclMax(r.inclMax().orElse(null))
+          .exclMax(r.exclMax().orElse(null));
+    }
+    return builder;
+  }
+
+  private static List<ParamCfg> single(ParamCfg.Builder builder) {
+    return Collections.singletonList(builder.build());
+  }
+
+  private static List<ParamCfg> splice(List<ParamCfg> params, int index,
+      List<ParamCfg> replacement) {
+    List<ParamCfg> result = new ArrayList<>(params.subList(0, index));
+    result.addAll(replacement);
+    result.addAll(params.subList(index + 1, params.size()));
+    return result;
+  }
+
+  private static ParamCfg[] toArray(List<ParamCfg> params) {
+    return params.toArray(new ParamCfg[params.size()]);
+  }
+
+  private static List<ParamCfg> list(DesignSpaceCfg space) {
+    return space.getParameters().collect(Collectors.toList());
+  }
+
+  private static DesignSpaceCfg with(DesignSpaceCfg space,
+      List<ParamCfg> params) {
+    String id = space.getId().map(s -> s + "_min" + counter.incrementAndGet())
+      .orElse(null);
+    return DesignSpaceCfg.builder()
+      .id(id)
+      .ref(space.getMappingRef().orElse(null))
+      .mapping(space.getMapping().orElse(null))
+      .param(toArray(params))
+      .build();
+  }
+
+  // ----- testing candidates -----
+
+  private Optional<DesignSpaceCfg> first(ForkJoinPool pool,
+      List<DesignSpaceCfg> candidates) {
+    OptionalInt index = firstIndex(pool, candidates);
+    return index.isPresent()
+      ? Optional.of(candidates.get(index.getAsInt())) : Optional.empty();
+  }
+
+  // No predicate is running once a step is done, so releasing is safe.
+  private OptionalInt firstIndex(ForkJoinPool pool,
+      List<DesignSpaceCfg> candidates) {
+    try {
+      return pool.submit(() -> IntStream.range(0, candidates.size())
+          .parallel()
+          .filter(i -> fails(candidates.get(i)))
+          .findFirst()).get();
+    } catch (InterruptedException | ExecutionException e) {
+      throw new IllegalStateException("Minimization failed.", e);
+    } finally {
+      release.run();
+    }
+  }
+
+  private boolean fails(DesignSpaceCfg space) {
+    try {
+      return failure.test(space);
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  @FunctionalInterface
+  private interface Setter {
+    ParamCfg.Builder set(ParamCfg.Builder builder, String limit);
+  }
+}
@@ -0,0 +1,426 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Executable reference model of how InPUT4j v0.5 treats numeric parameters.
+ * The v050 specification tests describe the behavior in prose and examples.
+ * This class turns those descriptions into code, so that a parameter
+ * configuration can be checked without creating a design space. That makes it
+ * suitable as the ground truth for large-scale differential testing.
+ * <p>
+ * There are two separate questions, because designs and design spaces do not
+ * agree on which values are legal (see {@code SetValueTest}):
+ * <ul>
+ *   <li>{@link #accepts(Object, ToDoubleFunction)} models
+ *   {@code IDesign.setValue}. Limits of integer parameters are truncated,
+ *   exclusive limits are accepted for floating point parameters, only values
+ *   in the intersection of all ranges of a multi-range are legal, and only
+ *   the first range of an exclusive multi-range counts. A fixed value is
+ *   the only legal value, and only if it is in range.</li>
+ *   <li>{@link #next(Random)} models {@code IDesignSpace.next}. References
+ *   resolve to 0, empty ranges have their limits swapped, the maximum integer
+ *   is never generated (unless it is the only value), integer limits that
+ *   overflow roll over, fixed values are truncated, exclusive multi-ranges
+ *   degenerate to the first range, multi-ranges defined with expressions only
+ *   use the last range, and ranges without a max fail.</li>
+ * </ul>
+ * Configurations that InPUT refuses to import (an inclusive and an exclusive
+ * limit on the same side, missing min limits in a multi-range, plain
+ * references and expressions without references) are rejected when creating
+ * the oracle. Java type matching (see {@code TypeMismatchTest}) is not
+ * modeled. Neither is BigDecimal precision; decimal parameters are treated as
+ * doubles.
+ * <p>
+ * All limits are parsed once, and limits without references are evaluated
+ * once, so checking values is cheap.
+ * <p>
+ * This class is immutable. Sampling is thread-safe as long as each thread
+ * uses its own Random.
+ *
+ * @author Christoffer Fink
+ * @see Bounds
+ */
+public class Oracle {
+  private static final ToDoubleFunction<String> ZERO = id -> 0;
+
+  private final String id;
+  private final Kind kind;
+  private final Optional<Object> fixed;
+  private final boolean inclMin;
+  private final boolean inclMax;
+  private final Expression[] mins;
+  private final Expression[] maxs;
+  private final double[] minValues;
+  private final double[] maxValues;
+  private final boolean references;
+
+  private Oracle(ParamCfg param) {
+    if (param.getParamType() != ParamCfg.ParamType.NUMERIC) {
+      throw new IllegalArgumentException(param.getId() + " is not numeric.");
+    }
+    Range range = param.getRange();
+    this.id = param.getId();
+    this.kind = Kind.of(param.getType());
+    this.inclMin = range.inclMin().isPresent();
+    this.inclMax = range.inclMax().isPresent();
+    if ((inclMin && range.exclMin().isPresent())
+        || (inclMax && range.exclMax().isPresent())) {
+      throw illegal("inclusive and exclusive limit on the same side");
+    }
+    this.mins = parse(range.inclMin().orElse(range.exclMin().orElse(null)));
+    this.maxs = parse(range.inclMax().orElse(range.exclMax().orElse(null)));
+    if (maxs.length > 1 && maxs.length > mins.length) {
+      throw illegal("multi-range is missing a min limit");
+    }
+    this.references = hasReferences(mins) || hasReferences(maxs);
+    this.minValues = constants(mins);
+    this.maxValues = constants(maxs);
+    this.fixed = Optional.ofNullable(param.getFixed()).map(kind::fix);
+  }
+
+  /**
+   * Creates an oracle for the numeric parameter.
+   * @throws IllegalArgumentException if InPUT would not accept the parameter
+   */
+  public static Oracle of(ParamCfg param) {
+    return new Oracle(param);
+  }
+
+  /**
+   * Checks whether a design accepts the value for a parameter without
+   * references.
+   * @throws IllegalStateException if the parameter references others
+   */
+  public boolean accepts(Object value) {
+    if (references) {
+      throw new IllegalStateException(id + " needs values for references.");
+    }
+    return accepts(value, ZERO);
+  }
+
+  /**
+   * Checks whether a design accepts the value, given the current values of
+   * the referenced parameters.
+   */
+  public boolean accepts(Object value, ToDoubleFunction<String> env) {
+    if (kind == Kind.BOOLEAN) {
+      return value instanceof Boolean
+        && (!fixed.isPresent() || fixed.get().equals(value));
+    }
+    if (!(value instanceof Number)) {
+      return false;
+    }
+    if (fixed.isPresent() && !fixed.get().equals(kind.box((Number) value))) {
+      return false;
+    }
+    return inAllRanges((Number) value, env);
+  }
+
+  /** Generates a value the way a design space would. */
+  public Object next(Random random) {
+    if (fixed.isPresent()) {
+      return fixed.get();
+    }
+    if (kind == Kind.BOOLEAN) {
+      return random.nextBoolean();
+    }
+    int i = chooseRange(random);
+    double min = i < mins.length ? limit(mins, minValues, i, ZERO)
+      : Double.NEGATIVE_INFINITY;
+    double max = i < maxs.length ? limit(maxs, maxValues, i, ZERO)
+      : Double.POSITIVE_INFINITY;
+    return kind.isIntegral() ? nextIntegral(random, min, max)
+      : nextReal(random, min, max);
+  }
+
+  /** Returns a generator backed by {@link #next(Random)}. */
+  public Generator<Object> generator(Random random) {
+    return Generator.fromSupplier(() -> next(random));
+  }
+
+  /** Returns a sink backed by {@link #accepts(Object)}. */
+  public Sink<Object> sink() {
+    return Sink.fromPredicate(this::accepts);
+  }
+
+  // ----- setValue -----
+
+  // Every range must contain the value. Only the first range of an
+  // exclusive (or mixed) multi-range counts.
+  private boolean inAllRanges(Number value, ToDoubleFunction<String> env) {
+    int n = Math.max(mins.length, maxs.length);
+    if (n > 1 && !(inclMin && inclMax)) {
+      n = 1;
+    }
+    if (kind.isIntegral()) {
+      if (!isIntegral(value)) {
+        return false;
+      }
+      long v = value.longValue();
+      if (v < kind.min || v > kind.max) {
+        return false;
+      }
+      for (int i = 0; i < n; i++) {
+        if (i < mins.length) {
+          long lo = kind.truncate(limit(mins, minValues, i, env));
+          if (inclMin ? v < lo : v <= lo) {
+            return false;
+          }
+        }
+        if (i < maxs.length) {
+          long hi = kind.truncate(limit(maxs, maxValues, i, env));
+          if (inclMax ? v > hi : v >= hi) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+    // Exclusive limits are accepted for floating point parameters.
+    double v = value.doubleValue();
+    for (int i = 0; i < n; i++) {
+      if (i < mins.length && v < limit(mins, minValues, i, env)) {
+        return false;
+      }
+      if (i < maxs.length && v > limit(maxs, maxValues, i, env)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isIntegral(Number value) {
+    return value instanceof Integer || value instanceof Long
+      || value instanceof Short || value instanceof Byte
+      || value.doubleValue() == Math.rint(value.doubleValue());
+  }
+
+  // ----- next -----
+
+  private int chooseRange(Random random) {
+    int n = Math.max(mins.length, maxs.length);
+    if (n <= 1) {
+      return 0;
+    }
+    if (references) {
+      return n - 1;
+    }
+    if (inclMin != inclMax) {
+      throw new IllegalStateException(id + " has a mixed multi-range.");
+    }
+    if (!inclMin) {
+      return 0;
+    }
+    int i = random.nextInt(mins.length);
+    if (i >= maxs.length) {
+      throw new IllegalStateException(id + " has no max for range " + i);
+    }
+    return i;
+  }
+
+  // Limits are swapped when the range is empty. The value of the max limit
+  // is excluded, unless it is the only value.
+  private Object nextIntegral(Random random, double min, double max) {
+    long lo = Double.isInfinite(min) ? kind.min : kind.truncate(min);
+    long hi = Double.isInfinite(max) ? kind.max : kind.truncate(max);
+    if (!inclMin && !Double.isInfinite(min)) {
+      lo++;
+    }
+    if (!inclMax && !Double.isInfinite(max)) {
+      hi--;
+    }
+    long a = Math.min(lo, hi);
+    long b = Math.max(lo, hi);
+    if (a == b) {
+      return kind.box(a);
+    }
+    long span = b - a;
+    long r;
+    if (span > 0) {
+      r = a + Math.floorMod(random.nextLong(), span);
+      if (r >= hi) {
+        r++;
+      }
+    } else { // Overflow. The range covers most of the long values.
+      do {
+        r = random.nextLong();
+      } while (r < a || r > b || r == hi);
+    }
+    return kind.box(r);
+  }
+
+  // Exclusive limits are respected for doubles but not for floats.
+  private Object nextReal(Random random, double min, double max) {
+    double a = Math.max(Math.min(min, max), -kind.realMax);
+    double b = Math.min(Math.max(min, max), kind.realMax);
+    boolean exclusive = kind == Kind.DOUBLE && !(inclMin && inclMax)
+      && a != b;
+    double r;
+    do {
+      double t = random.nextDouble();
+      r = a * (1 - t) + b * t;
+    } while (exclusive && ((!inclMin && r == min) || (!inclMax && r == max)));
+    return kind.box(r);
+  }
+
+  // ----- limits -----
+
+  private static double limit(Expression[] e, double[] constants, int i,
+      ToDoubleFunction<String> env) {
+    double c = constants[i];
+    return Double.isNaN(c) ? e[i].evaluate(env) : c;
+  }
+
+  private static double[] constants(Expression[] e) {
+    double[] result = new double[e.length];
+    for (int i = 0; i < e.length; i++) {
+      result[i] = e[i].hasReferences() ? Double.NaN : e[i].evaluate(ZERO);
+    }
+    return result;
+  }
+
+  private static boolean hasReferences(Expression[] e) {
+    for (Expression x : e) {
+      if (x.hasReferences()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // A limit is either a list of numbers, or a list of expressions where at
+  // least one references a parameter. A plain reference is illegal.
+  private Expression[] parse(String limit) {
+    List<Expression> result = Expression.split(limit);
+    boolean literal = true;
+    boolean references = false;
+    for (Expression e : result) {
+      String s = e.toString();
+      literal &= isNumber(s);
+      references |= e.hasReferences();
+      if (e.getReferences().contains(s)) {
+        throw illegal("plain reference " + s);
+      }
+    }
+    if (!literal && !references) {
+      throw illegal("expression without reference in " + limit);
+    }
+    return result.toArray(new Expression[result.size()]);
+  }
+
+  private static boolean isNumber(String s) {
+    try {
+      Double.parseDouble(s);
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  private IllegalArgumentException illegal(String reason) {
+    return new IllegalArgumentException("Illegal parameter " + id + ": "
+        + reason);
+  }
+
+  /** The numeric types, with the information needed to model them. */
+  private enum Kind {
+    INTEGER(Integer.MIN_VALUE, Integer.MAX_VALUE, 0),
+    LONG(Long.MIN_VALUE, Long.MAX_VALUE, 0),
+    SHORT(Short.MIN_VALUE, Short.MAX_VALUE, 0),
+    DOUBLE(0, 0, Double.MAX_VALUE),
+    FLOAT(0, 0, Float.MAX_VALUE),
+    BOOLEAN(0, 0, 0);
+
+    final long min;
+    final long max;
+    final double realMax;
+
+    private Kind(long min, long max, double realMax) {
+      this.min = min;
+      this.max = max;
+      this.realMax = realMax;
+    }
+
+    static Kind of(String type) {
+      String base = type == null ? "" : type.replaceAll("\\[.*", "").trim();
+      switch (base) {
+        case "integer": return INTEGER;
+        case "long":    return LONG;
+        case "short":   return SHORT;
+        case "double":
+        case "decimal": return DOUBLE;
+        case "float":   return FLOAT;
+        case "boolean": return BOOLEAN;
+        default:
+          throw new IllegalArgumentException("Unsupported type " + type);
+      }
+    }
+
+    boolean isIntegral() {
+      return max != 0;
+    }
+
+    // Truncates toward zero, then rolls over like a cast to the type.
+    long truncate(double x) {
+      long v = (long) x;
+      switch (this) {
+        case INTEGER: return (int) v;
+        case SHORT:   return (short) v;
+        default:      return v;
+      }
+    }
+
+    Object box(Number n) {
+      switch (this) {
+        case INTEGER: return (int) truncate(n.doubleValue());
+        case LONG:    return n.longValue();
+        case SHORT:   return (short) truncate(n.doubleValue());
+        case FLOAT:   return n.floatValue();
+        default:      return n.doubleValue();
+      }
+    }
+
+    Object box(long n) {
+      switch (this) {
+        case INTEGER: return (int) n;
+        case SHORT:   return (short) n;
+        default:      return n;
+      }
+    }
+
+    Object box(double n) {
+      return this == FLOAT ? (Object) (float) n : (Object) n;
+    }
+
+    Object fix(String value) {
+      if (this == BOOLEAN) {
+        return Boolean.valueOf(value);
+      }
+      return box(Double.valueOf(value));
+    }
+  }
+}
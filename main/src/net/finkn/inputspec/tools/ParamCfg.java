@@ -24,12 +24,9 @@ import net.finkn.inputspec.tools.X;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 /**
@@ -50,17 +47,18 @@ public class ParamCfg {
   private final String type;
   private final String fixed;
   private final Range range;
-  private final Collection<ParamCfg> nested;
+  private final PersistentList<ParamCfg> nested;
   private final ParamType paramType;
-  private final Xml xml = Xml.getInstance().prefix(X.PREFIX);
+  private Fingerprint fingerprint;
+  private XmlWriter.Fragment fragment;
 
   private ParamCfg(String id, String type, String fixed, Range range,
-      Collection<ParamCfg> nested, ParamType paramType) {
+      PersistentList<ParamCfg> nested, ParamType paramType) {
     this.id = id;
     this.type = type;
     this.fixed = fixed;
     this.range = range;
-    this.nested = new ArrayList<>(nested);
+    this.nested = nested;
     this.paramType = paramType;
 
     if (range == null) {
@@ -88,6 +86,41 @@ public class ParamCfg {
     return nested.stream();
   }
 
+  /** Returns the nested parameters without copying. Must not be modified. */
+  Collection<ParamCfg> nested() {
+    return nested;
+  }
+
+  /**
+   * Returns the nested parameter at the index.
+   * @throws IndexOutOfBoundsException if there is no such parameter
+   */
+  public ParamCfg getNested(int index) {
+    return nested.get(index);
+  }
+
+  /**
+   * Returns a copy of this parameter where the nested parameter at the index
+   * has been replaced. All other nested parameters are shared, so this only
+   * allocates O(log n) for n nested parameters. Replacing a parameter deep
+   * inside a tree costs the same for each level on the path to it.
+   * @throws IndexOutOfBoundsException if there is no such parameter
+   */
+  public ParamCfg withNested(int index, ParamCfg param) {
+    return new ParamCfg(id, type, fixed, range, nested.with(index, param),
+        paramType);
+  }
+
+  /** Returns a copy with other attributes but the same nested parameters. */
+  ParamCfg withAttributes(String type, String fixed, Range range) {
+    return new ParamCfg(id, type, fixed, range, nested, paramType);
+  }
+
+  /** Returns the kind of parameter (numeric, structured, or choice). */
+  public ParamType getParamType() {
+    return paramType;
+  }
+
   /** Returns a builder that can create instances of this class. */
   public static Builder builder() {
     return new Builder();
@@ -98,32 +131,115 @@ public class ParamCfg {
     return defaultParam;
   }
 
+  /**
+   * Returns the content fingerprint of this parameter, including all nested
+   * parameters. Parameters with the same XML have the same fingerprint.
+   */
+  public Fingerprint fingerprint() {
+    Fingerprint result = fingerprint;
+    if (result == null) {
+      bottomUp(p -> p.fingerprint != null, p -> p.fingerprint = p.hash());
+      result = fingerprint;
+    }
+    return result;
+  }
+
+  // The nested parameters have already been hashed, so this is shallow.
+  private Fingerprint hash() {
+    Fingerprint.Hasher hasher = Fingerprint.hasher()
+      .add(paramType.TAG)
+      .add(id)
+      .add(type)
+      .add(fixed)
+      .add(range.inclMin().orElse(null))
+      .add(range.exclMin().orElse(null))
+      .add(range.inclMax().orElse(null))
+      .add(range.exclMax().orElse(null))
+      .add(nested.size());
+    nested.forEach(p -> hasher.add(p.fingerprint()));
+    return hasher.build();
+  }
+
+  /**
+   * Checks whether the parameters are structurally equal, meaning that they
+   * have the same XML. Parameters with different (cached) fingerprints are
+   * rejected in constant time.
+   * @see Difference
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ParamCfg)) {
+      return false;
+    }
+    ParamCfg that = (ParamCfg) o;
+    return fingerprint().equals(that.fingerprint())
+      && !Difference.of(this, that).isPresent();
+  }
+
+  /** Returns a hash code derived from the fingerprint. */
+  @Override
+  public int hashCode() {
+    return fingerprint().hashCode();
+  }
+
   public String xml() {
-    return xml(0);
+    StringBuilder sb = new StringBuilder();
+    xml(XmlWriter.of(sb, X.PREFIX));
+    return sb.toString();
   }
 
-  String xml(int level) {
-    return xml.level(level).e(getTag(), getAttributes(), getChildren(level));
+  void xml(XmlWriter out) {
+    out.write(fragment());
   }
 
-  private String getTag() {
-    return paramType.TAG;
+  // Nested parameters contribute their own cached fragments, so rendering a
+  // parameter that shares most of its nested parameters with another one
+  // only renders the parameters that actually differ.
+  private XmlWriter.Fragment fragment() {
+    XmlWriter.Fragment result = fragment;
+    if (result == null) {
+      bottomUp(p -> p.fragment != null, p -> p.fragment = p.render());
+      result = fragment;
+    }
+    return result;
   }
 
-  private Map<String, Optional<? extends Object>> getAttributes() {
-    Map<String, Optional<? extends Object>> attrib = new HashMap<>();
-    attrib.put(X.ID, Optional.ofNullable(getId()));
-    attrib.put(X.TYPE, Optional.ofNullable(getType()));
-    attrib.put(X.FIXED, Optional.ofNullable(getFixed()));
-    attrib.put(X.INCLMIN, range.inclMin());
-    attrib.put(X.EXCLMIN, range.exclMin());
-    attrib.put(X.INCLMAX, range.inclMax());
-    attrib.put(X.EXCLMAX, range.exclMax());
-    return attrib;
+  // The nested parameters have already been rendered, so this is shallow.
+  private XmlWriter.Fragment render() {
+    List<XmlWriter.Fragment> children = new ArrayList<>(nested.size());
+    nested.forEach(p -> children.add(p.fragment()));
+    return XmlWriter.fragment(X.PREFIX, paramType.TAG, out -> out
+        .attribute(X.ID, id)
+        .attribute(X.TYPE, type)
+        .attribute(X.FIXED, fixed)
+        .attribute(X.INCLMIN, range.inclMin())
+        .attribute(X.EXCLMIN, range.exclMin())
+        .attribute(X.INCLMAX, range.inclMax())
+        .attribute(X.EXCLMAX, range.exclMax()),
+      children);
   }
 
-  private List<String> getChildren(int level) {
-    return getNested().map(x -> x.xml(level + 1)).collect(Collectors.toList());
+  // Computes a cached value for every parameter in this tree that does not
+  // have one yet, nested parameters first. This is done without recursion,
+  // so arbitrarily deep parameters are fine.
+  private void bottomUp(Predicate<ParamCfg> done, Consumer<ParamCfg> compute) {
+    Traversal.of(this).walk(new Traversal.Visitor() {
+      @Override
+      public Traversal.Action enter(Traversal.Node node) {
+        return done.test(node.getParam())
+          ? Traversal.Action.SKIP : Traversal.Action.CONTINUE;
+      }
+      @Override
+      public Traversal.Action leave(Traversal.Node node) {
+        if (!done.test(node.getParam())) {
+          compute.accept(node.getParam());
+        }
+        return Traversal.Action.CONTINUE;
+      }
+    });
   }
 
   /**
@@ -154,6 +270,11 @@ public class ParamCfg {
    * As a rule of thumb, {@link #add()} is suitable for numeric parameters,
    * while {@link #nest()} is suitable for structured parameters.
    * <p>
+   * The nested parameters are kept in a persistent list that is shared with
+   * the parameters that are built. So adding a nested parameter and building
+   * a parameter take (effectively) constant time, even with very many nested
+   * parameters.
+   * <p>
    * Note: the builder should be used under the assumption that it is immutable.
    * That is, the builder that is returned by a method invocation should be
    * assumed to be a new instance. The recommended way to use the builder is to
@@ -164,11 +285,10 @@ public class ParamCfg {
    * @author Christoffer Fink 
    */
   public static class Builder {
-    private final static List<ParamCfg> EMPTY_LIST = Collections.emptyList();
     private String id = ParamCfg.DEFAULT_ID;
     private String type;
     private String fixed;
-    private final List<ParamCfg> nested = new ArrayList<>();
+    private PersistentList<ParamCfg> nested = PersistentList.empty();
     private ParamType paramType = ParamType.NUMERIC;
     private Range range = Range.EMPTY;
 
@@ -255,7 +375,7 @@ public class ParamCfg {
      */
     public Builder add(ParamCfg... params) {
       for (ParamCfg param : params) {
-        nested.add(param);
+        nested = nested.plus(param);
       }
       return this;
     }
@@ -281,8 +401,7 @@ public class ParamCfg {
      */
     public Builder nest() {
       ParamCfg param = build();
-      nested.clear();
-      nested.add(param);
+      nested = PersistentList.<ParamCfg>empty().plus(param);
       return this;
     }
 
@@ -290,7 +409,8 @@ public class ParamCfg {
     public ParamCfg build() {
       if (paramType == ParamType.NUMERIC) {
         String npType = getNParamType(type);
-        return new ParamCfg(id, npType, fixed, range, EMPTY_LIST, paramType);
+        return new ParamCfg(id, npType, fixed, range, PersistentList.empty(),
+            paramType);
       } else {
         return new ParamCfg(id, type, fixed, Range.EMPTY, nested, paramType);
       }
@@ -310,7 +430,8 @@ public class ParamCfg {
     }
   }
 
-  private enum ParamType {
+  /** The different kinds of parameter elements. */
+  public enum ParamType {
     NUMERIC(X.NPARAM),
     STRUCTURED(X.SPARAM),
     CHOICE(X.SCHOICE);
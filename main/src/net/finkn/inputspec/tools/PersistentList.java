@@ -0,0 +1,223 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list with structural sharing.
+ * The elements are kept in a 32-way trie, plus a tail block of up to 32
+ * elements that have not yet been pushed into the trie. Appending an element
+ * or replacing one creates a new list that shares everything but the path to
+ * the affected leaf with the old list. So both operations allocate
+ * O(log<sub>32</sub> n) rather than copying all n elements, and the old list
+ * remains valid and unchanged. Lookups are also O(log<sub>32</sub> n), which
+ * is effectively constant.
+ * <p>
+ * This is what lets parameter builders accumulate very many nested
+ * parameters, and lets variants of a parameter share almost all of their
+ * nested parameters.
+ * <p>
+ * The {@code java.util.List} mutators are not supported.
+ * This class is immutable.
+ *
+ * @author Christoffer Fink
+ * @see ParamCfg.Builder
+ */
+final class PersistentList<E> extends AbstractList<E> implements RandomAccess {
+  private static final int BITS = 5;
+  private static final int WIDTH = 1 << BITS;
+  private static final int MASK = WIDTH - 1;
+  private static final PersistentList<Object> EMPTY =
+    new PersistentList<>(0, BITS, new Object[WIDTH], new Object[0]);
+
+  private final int size;
+  private final int shift;
+  private final Object[] root;
+  private final Object[] tail;
+
+  private PersistentList(int size, int shift, Object[] root, Object[] tail) {
+    this.size = size;
+    this.shift = shift;
+    this.root = root;
+    this.tail = tail;
+  }
+
+  /** Returns the empty list. */
+  @SuppressWarnings("unchecked")
+  static <E> PersistentList<E> empty() {
+    return (PersistentList<E>) EMPTY;
+  }
+
+  /** Returns a list with the given elements, in iteration order. */
+  static <E> PersistentList<E> of(Iterable<? extends E> elements) {
+    if (elements instanceof PersistentList) {
+      @SuppressWarnings("unchecked")
+      PersistentList<E> result = (PersistentList<E>) elements;
+      return result;
+    }
+    PersistentList<E> result = empty();
+    for (E e : elements) {
+      result = result.plus(e);
+    }
+    return result;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E get(int index) {
+    return (E) leaf(index)[index & MASK];
+  }
+
+  /** Returns a list with the element appended. */
+  PersistentList<E> plus(E element) {
+    int inTail = size - tailOffset();
+    if (inTail < WIDTH) {
+      Object[] newTail = Arrays.copyOf(tail, inTail + 1);
+      newTail[inTail] = element;
+      return new PersistentList<>(size + 1, shift, root, newTail);
+    }
+    // The tail is full, so push it into the trie.
+    Object[] newRoot;
+    int newShift = shift;
+    if ((size >>> BITS) > (1 << shift)) {
+      // The trie is full too, so grow it by one level.
+      newRoot = new Object[WIDTH];
+      newRoot[0] = root;
+      newRoot[1] = path(shift, tail);
+      newShift += BITS;
+    } else {
+      newRoot = push(shift, root, tail);
+    }
+    return new PersistentList<>(size + 1, newShift, newRoot,
+        new Object[] {element});
+  }
+
+  /**
+   * Returns a list with the element at the index replaced.
+   * @throws IndexOutOfBoundsException if the index is out of range
+   */
+  PersistentList<E> with(int index, E element) {
+    check(index);
+    if (index >= tailOffset()) {
+      Object[] newTail = tail.clone();
+      newTail[index & MASK] = element;
+      return new PersistentList<>(size, shift, root, newTail);
+    }
+    return new PersistentList<>(size, shift,
+        with(shift, root, index, element), tail);
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return new Iterator<E>() {
+      private int index = 0;
+      private Object[] leaf;
+
+      @Override
+      public boolean hasNext() {
+        return index < size;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public E next() {
+        if (index >= size) {
+          throw new NoSuchElementException();
+        }
+        if ((index & MASK) == 0) {
+          leaf = leaf(index);
+        }
+        return (E) leaf[index++ & MASK];
+      }
+    };
+  }
+
+  private int tailOffset() {
+    return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+  }
+
+  private Object[] leaf(int index) {
+    check(index);
+    if (index >= tailOffset()) {
+      return tail;
+    }
+    Object[] node = root;
+    for (int level = shift; level > 0; level -= BITS) {
+      node = (Object[]) node[(index >>> level) & MASK];
+    }
+    return node;
+  }
+
+  private void check(int index) {
+    if (index < 0 || index >= size) {
+      String msg = "Index " + index + " out of range for size " + size + ".";
+      throw new IndexOutOfBoundsException(msg);
+    }
+  }
+
+  // The recursion depth is the height of the trie, which is at most 7.
+  private Object[] push(int level, Object[] parent, Object[] leaf) {
+    int child = ((size - 1) >>> level) & MASK;
+    Object[] result = parent.clone();
+    if (level == BITS) {
+      result[child] = leaf;
+    } else {
+      Object[] node = (Object[]) parent[child];
+      result[child] = node == null
+        ? path(level - BITS, leaf)
+        : push(level - BITS, node, leaf);
+    }
+    return result;
+  }
+
+  private static Object[] path(int level, Object[] leaf) {
+    Object[] result = leaf;
+    for (int l = level; l > 0; l -= BITS) {
+      Object[] node = new Object[WIDTH];
+      node[0] = result;
+      result = node;
+    }
+    return result;
+  }
+
+  private static Object[] with(int level, Object[] node, int index,
+      Object element) {
+    Object[] result = node.clone();
+    if (level == 0) {
+      result[index & MASK] = element;
+    } else {
+      int child = (index >>> level) & MASK;
+      result[child] = with(level - BITS, (Object[]) node[child], index,
+          element);
+    }
+    return result;
+  }
+}
@@ -20,6 +20,7 @@ SOFTWARE.
 */
 package net.finkn.inputspec.tools;
 
+import java.util.Objects;
 import java.util.Optional;
 
 /**
@@ -38,6 +39,7 @@ public class Range {
   private final Optional<String> inclMax;
   private final Optional<String> exclMax;
   private final Interval interval;
+  private final int hash;
 
   private Range(Optional<String> inclMin, Optional<String> exclMin,
       Optional<String> inclMax, Optional<String> exclMax) {
@@ -46,6 +48,7 @@ public class Range {
     this.exclMin = exclMin;
     this.inclMax = inclMax;
     this.exclMax = exclMax;
+    this.hash = Objects.hash(inclMin, exclMin, inclMax, exclMax);
   }
 
   private Range(Interval interval) {
@@ -54,6 +57,7 @@ public class Range {
     this.exclMin = getLimit(interval.getExclMin());
     this.inclMax = getLimit(interval.getInclMax());
     this.exclMax = getLimit(interval.getExclMax());
+    this.hash = Objects.hash(inclMin, exclMin, inclMax, exclMax);
   }
 
   /**
@@ -158,6 +162,32 @@ public class Range {
     return exclMax;
   }
 
+  /**
+   * Checks whether the ranges have the same limits. Whether the limits were
+   * set explicitly or through an interval does not matter.
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Range)) {
+      return false;
+    }
+    Range that = (Range) o;
+    return hash == that.hash
+      && inclMin.equals(that.inclMin)
+      && exclMin.equals(that.exclMin)
+      && inclMax.equals(that.inclMax)
+      && exclMax.equals(that.exclMax);
+  }
+
+  /** Returns a hash code that is computed at construction. */
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
   private boolean hasInterval() {
     return interval != null;
   }
@@ -0,0 +1,544 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Compact binary snapshots of design space and code mapping configurations.
+ * A snapshot is a stream of records, each of which is a {@link DesignSpaceCfg}
+ * or a {@link CodeMappingCfg}. It is meant for storing large corpora of
+ * configurations (such as generated fuzz inputs or regression fixtures)
+ * where XML is too slow to write and read and takes too much space.
+ * <p>
+ * The format is:
+ * <ul>
+ *   <li>a header: the bytes "IPS" followed by a version byte;</li>
+ *   <li>any number of records, each starting with a tag byte ({@value #SPACE}
+ *   for a design space, {@value #MAPPING} for a code mapping);</li>
+ *   <li>an end tag ({@value #END}).</li>
+ * </ul>
+ * All counts and lengths are unsigned LEB128 varints. Strings are written
+ * through a string table that is shared by all records in the stream: a
+ * string is written as 0 (null), 1 followed by its UTF-8 length and bytes
+ * (first occurrence), or 2 + its index in the table (later occurrences).
+ * Since IDs, types and limits repeat a lot, most strings end up taking one
+ * or two bytes. The table holds at most {@value #MAX_TABLE_SIZE} strings,
+ * after which new strings are always written in full.
+ * <p>
+ * A parameter is a flag byte, holding the parameter type in the low two bits
+ * and one bit per present field (fixed value and the four limits), followed
+ * by the ID, the type, the present fields, the number of nested parameters
+ * and the nested parameters. So absent limits take no space at all.
+ * A mapping is its mapping type followed by its six attributes.
+ * <p>
+ * I/O errors are rethrown as {@link UncheckedIOException}, and corrupt or
+ * truncated snapshots cause an {@link IllegalArgumentException}.
+ * Neither the input nor the output is thread-safe.
+ *
+ * @author Christoffer Fink
+ * @see XmlWriter
+ * @see XmlReader
+ */
+public final class Snapshot {
+  static final int SPACE = 1;
+  static final int MAPPING = 2;
+  static final int END = 0;
+  static final int MAX_TABLE_SIZE = 1 << 20;
+
+  private static final byte[] MAGIC = {'I', 'P', 'S'};
+  private static final int VERSION = 1;
+
+  private static final int FIXED = 1 << 2;
+  private static final int INCLMIN = 1 << 3;
+  private static final int EXCLMIN = 1 << 4;
+  private static final int INCLMAX = 1 << 5;
+  private static final int EXCLMAX = 1 << 6;
+
+  private static final int NULL = 0;
+  private static final int INLINE = 1;
+  private static final int INDEXED = 2;
+
+  private static final ParamCfg.ParamType[] PARAM_TYPES =
+    ParamCfg.ParamType.values();
+  private static final MappingCfg.Type[] MAPPING_TYPES =
+    MappingCfg.Type.values();
+
+  private Snapshot() {
+  }
+
+  /** Returns an output that writes a new snapshot to the stream. */
+  public static Output output(OutputStream out) {
+    return new Output(out);
+  }
+
+  /**
+   * Returns an input that reads a snapshot from the stream.
+   * @throws IllegalArgumentException if the stream is not a snapshot
+   */
+  public static Input input(InputStream in) {
+    return new Input(in);
+  }
+
+  /** Writes the design spaces as a complete snapshot. */
+  public static void write(OutputStream out, Iterable<DesignSpaceCfg> spaces) {
+    Output output = output(out);
+    spaces.forEach(output::write);
+    output.finish();
+  }
+
+  /**
+   * Reads all design spaces in a snapshot.
+   * @throws IllegalArgumentException if the snapshot is corrupt or contains
+   *    anything other than design spaces
+   */
+  public static List<DesignSpaceCfg> read(InputStream in) {
+    Input input = input(in);
+    List<DesignSpaceCfg> result = new ArrayList<>();
+    while (input.hasNext()) {
+      result.add(input.designSpace());
+    }
+    return result;
+  }
+
+  /**
+   * Writes records to a snapshot.
+   * The snapshot must be {@link #finish() finished} to be readable.
+   */
+  public static final class Output implements Flushable, Closeable {
+    private final OutputStream out;
+    private final Map<String, Integer> table = new HashMap<>();
+    private final byte[] buf = new byte[10];
+    private boolean finished = false;
+
+    private Output(OutputStream out) {
+      this.out = new BufferedOutputStream(out, 1 << 16);
+      write(MAGIC);
+      write(VERSION);
+    }
+
+    /** Writes a design space record. */
+    public Output write(DesignSpaceCfg space) {
+      write(SPACE);
+      string(space.getId().orElse(null));
+      string(space.getMappingRef().orElse(null));
+      Optional<CodeMappingCfg> mapping = space.getMapping();
+      varint(mapping.isPresent() ? 1 : 0);
+      mapping.ifPresent(this::mapping);
+      varint((int) space.getParameters().count());
+      params(space.getParameters());
+      return this;
+    }
+
+    /** Writes a code mapping record. */
+    public Output write(CodeMappingCfg mapping) {
+      write(MAPPING);
+      mapping(mapping);
+      return this;
+    }
+
+    /** Writes the end tag and flushes, but does not close the stream. */
+    public void finish() {
+      if (!finished) {
+        write(END);
+        finished = true;
+      }
+      flush();
+    }
+
+    @Override
+    public void flush() {
+      try {
+        out.flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /** Finishes the snapshot and closes the stream. */
+    @Override
+    public void close() {
+      finish();
+      try {
+        out.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private void mapping(CodeMappingCfg mapping) {
+      string(mapping.getId());
+      List<MappingCfg> mappings = new ArrayList<>();
+      mapping.getMappings().forEach(mappings::add);
+      varint(mappings.size());
+      for (MappingCfg m : mappings) {
+        write(m.getMappingType().ordinal());
+        string(m.getId());
+        string(m.getType());
+        string(m.getAdd());
+        string(m.getConstructor());
+        string(m.getGet());
+        string(m.getSet());
+      }
+    }
+
+    // Nested parameters follow their parent in pre-order, so the tree can be
+    // written (and read) without recursion.
+    private void params(Stream<ParamCfg> params) {
+      Traversal.of(params).walk(node -> {
+        param(node.getParam());
+        return Traversal.Action.CONTINUE;
+      });
+    }
+
+    private void param(ParamCfg param) {
+      Range range = param.getRange();
+      int flags = param.getParamType().ordinal()
+        | (param.getFixed() != null ? FIXED : 0)
+        | (range.inclMin().isPresent() ? INCLMIN : 0)
+        | (range.exclMin().isPresent() ? EXCLMIN : 0)
+        | (range.inclMax().isPresent() ? INCLMAX : 0)
+        | (range.exclMax().isPresent() ? EXCLMAX : 0);
+      write(flags);
+      string(param.getId());
+      string(param.getType());
+      if (param.getFixed() != null) {
+        string(param.getFixed());
+      }
+      range.inclMin().ifPresent(this::string);
+      range.exclMin().ifPresent(this::string);
+      range.inclMax().ifPresent(this::string);
+      range.exclMax().ifPresent(this::string);
+      varint(param.nested().size());
+    }
+
+    private void string(String s) {
+      if (s == null) {
+        varint(NULL);
+        return;
+      }
+      Integer index = table.get(s);
+      if (index != null) {
+        varint(INDEXED + index);
+        return;
+      }
+      if (table.size() < MAX_TABLE_SIZE) {
+        table.put(s, table.size());
+      }
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      varint(INLINE);
+      varint(bytes.length);
+      write(bytes);
+    }
+
+    private void varint(int value) {
+      int n = 0;
+      int v = value;
+      while ((v & ~0x7F) != 0) {
+        buf[n++] = (byte) ((v & 0x7F) | 0x80);
+        v >>>= 7;
+      }
+      buf[n++] = (byte) v;
+      try {
+        out.write(buf, 0, n);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private void write(int b) {
+      try {
+        out.write(b);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private void write(byte[] bytes) {
+      try {
+        out.write(bytes);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /** Reads records from a snapshot, in the order they were written. */
+  public static final class Input implements Closeable {
+    private final InputStream in;
+    private final List<String> table = new ArrayList<>();
+    private int next;
+
+    private Input(InputStream in) {
+      this.in = new BufferedInputStream(in, 1 << 16);
+      for (byte b : MAGIC) {
+        if (read() != b) {
+          throw new IllegalArgumentException("Not a snapshot.");
+        }
+      }
+      int version = read();
+      if (version != VERSION) {
+        String msg = "Unsupported snapshot version " + version + ".";
+        throw new IllegalArgumentException(msg);
+      }
+      next = read();
+    }
+
+    /** Checks whether there are any more records. */
+    public boolean hasNext() {
+      return next != END;
+    }
+
+    /** Checks whether the next record is a design space. */
+    public boolean isDesignSpace() {
+      return next == SPACE;
+    }
+
+    /** Checks whether the next record is a code mapping. */
+    public boolean isCodeMapping() {
+      return next == MAPPING;
+    }
+
+    /**
+     * Reads the next record, which must be a design space.
+     * @throws IllegalStateException if the next record is something else
+     */
+    public DesignSpaceCfg designSpace() {
+      expect(SPACE);
+      DesignSpaceCfg.Builder builder = DesignSpaceCfg.builder()
+        .id(string())
+        .ref(string());
+      if (varint() != 0) {
+        builder.mapping(mapping());
+      }
+      for (int n = varint(); n > 0; n--) {
+        builder.param(param());
+      }
+      next = read();
+      return builder.build();
+    }
+
+    /**
+     * Reads the next record, which must be a code mapping.
+     * @throws IllegalStateException if the next record is something else
+     */
+    public CodeMappingCfg codeMapping() {
+      expect(MAPPING);
+      CodeMappingCfg result = mapping();
+      next = read();
+      return result;
+    }
+
+    @Override
+    public void close() {
+      try {
+        in.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private void expect(int tag) {
+      if (next != tag) {
+        String msg = next == END ? "No more records."
+          : "The next record is a " + (next == SPACE ? "design space."
+            : "code mapping.");
+        throw new IllegalStateException(msg);
+      }
+    }
+
+    private CodeMappingCfg mapping() {
+      CodeMappingCfg.Builder builder = CodeMappingCfg.builder().id(string());
+      for (int n = varint(); n > 0; n--) {
+        MappingCfg.Builder mapping = MappingCfg.builder();
+        switch (mappingType(read())) {
+          case MAPPING_TYPE: mapping.mappingType(); break;
+          case WRAPPER: mapping.wrapper(); break;
+          case COMPLEX: mapping.complex(); break;
+          default: mapping.mapping(); break;
+        }
+        builder.mapping(mapping
+            .id(string())
+            .type(string())
+            .add(string())
+            .constructor(string())
+            .get(string())
+            .set(string())
+            .build());
+      }
+      return builder.build();
+    }
+
+    private ParamCfg param() {
+      Deque<Pending> stack = new ArrayDeque<>();
+      Pending current = pending();
+      while (true) {
+        if (current.remaining > 0) {
+          current.remaining--;
+          stack.push(current);
+          current = pending();
+        } else {
+          ParamCfg param = current.builder.build();
+          if (stack.isEmpty()) {
+            return param;
+          }
+          current = stack.pop();
+          current.builder.add(param);
+        }
+      }
+    }
+
+    private Pending pending() {
+      int flags = read();
+      ParamCfg.Builder builder = ParamCfg.builder()
+        .id(string())
+        .type(string());
+      switch (paramType(flags & 0x3)) {
+        case STRUCTURED: builder.structured(); break;
+        case CHOICE: builder.choice(); break;
+        default: builder.numeric(); break;
+      }
+      if ((flags & FIXED) != 0) {
+        builder.fixed(string());
+      }
+      if ((flags & INCLMIN) != 0) {
+        builder.inclMin(string());
+      }
+      if ((flags & EXCLMIN) != 0) {
+        builder.exclMin(string());
+      }
+      if ((flags & INCLMAX) != 0) {
+        builder.inclMax(string());
+      }
+      if ((flags & EXCLMAX) != 0) {
+        builder.exclMax(string());
+      }
+      return new Pending(builder, varint());
+    }
+
+    private String string() {
+      int code = varint();
+      if (code == NULL) {
+        return null;
+      }
+      if (code >= INDEXED) {
+        int index = code - INDEXED;
+        if (index >= table.size()) {
+          throw corrupt("Unknown string " + index + ".");
+        }
+        return table.get(index);
+      }
+      byte[] bytes = new byte[varint()];
+      try {
+        int n = 0;
+        while (n < bytes.length) {
+          int count = in.read(bytes, n, bytes.length - n);
+          if (count < 0) {
+            throw new EOFException();
+          }
+          n += count;
+        }
+      } catch (EOFException e) {
+        throw corrupt("Truncated snapshot.");
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      String result = new String(bytes, StandardCharsets.UTF_8);
+      if (table.size() < MAX_TABLE_SIZE) {
+        table.add(result);
+      }
+      return result;
+    }
+
+    private int varint() {
+      int result = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+        int b = read();
+        result |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          if (result < 0) {
+            throw corrupt("Negative count.");
+          }
+          return result;
+        }
+      }
+      throw corrupt("Varint too long.");
+    }
+
+    private int read() {
+      try {
+        int b = in.read();
+        if (b < 0) {
+          throw corrupt("Truncated snapshot.");
+        }
+        return b;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private static ParamCfg.ParamType paramType(int ordinal) {
+      if (ordinal >= PARAM_TYPES.length) {
+        throw corrupt("Unknown parameter type " + ordinal + ".");
+      }
+      return PARAM_TYPES[ordinal];
+    }
+
+    private static MappingCfg.Type mappingType(int ordinal) {
+      if (ordinal >= MAPPING_TYPES.length) {
+        throw corrupt("Unknown mapping type " + ordinal + ".");
+      }
+      return MAPPING_TYPES[ordinal];
+    }
+
+    private static IllegalArgumentException corrupt(String msg) {
+      return new IllegalArgumentException(msg);
+    }
+  }
+
+  // A parameter that is still waiting for some of its nested parameters.
+  private static final class Pending {
+    private final ParamCfg.Builder builder;
+    private int remaining;
+
+    private Pending(ParamCfg.Builder builder, int remaining) {
+      this.builder = builder;
+      this.remaining = remaining;
+    }
+  }
+}
@@ -0,0 +1,303 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic generator of large synthetic design spaces.
+ * The specification tests use design spaces with a handful of parameters,
+ * while real design spaces can have thousands. This generator produces
+ * design spaces of any size, so that the cost of InPUT operations (such as
+ * constructing a design space, {@code next} and {@code nextDesign}) can be
+ * measured at realistic scales.
+ * <p>
+ * The shape of the design space is configurable: the number of top-level
+ * parameters, how many of them are structured, how deep and wide structured
+ * parameters are, how many numeric parameters are arrays (and of how many
+ * dimensions), how many limits depend on other parameters, and the mix of
+ * types. Optionally, every structured parameter is mapped to a given class
+ * in an embedded code mapping.
+ * <p>
+ * The generated configurations are always well-formed: limits are never
+ * empty, and expressions only reference earlier top-level scalar parameters,
+ * so there are no circular dependencies. The same settings (including the
+ * seed) always produce the same design space.
+ * <p>
+ * This class is immutable.
+ *
+ * @author Christoffer Fink
+ * @see Fuzzer
+ */
+public class Synthesizer {
+  private static final String[] TYPES = {
+    "integer", "long", "short", "double", "float", "decimal", "boolean",
+  };
+
+  private final long seed;
+  private final int params;
+  private final double structured;
+  private final int depth;
+  private final int width;
+  private final double arrays;
+  private final int dimensions;
+  private final double dependencies;
+  private final List<String> types;
+  private final String mapping;
+
+  private Synthesizer(Builder b) {
+    this.seed = b.seed;
+    this.params = b.params;
+    this.structured = b.structured;
+    this.depth = b.depth;
+    this.width = b.width;
+    this.arrays = b.arrays;
+    this.dimensions = b.dimensions;
+    this.dependencies = b.dependencies;
+    this.types = b.types;
+    this.mapping = b.mapping;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Generates the design space. The top-level parameters are named "P0",
+   * "P1", and so on, and nested parameters "N0", "N1", and so on.
+   */
+  public DesignSpaceCfg generate() {
+    Random random = new Random(seed);
+    List<String> scalars = new ArrayList<>();
+    List<MappingCfg> mappings = new ArrayList<>();
+    DesignSpaceCfg.Builder space = DesignSpaceCfg.builder()
+      .id("Synthetic_" + seed);
+    for (int i = 0; i < params; i++) {
+      String id = "P" + i;
+      if (depth > 0 && random.nextDouble() < structured) {
+        space.param(structured(id, id, depth, random, mappings));
+      } else {
+        ParamCfg param = numeric(id, random, scalars);
+        space.param(param);
+        if (isReferenceable(param)) {
+          scalars.add(id);
+        }
+      }
+    }
+    if (mapping != null) {
+      space.mapping(CodeMappingCfg.builder()
+          .id("Synthetic_" + seed + "_Mapping")
+          .mapping(mappings.toArray(new MappingCfg[mappings.size()]))
+          .build());
+    }
+    return space.build();
+  }
+
+  // The recursion depth is bounded by the configured nesting depth.
+  private ParamCfg structured(String id, String path, int levels,
+      Random random, List<MappingCfg> mappings) {
+    if (mapping != null) {
+      mappings.add(MappingCfg.builder().id(path).type(mapping).build());
+    }
+    ParamCfg.Builder builder = ParamCfg.builder().structured().id(id);
+    for (int i = 0; i < width; i++) {
+      String nested = "N" + i;
+      builder.add(levels > 1 && random.nextDouble() < structured
+          ? structured(nested, path + MappingCfg.NESTING_DELIM + nested,
+            levels - 1, random, mappings)
+          : numeric(nested, random, null));
+    }
+    return builder.build();
+  }
+
+  // Nested parameters (no scalars given) never have dependencies.
+  private ParamCfg numeric(String id, Random random, List<String> scalars) {
+    String type = types.get(random.nextInt(types.size()));
+    boolean array = random.nextDouble() < arrays;
+    ParamCfg.Builder builder = ParamCfg.builder().id(id);
+    if (array) {
+      StringBuilder sb = new StringBuilder(type);
+      int n = 1 + random.nextInt(dimensions);
+      for (int i = 0; i < n; i++) {
+        sb.append('[').append(1 + random.nextInt(4)).append(']');
+      }
+      builder.type(sb.toString());
+    } else {
+      builder.type(type);
+    }
+    if (type.equals("boolean")) {
+      return builder.build();
+    }
+    boolean integral = type.equals("integer") || type.equals("long")
+      || type.equals("short");
+    int min = random.nextInt(1000) - 500;
+    int span = 1 + random.nextInt(500);
+    if (scalars != null && !scalars.isEmpty()
+        && random.nextDouble() < dependencies) {
+      String ref = scalars.get(random.nextInt(scalars.size()));
+      return builder
+        .inclMin(ref + " - " + span)
+        .inclMax(ref + " + " + span)
+        .build();
+    }
+    return builder
+      .inclMin(integral ? String.valueOf(min) : String.valueOf(min + 0.5))
+      .inclMax(integral ? String.valueOf(min + span)
+          : String.valueOf(min + span + 0.5))
+      .build();
+  }
+
+  // Only scalar numbers can be referenced by expressions.
+  private static boolean isReferenceable(ParamCfg param) {
+    String type = param.getType();
+    return !type.contains("[") && !type.equals("boolean");
+  }
+
+  /**
+   * Builder of synthesizers. By default, a design space with 1000 top-level
+   * parameters is generated, 10% of which are structured (nested at most 2
+   * levels deep, with 4 nested parameters each), 10% of the numeric ones are
+   * arrays of at most 2 dimensions, and 20% of the limits depend on other
+   * parameters. All numeric types are equally common.
+   */
+  public static class Builder {
+    private long seed = 0;
+    private int params = 1000;
+    private double structured = 0.1;
+    private int depth = 2;
+    private int width = 4;
+    private double arrays = 0.1;
+    private int dimensions = 2;
+    private double dependencies = 0.2;
+    private List<String> types = Arrays.asList(TYPES);
+    private String mapping = null;
+
+    private Builder() {
+    }
+
+    public Builder seed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    /** Sets the number of top-level parameters. */
+    public Builder params(int params) {
+      this.params = positive(params, "parameters");
+      return this;
+    }
+
+    /**
+     * Sets the probability that a parameter is structured (rather than
+     * numeric). This applies at every level of nesting.
+     */
+    public Builder structured(double probability) {
+      this.structured = probability(probability);
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of levels of structured parameters.
+     * 0 means no structured parameters.
+     */
+    public Builder depth(int depth) {
+      if (depth < 0) {
+        throw new IllegalArgumentException("Depth must not be negative.");
+      }
+      this.depth = depth;
+      return this;
+    }
+
+    /** Sets the number of parameters nested in each structured parameter. */
+    public Builder width(int width) {
+      this.width = positive(width, "nested parameters");
+      return this;
+    }
+
+    /** Sets the probability that a numeric parameter is an array. */
+    public Builder arrays(double probability) {
+      this.arrays = probability(probability);
+      return this;
+    }
+
+    /** Sets the maximum number of array dimensions. */
+    public Builder dimensions(int dimensions) {
+      this.dimensions = positive(dimensions, "dimensions");
+      return this;
+    }
+
+    /**
+     * Sets the probability that the limits of a top-level scalar parameter
+     * reference an earlier parameter.
+     */
+    public Builder dependencies(double probability) {
+      this.dependencies = probability(probability);
+      return this;
+    }
+
+    /**
+     * Sets the numeric types to choose from. A type that is listed more
+     * than once is chosen correspondingly more often.
+     */
+    public Builder types(String ... types) {
+      if (types.length == 0) {
+        throw new IllegalArgumentException("At least one type is required.");
+      }
+      for (String type : types) {
+        if (!Arrays.asList(TYPES).contains(type)) {
+          throw new IllegalArgumentException("Unsupported type " + type);
+        }
+      }
+      this.types = Arrays.asList(types.clone());
+      return this;
+    }
+
+    /**
+     * Maps every structured parameter to the given class in an embedded
+     * code mapping (or no code mapping, if null).
+     */
+    public Builder mapping(String type) {
+      this.mapping = type;
+      return this;
+    }
+
+    public Synthesizer build() {
+      return new Synthesizer(this);
+    }
+
+    private static int positive(int n, String what) {
+      if (n < 1) {
+        throw new IllegalArgumentException("Number of " + what
+            + " must be positive.");
+      }
+      return n;
+    }
+
+    private static double probability(double p) {
+      if (p < 0 || p > 1) {
+        throw new IllegalArgumentException("Not a probability: " + p);
+      }
+      return p;
+    }
+  }
+}
@@ -0,0 +1,352 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * A design space with named placeholders, from which variants are expanded.
+ * Placeholders have the form {@code ${name}} and can appear in the types,
+ * fixed values and limits of parameters at any level of nesting, for example
+ * {@code inclMax("${max}")} or {@code type("${type}[2]")}.
+ * <p>
+ * The template is analyzed once. Expanding a variant then only substitutes
+ * the attributes that contain placeholders, and only rebuilds the parameters
+ * on the paths to them. Everything else, including the cached fingerprints
+ * and XML fragments of unchanged parameters, is shared with the template
+ * (see {@link DesignSpaceCfg#withParameter(int, ParamCfg)} and
+ * {@link ParamCfg#withNested(int, ParamCfg)}). So the cost of a variant is
+ * proportional to the number of placeholders, not to the size of the
+ * design space.
+ * <p>
+ * Variants can be expanded one at a time, over the {@link #cartesian(Map)
+ * cartesian product} of candidate values, or {@link #sample(Map, long, long)
+ * sampled} from them. Since InPUT caches design spaces by ID, every
+ * expansion gets a number that is unique within the process. A variant
+ * gets the ID of the template with that number as a suffix, and the variants
+ * of a grid additionally get the variant number, so that InPUT never
+ * confuses variants, not even those of different expansions.
+ * <p>
+ * The flip side is that InPUT keeps every variant that has been turned into
+ * a design space, since no two share an ID. Large grids should therefore be
+ * consumed with {@link #forEach(Stream, Consumer)}, which
+ * {@link TestCleanup#cleanup() releases} InPUT's stores after every chunk
+ * of variants. (Or call {@code TestCleanup.cleanup()} now and then, when no
+ * variant is in use.)
+ * <p>
+ * This class is immutable.
+ *
+ * @author Christoffer Fink
+ * @see Synthesizer
+ */
+public class Template {
+  private static final Pattern PLACEHOLDER =
+    Pattern.compile("\\$\\{([A-Za-z_][A-Za-z0-9_]*)\\}");
+  private static final AtomicLong expansions = new AtomicLong();
+  static final int CHUNK = 1000;
+
+  private final DesignSpaceCfg space;
+  private final List<Site> sites;
+  private final Set<String> placeholders;
+
+  private Template(DesignSpaceCfg space, List<Site> sites,
+      Set<String> placeholders) {
+    this.space = space;
+    this.sites = sites;
+    this.placeholders = Collections.unmodifiableSet(placeholders);
+  }
+
+  /** Analyzes the design space and returns it as a template. */
+  public static Template of(DesignSpaceCfg space) {
+    List<Site> sites = new ArrayList<>();
+    Set<String> names = new LinkedHashSet<>();
+    // The index paths of the open parameters, and their nested counts so far.
+    Deque<int[]> paths = new ArrayDeque<>();
+    Deque<int[]> counts = new ArrayDeque<>();
+    counts.push(new int[1]);
+    Traversal.of(space).walk(new Traversal.Visitor() {
+      @Override
+      public Traversal.Action enter(Traversal.Node node) {
+        int[] parent = paths.isEmpty() ? new int[0] : paths.peek();
+        int[] path = Arrays.copyOf(parent, parent.length + 1);
+        path[parent.length] = counts.peek()[0]++;
+        Site site = Site.of(node.getParam(), path, names);
+        if (site != null) {
+          sites.add(site);
+        }
+        paths.push(path);
+        counts.push(new int[1]);
+        return Traversal.Action.CONTINUE;
+      }
+      @Override
+      public Traversal.Action leave(Traversal.Node node) {
+        paths.pop();
+        counts.pop();
+        return Traversal.Action.CONTINUE;
+      }
+    });
+    return new Template(space, sites, names);
+  }
+
+  /** Returns the names of all placeholders, in order of appearance. */
+  public Set<String> getPlaceholders() {
+    return placeholders;
+  }
+
+  /**
+   * Expands a single variant, with a new ID such as "Space_7".
+   * @throws IllegalArgumentException if a placeholder is not bound
+   */
+  public DesignSpaceCfg expand(Map<String, ?> bindings) {
+    return expand(bindings, String.valueOf(expansions.getAndIncrement()));
+  }
+
+  private DesignSpaceCfg expand(Map<String, ?> bindings, String suffix) {
+    placeholders.forEach(name -> {
+      if (!bindings.containsKey(name)) {
+        throw new IllegalArgumentException("Unbound placeholder " + name);
+      }
+    });
+    DesignSpaceCfg result = space;
+    for (Site site : sites) {
+      result = site.apply(result, bindings);
+    }
+    Optional<String> id = space.getId();
+    return id.isPresent() ? result.withId(id.get() + "_" + suffix) : result;
+  }
+
+  /**
+   * Expands one variant per combination of the candidate values, in order.
+   * The last placeholder varies fastest. The stream is lazy, so very large
+   * grids are fine. Variant n gets an ID such as "Space_7_n".
+   * @throws IllegalArgumentException if a placeholder has no candidates
+   */
+  public Stream<DesignSpaceCfg> cartesian(
+      Map<String, ? extends Collection<?>> values) {
+    List<List<?>> grid = grid(values);
+    long size = 1;
+    for (List<?> candidates : grid) {
+      size = Math.multiplyExact(size, candidates.size());
+    }
+    List<String> names = new ArrayList<>(placeholders);
+    long expansion = expansions.getAndIncrement();
+    return LongStream.range(0, size).mapToObj(n -> {
+      Map<String, Object> bindings = new LinkedHashMap<>();
+      long rest = n;
+      for (int i = grid.size() - 1; i >= 0; i--) {
+        List<?> candidates = grid.get(i);
+        bindings.put(names.get(i), candidates.get((int) (rest
+                % candidates.size())));
+        rest /= candidates.size();
+      }
+      return expand(bindings, expansion + "_" + n);
+    });
+  }
+
+  /**
+   * Expands the given number of variants, choosing a random candidate for
+   * each placeholder independently. Each variant has its own random seed
+   * (derived from the seed and the variant number), so the contents are
+   * deterministic even if the stream is consumed in parallel. The IDs are
+   * as for the {@link #cartesian(Map) cartesian product}.
+   * @throws IllegalArgumentException if a placeholder has no candidates
+   */
+  public Stream<DesignSpaceCfg> sample(
+      Map<String, ? extends Collection<?>> values, long count, long seed) {
+    List<List<?>> grid = grid(values);
+    List<String> names = new ArrayList<>(placeholders);
+    long expansion = expansions.getAndIncrement();
+    return LongStream.range(0, count).mapToObj(n -> {
+      Random random = new Random(seed ^ (n * 0x9E3779B97F4A7C15L));
+      Map<String, Object> bindings = new LinkedHashMap<>();
+      for (int i = 0; i < grid.size(); i++) {
+        List<?> candidates = grid.get(i);
+        bindings.put(names.get(i),
+            candidates.get(random.nextInt(candidates.size())));
+      }
+      return expand(bindings, expansion + "_" + n);
+    });
+  }
+
+  /**
+   * Passes every variant to the action, releasing InPUT's stores after every
+   * chunk of variants. If the stream is parallel, then each chunk is
+   * processed in parallel, but the action is never running when the stores
+   * are released. Nothing else should use InPUT in the meantime.
+   */
+  public static void forEach(Stream<DesignSpaceCfg> variants,
+      Consumer<? super DesignSpaceCfg> action) {
+    forEach(variants, action, CHUNK, TestCleanup::cleanup);
+  }
+
+  /** Calls {@code release} instead of releasing InPUT's stores. */
+  static void forEach(Stream<DesignSpaceCfg> variants,
+      Consumer<? super DesignSpaceCfg> action, int chunk, Runnable release) {
+    boolean parallel = variants.isParallel();
+    Iterator<DesignSpaceCfg> iterator = variants.sequential().iterator();
+    List<DesignSpaceCfg> batch = new ArrayList<>();
+    while (iterator.hasNext()) {
+      batch.add(iterator.next());
+      if (batch.size() == chunk || !iterator.hasNext()) {
+        (parallel ? batch.parallelStream() : batch.stream()).forEach(action);
+        batch.clear();
+        release.run();
+      }
+    }
+  }
+
+  private List<List<?>> grid(Map<String, ? extends Collection<?>> values) {
+    List<List<?>> result = new ArrayList<>();
+    for (String name : placeholders) {
+      Collection<?> candidates = values.get(name);
+      if (candidates == null || candidates.isEmpty()) {
+        throw new IllegalArgumentException("No values for " + name);
+      }
+      result.add(new ArrayList<>(candidates));
+    }
+    return result;
+  }
+
+  // A parameter with at least one attribute that contains placeholders.
+  private static final class Site {
+    private final int[] path;
+    private final Text type;
+    private final Text fixed;
+    private final Text inclMin;
+    private final Text exclMin;
+    private final Text inclMax;
+    private final Text exclMax;
+
+    private Site(int[] path, Text type, Text fixed, Text inclMin,
+        Text exclMin, Text inclMax, Text exclMax) {
+      this.path = path;
+      this.type = type;
+      this.fixed = fixed;
+      this.inclMin = inclMin;
+      this.exclMin = exclMin;
+      this.inclMax = inclMax;
+      this.exclMax = exclMax;
+    }
+
+    // Returns null if no attribute contains placeholders.
+    private static Site of(ParamCfg param, int[] path, Set<String> names) {
+      Range r = param.getRange();
+      Text type = Text.of(param.getType(), names);
+      Text fixed = Text.of(param.getFixed(), names);
+      Text inclMin = Text.of(r.inclMin().orElse(null), names);
+      Text exclMin = Text.of(r.exclMin().orElse(null), names);
+      Text inclMax = Text.of(r.inclMax().orElse(null), names);
+      Text exclMax = Text.of(r.exclMax().orElse(null), names);
+      if (type == null && fixed == null && inclMin == null && exclMin == null
+          && inclMax == null && exclMax == null) {
+        return null;
+      }
+      return new Site(path, type, fixed, inclMin, exclMin, inclMax, exclMax);
+    }
+
+    // Only the parameters on the path are rebuilt.
+    private DesignSpaceCfg apply(DesignSpaceCfg space, Map<String, ?> b) {
+      ParamCfg[] chain = new ParamCfg[path.length];
+      chain[0] = space.getParameter(path[0]);
+      for (int i = 1; i < path.length; i++) {
+        chain[i] = chain[i - 1].getNested(path[i]);
+      }
+      ParamCfg param = chain[path.length - 1];
+      Range r = param.getRange();
+      Range range = Range.EMPTY
+        .withInclMin(substitute(inclMin, r.inclMin(), b))
+        .withExclMin(substitute(exclMin, r.exclMin(), b))
+        .withInclMax(substitute(inclMax, r.inclMax(), b))
+        .withExclMax(substitute(exclMax, r.exclMax(), b));
+      ParamCfg result = param.withAttributes(
+          substitute(type, Optional.ofNullable(param.getType()), b),
+          substitute(fixed, Optional.ofNullable(param.getFixed()), b),
+          range);
+      for (int i = path.length - 1; i > 0; i--) {
+        result = chain[i - 1].withNested(path[i], result);
+      }
+      return space.withParameter(path[0], result);
+    }
+
+    private static String substitute(Text text, Optional<String> current,
+        Map<String, ?> bindings) {
+      return text == null ? current.orElse(null) : text.apply(bindings);
+    }
+  }
+
+  // Alternating literal parts and placeholder names, starting and ending
+  // with a (possibly empty) literal.
+  private static final class Text {
+    private final String[] parts;
+
+    private Text(String[] parts) {
+      this.parts = parts;
+    }
+
+    // Returns null if there are no placeholders.
+    private static Text of(String s, Set<String> names) {
+      if (s == null) {
+        return null;
+      }
+      Matcher m = PLACEHOLDER.matcher(s);
+      List<String> parts = new ArrayList<>();
+      int end = 0;
+      while (m.find()) {
+        parts.add(s.substring(end, m.start()));
+        parts.add(m.group(1));
+        names.add(m.group(1));
+        end = m.end();
+      }
+      if (parts.isEmpty()) {
+        return null;
+      }
+      parts.add(s.substring(end));
+      return new Text(parts.toArray(new String[parts.size()]));
+    }
+
+    private String apply(Map<String, ?> bindings) {
+      StringBuilder sb = new StringBuilder(parts[0]);
+      for (int i = 1; i < parts.length; i += 2) {
+        sb.append(bindings.get(parts[i])).append(parts[i + 1]);
+      }
+      return sb.toString();
+    }
+  }
+}
@@ -0,0 +1,272 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Non-recursive traversal of parameter trees.
+ * Structured parameters can be nested arbitrarily deep, so walking them
+ * recursively risks a stack overflow. A traversal keeps an explicit stack of
+ * open parameters instead, so the only limit is the heap. Every parameter is
+ * visited exactly once, in declaration order.
+ * <p>
+ * A {@link Visitor} is notified when entering a parameter (pre-order) and
+ * again when leaving it (post-order), after all of its nested parameters.
+ * It can skip the nested parameters or stop the traversal early.
+ * Alternatively, the parameters can be consumed lazily as a
+ * {@link #preOrder() pre-order} or {@link #postOrder() post-order} stream.
+ * <p>
+ * Each visited parameter comes wrapped in a {@link Node} that knows its
+ * absolute ID (such as "Point.X"). The IDs are only built when asked for,
+ * so traversals that do not need them do not pay for them.
+ * <p>
+ * This class is immutable. Each walk or stream is independent.
+ *
+ * @author Christoffer Fink
+ * @see ImpactIndex
+ */
+public final class Traversal {
+  private final Collection<ParamCfg> roots;
+
+  private Traversal(Collection<ParamCfg> roots) {
+    this.roots = roots;
+  }
+
+  /** Traverses the parameters of the design space. */
+  public static Traversal of(DesignSpaceCfg space) {
+    return of(space.getParameters());
+  }
+
+  /** Traverses the parameters (and all nested parameters). */
+  public static Traversal of(ParamCfg ... params) {
+    List<ParamCfg> roots = new ArrayList<>(params.length);
+    Collections.addAll(roots, params);
+    return new Traversal(roots);
+  }
+
+  static Traversal of(Stream<ParamCfg> params) {
+    return new Traversal(params.collect(Collectors.toList()));
+  }
+
+  /**
+   * Walks all parameters, notifying the visitor when entering and leaving
+   * each of them.
+   * @return false if the visitor stopped the traversal early, else true
+   */
+  public boolean walk(Visitor visitor) {
+    Deque<Frame> stack = new ArrayDeque<>();
+    Iterator<ParamCfg> rootIterator = roots.iterator();
+    while (true) {
+      Frame top = stack.peek();
+      Iterator<ParamCfg> siblings = top == null ? rootIterator : top.nested;
+      if (siblings.hasNext()) {
+        Node node = new Node(top == null ? null : top.node, siblings.next(),
+            stack.size());
+        Action action = visitor.enter(node);
+        if (action == Action.STOP) {
+          return false;
+        }
+        Iterator<ParamCfg> nested = action == Action.SKIP
+          ? Collections.emptyIterator()
+          : node.param.nested().iterator();
+        stack.push(new Frame(node, nested));
+      } else if (top == null) {
+        return true;
+      } else {
+        stack.pop();
+        if (visitor.leave(top.node) == Action.STOP) {
+          return false;
+        }
+      }
+    }
+  }
+
+  /** Returns all parameters in pre-order (parents before nested). */
+  public Stream<Node> preOrder() {
+    return stream(new NodeIterator(roots, false));
+  }
+
+  /** Returns all parameters in post-order (nested before parents). */
+  public Stream<Node> postOrder() {
+    return stream(new NodeIterator(roots, true));
+  }
+
+  private static Stream<Node> stream(Iterator<Node> iterator) {
+    int characteristics = Spliterator.ORDERED | Spliterator.NONNULL;
+    return StreamSupport.stream(
+        Spliterators.spliteratorUnknownSize(iterator, characteristics), false);
+  }
+
+  /** What to do after visiting a parameter. */
+  public enum Action {
+    /** Continue the traversal normally. */
+    CONTINUE,
+    /**
+     * Skip the nested parameters (when entering).
+     * The parameter is still left. When leaving, this is the same as
+     * {@link #CONTINUE}.
+     */
+    SKIP,
+    /** Stop the traversal immediately. */
+    STOP,
+  }
+
+  /** Receives the parameters of a {@link Traversal#walk(Visitor) walk}. */
+  @FunctionalInterface
+  public interface Visitor {
+    /** Called before any of the nested parameters are visited. */
+    Action enter(Node node);
+
+    /** Called after all the nested parameters have been visited. */
+    default Action leave(Node node) {
+      return Action.CONTINUE;
+    }
+  }
+
+  /**
+   * A visited parameter together with its position in the tree.
+   * This class is immutable.
+   */
+  public static final class Node {
+    private final Node parent;
+    private final ParamCfg param;
+    private final int depth;
+    private String id;
+
+    private Node(Node parent, ParamCfg param, int depth) {
+      this.parent = parent;
+      this.param = param;
+      this.depth = depth;
+    }
+
+    public ParamCfg getParam() {
+      return param;
+    }
+
+    /** Returns the node of the enclosing parameter, or null for roots. */
+    public Node getParent() {
+      return parent;
+    }
+
+    /** Returns the nesting depth. Top-level parameters have depth 0. */
+    public int getDepth() {
+      return depth;
+    }
+
+    /** Returns the absolute ID, such as "Point.X". */
+    public String getId() {
+      String result = id;
+      if (result == null) {
+        // Build the ID from the closest ancestor that already has one.
+        Deque<Node> path = new ArrayDeque<>();
+        Node n = this;
+        while (n != null && n.id == null) {
+          path.push(n);
+          n = n.parent;
+        }
+        StringBuilder sb = new StringBuilder(n == null ? "" : n.id);
+        for (Node p : path) {
+          if (p.parent != null) {
+            sb.append(MappingCfg.NESTING_DELIM);
+          }
+          sb.append(p.param.getId());
+          p.id = sb.toString();
+        }
+        result = id;
+      }
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return getId();
+    }
+  }
+
+  private static final class Frame {
+    private final Node node;
+    private final Iterator<ParamCfg> nested;
+
+    private Frame(Node node, Iterator<ParamCfg> nested) {
+      this.node = node;
+      this.nested = nested;
+    }
+  }
+
+  private static final class NodeIterator implements Iterator<Node> {
+    private final Deque<Frame> stack = new ArrayDeque<>();
+    private final Iterator<ParamCfg> roots;
+    private final boolean postOrder;
+    private Node next;
+
+    private NodeIterator(Collection<ParamCfg> roots, boolean postOrder) {
+      this.roots = roots.iterator();
+      this.postOrder = postOrder;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null) {
+        Frame top = stack.peek();
+        Iterator<ParamCfg> siblings = top == null ? roots : top.nested;
+        if (siblings.hasNext()) {
+          Node node = new Node(top == null ? null : top.node, siblings.next(),
+              stack.size());
+          stack.push(new Frame(node, node.param.nested().iterator()));
+          if (!postOrder) {
+            next = node;
+          }
+        } else if (top == null) {
+          return false;
+        } else {
+          stack.pop();
+          if (postOrder) {
+            next = top.node;
+          }
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public Node next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Node result = next;
+      next = null;
+      return result;
+    }
+  }
+}
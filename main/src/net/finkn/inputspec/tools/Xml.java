@@ -38,17 +38,14 @@ import java.util.Map;
  * @author Christoffer Fink
  */
 public class Xml {
-  private final static String DEFAULT_INDENT = "  ";
-
   private final Optional<String> prefix;
-  private final String indentation = DEFAULT_INDENT;
   private final String indent;
   private final int level;
 
   private Xml(Optional<String> prefix, int level) {
     this.prefix = prefix;
     this.level = level;
-    this.indent = getIndent(indentation, level);
+    this.indent = XmlWriter.indent(level);
   }
 
   /** Alias for {@link #e(String, Map, List) e(tag, emptyMap, emptyList)}. */
@@ -139,11 +136,4 @@ public class Xml {
     return value.isPresent() ? String.format(fmt, name, value.get()) : "";
   }
 
-  private static String getIndent(String indentation, int level) {
-    String tmp = "";
-    for (int i = 0; i < level; i++) {
-      tmp += indentation;
-    }
-    return tmp;
-  }
 }
@@ -0,0 +1,74 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+/**
+ * Growable byte buffer that serialized documents are written into before
+ * being handed to InPUT. The buffer can be read through an
+ * {@link #getInputStream() input stream} that shares the underlying array,
+ * so the document is not copied once it has been written. Each thread
+ * reuses its own buffers, so repeatedly constructing design spaces does not
+ * allocate a new array every time. Buffers that have grown very large are
+ * not kept for reuse.
+ * <p>
+ * A buffer must not be reused while a stream over it is still being read.
+ * That holds as long as the stream is consumed before the next buffer for
+ * the same slot is requested by the same thread, which is the case when
+ * InPUT reads the documents while constructing a design space.
+ *
+ * @author Christoffer Fink
+ */
+final class XmlBuffer extends ByteArrayOutputStream {
+  /** Slot for design space documents. */
+  static final int SPACE = 0;
+  /** Slot for code mapping documents. */
+  static final int MAPPING = 1;
+
+  private static final int INITIAL_SIZE = 8 * 1024;
+  private static final int MAX_RETAINED = 1024 * 1024;
+  private static final ThreadLocal<XmlBuffer[]> buffers =
+    ThreadLocal.withInitial(() -> new XmlBuffer[2]);
+
+  private XmlBuffer() {
+    super(INITIAL_SIZE);
+  }
+
+  /** Returns an empty buffer for the slot, owned by the current thread. */
+  static XmlBuffer get(int slot) {
+    XmlBuffer[] owned = buffers.get();
+    XmlBuffer buffer = owned[slot];
+    if (buffer == null || buffer.buf.length > MAX_RETAINED) {
+      buffer = new XmlBuffer();
+      owned[slot] = buffer;
+    }
+    buffer.reset();
+    return buffer;
+  }
+
+  /** Returns a stream over the current contents, without copying them. */
+  InputStream getInputStream() {
+    return new ByteArrayInputStream(buf, 0, count);
+  }
+}
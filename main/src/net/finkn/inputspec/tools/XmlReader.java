@@ -0,0 +1,324 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming reader of InPUT design space and code mapping documents.
+ * This is the inverse of {@link XmlWriter}: a document is turned into a
+ * {@link DesignSpaceCfg} or a {@link CodeMappingCfg} in a single pass over a
+ * StAX event stream. No DOM is built. Apart from the configuration being
+ * built, the only memory used is a stack of builders for the parameters that
+ * are currently open, so even very large documents can be loaded.
+ * <p>
+ * Elements must be in the InPUT namespace of the document, but any prefix
+ * works. Unknown elements and attributes (such as children of a numeric
+ * parameter, or limits on a structured parameter) are rejected rather than
+ * silently dropped, since a configuration that only partially describes a
+ * document would be misleading. The only foreign attributes allowed are
+ * those of the schema instance namespace (such as
+ * {@code xsi:schemaLocation}). Text other than whitespace is rejected.
+ * Comments and processing instructions are ignored. DTDs and external
+ * entities are not supported.
+ * <p>
+ * Note that the configuration builders fill in some defaults. In particular,
+ * a numeric parameter without a type gets the default type. Otherwise,
+ * writing a configuration that was read from a document produces that
+ * document (modulo formatting).
+ * <p>
+ * The stream is not closed. Malformed and unsupported documents cause an
+ * {@link IllegalArgumentException}.
+ * This class is thread-safe.
+ *
+ * @author Christoffer Fink
+ * @see XmlWriter
+ */
+public final class XmlReader {
+  private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+  private static final Set<String> SPACE_ATTRIBUTES =
+    set(X.ID, X.MAPPING_REF);
+  private static final Set<String> PARAM_ATTRIBUTES =
+    set(X.ID, X.TYPE, X.FIXED);
+  private static final Set<String> NPARAM_ATTRIBUTES = set(X.ID, X.TYPE,
+      X.FIXED, X.INCLMIN, X.EXCLMIN, X.INCLMAX, X.EXCLMAX);
+  private static final Set<String> CODE_MAPPING_ATTRIBUTES = set(X.ID);
+  private static final Set<String> MAPPING_ATTRIBUTES = set(X.ID, X.TYPE,
+      X.ADD, X.CONSTRUCTOR, X.GET, X.SET);
+  private static final Set<String> NO_ATTRIBUTES = Collections.emptySet();
+
+  static {
+    FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    FACTORY.setProperty(XMLInputFactory.IS_COALESCING, false);
+  }
+
+  private XmlReader() {
+  }
+
+  /**
+   * Reads a design space document.
+   * @throws IllegalArgumentException if the document is malformed or is not
+   *    a design space
+   */
+  public static DesignSpaceCfg designSpace(InputStream in) {
+    return read(in, XmlReader::designSpace);
+  }
+
+  /** Reads a design space document. */
+  public static DesignSpaceCfg designSpace(Reader in) {
+    return read(in, XmlReader::designSpace);
+  }
+
+  /** Reads a design space document. */
+  public static DesignSpaceCfg designSpace(String xml) {
+    return designSpace(new StringReader(xml));
+  }
+
+  /**
+   * Reads a code mapping document.
+   * @throws IllegalArgumentException if the document is malformed or is not
+   *    a code mapping
+   */
+  public static CodeMappingCfg codeMapping(InputStream in) {
+    return read(in, XmlReader::codeMapping);
+  }
+
+  /** Reads a code mapping document. */
+  public static CodeMappingCfg codeMapping(Reader in) {
+    return read(in, XmlReader::codeMapping);
+  }
+
+  /** Reads a code mapping document. */
+  public static CodeMappingCfg codeMapping(String xml) {
+    return codeMapping(new StringReader(xml));
+  }
+
+  private static <T> T read(InputStream in, Parser<T> parser) {
+    try {
+      return parse(FACTORY.createXMLStreamReader(in), parser);
+    } catch (XMLStreamException e) {
+      throw malformed(e);
+    }
+  }
+
+  private static <T> T read(Reader in, Parser<T> parser) {
+    try {
+      return parse(FACTORY.createXMLStreamReader(in), parser);
+    } catch (XMLStreamException e) {
+      throw malformed(e);
+    }
+  }
+
+  private static <T> T parse(XMLStreamReader xml, Parser<T> parser)
+      throws XMLStreamException {
+    try {
+      xml.nextTag();
+      return parser.parse(xml);
+    } finally {
+      xml.close();
+    }
+  }
+
+  private static DesignSpaceCfg designSpace(XMLStreamReader xml)
+      throws XMLStreamException {
+    expect(xml, X.DESIGN_SPACE);
+    check(xml, X.SPACE_NS, SPACE_ATTRIBUTES);
+    DesignSpaceCfg.Builder space = DesignSpaceCfg.builder()
+      .id(attribute(xml, X.ID))
+      .ref(attribute(xml, X.MAPPING_REF));
+    Deque<ParamCfg.Builder> open = new ArrayDeque<>();
+    // Numeric parameters have no children, so the next end closes them.
+    boolean numeric = false;
+    for (int event = xml.next(); ; event = xml.next()) {
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        if (numeric) {
+          throw unsupported(xml);
+        }
+        numeric = xml.getLocalName().equals(X.NPARAM);
+        open.push(param(xml));
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        numeric = false;
+        if (open.isEmpty()) {
+          return space.build();
+        }
+        ParamCfg param = open.pop().build();
+        if (open.isEmpty()) {
+          space.param(param);
+        } else {
+          open.peek().add(param);
+        }
+      } else if (event == XMLStreamConstants.CHARACTERS
+          || event == XMLStreamConstants.CDATA) {
+        if (!xml.isWhiteSpace()) {
+          throw new IllegalArgumentException("Unexpected text at line "
+              + xml.getLocation().getLineNumber() + ".");
+        }
+      } else if (event == XMLStreamConstants.END_DOCUMENT) {
+        throw new IllegalArgumentException("Unexpected end of document.");
+      }
+    }
+  }
+
+  private static ParamCfg.Builder param(XMLStreamReader xml) {
+    String tag = xml.getLocalName();
+    ParamCfg.Builder builder = ParamCfg.builder();
+    check(xml, X.SPACE_NS,
+        tag.equals(X.NPARAM) ? NPARAM_ATTRIBUTES : PARAM_ATTRIBUTES);
+    if (tag.equals(X.NPARAM)) {
+      builder.numeric()
+        .inclMin(attribute(xml, X.INCLMIN))
+        .exclMin(attribute(xml, X.EXCLMIN))
+        .inclMax(attribute(xml, X.INCLMAX))
+        .exclMax(attribute(xml, X.EXCLMAX));
+    } else if (tag.equals(X.SPARAM)) {
+      builder.structured();
+    } else if (tag.equals(X.SCHOICE)) {
+      builder.choice();
+    } else {
+      throw unsupported(xml);
+    }
+    return builder
+      .id(attribute(xml, X.ID))
+      .type(attribute(xml, X.TYPE))
+      .fixed(attribute(xml, X.FIXED));
+  }
+
+  private static CodeMappingCfg codeMapping(XMLStreamReader xml)
+      throws XMLStreamException {
+    expect(xml, X.CODE_MAPPING);
+    check(xml, X.CODE_MAPPING_NS, CODE_MAPPING_ATTRIBUTES);
+    CodeMappingCfg.Builder mapping = CodeMappingCfg.builder()
+      .id(attribute(xml, X.ID));
+    while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      mapping.mapping(mapping(xml));
+    }
+    return mapping.build();
+  }
+
+  // Wrapper and Complex are marker elements nested inside a Mapping.
+  private static MappingCfg mapping(XMLStreamReader xml)
+      throws XMLStreamException {
+    String tag = xml.getLocalName();
+    MappingCfg.Builder builder = MappingCfg.builder();
+    if (tag.equals(X.MAPPING_TYPE)) {
+      builder.mappingType();
+    } else if (!tag.equals(X.MAPPING)) {
+      throw unsupported(xml);
+    }
+    check(xml, X.CODE_MAPPING_NS, MAPPING_ATTRIBUTES);
+    builder.id(attribute(xml, X.ID))
+      .type(attribute(xml, X.TYPE))
+      .add(attribute(xml, X.ADD))
+      .constructor(attribute(xml, X.CONSTRUCTOR))
+      .get(attribute(xml, X.GET))
+      .set(attribute(xml, X.SET));
+    while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      marker(xml, builder);
+    }
+    return builder.build();
+  }
+
+  private static void marker(XMLStreamReader xml, MappingCfg.Builder builder)
+      throws XMLStreamException {
+    String tag = xml.getLocalName();
+    if (tag.equals(X.WRAPPER)) {
+      builder.wrapper();
+    } else if (tag.equals(X.COMPLEX)) {
+      builder.complex();
+    } else {
+      throw unsupported(xml);
+    }
+    check(xml, X.CODE_MAPPING_NS, NO_ATTRIBUTES);
+    if (xml.nextTag() != XMLStreamConstants.END_ELEMENT) {
+      throw unsupported(xml);
+    }
+  }
+
+  private static void expect(XMLStreamReader xml, String tag) {
+    if (!xml.getLocalName().equals(tag)) {
+      String msg = "Expected a " + tag + " document, but the root is "
+        + xml.getLocalName() + ".";
+      throw new IllegalArgumentException(msg);
+    }
+  }
+
+  // The element must be in the namespace, and its attributes must either be
+  // known or belong to the schema instance namespace.
+  private static void check(XMLStreamReader xml, String ns,
+      Set<String> attributes) {
+    if (!ns.equals(xml.getNamespaceURI())) {
+      String msg = "Element " + xml.getLocalName() + " at line "
+        + xml.getLocation().getLineNumber() + " is not in namespace "
+        + ns + ".";
+      throw new IllegalArgumentException(msg);
+    }
+    for (int i = 0; i < xml.getAttributeCount(); i++) {
+      String attributeNs = xml.getAttributeNamespace(i);
+      boolean known = attributeNs == null || attributeNs.isEmpty()
+        ? attributes.contains(xml.getAttributeLocalName(i))
+        : attributeNs.equals(X.NS);
+      if (!known) {
+        String msg = "Unsupported attribute " + xml.getAttributeName(i)
+          + " of " + xml.getLocalName() + " at line "
+          + xml.getLocation().getLineNumber() + ".";
+        throw new IllegalArgumentException(msg);
+      }
+    }
+  }
+
+  private static Set<String> set(String ... names) {
+    return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(names)));
+  }
+
+  private static String attribute(XMLStreamReader xml, String name) {
+    // Prefixed names (such as xsi:schemaLocation) are not used as lookups.
+    return xml.getAttributeValue(null, name);
+  }
+
+  private static IllegalArgumentException unsupported(XMLStreamReader xml) {
+    String msg = "Unsupported element " + xml.getLocalName() + " at line "
+      + xml.getLocation().getLineNumber() + ".";
+    return new IllegalArgumentException(msg);
+  }
+
+  private static IllegalArgumentException malformed(XMLStreamException e) {
+    return new IllegalArgumentException("Malformed document.", e);
+  }
+
+  @FunctionalInterface
+  private interface Parser<T> {
+    T parse(XMLStreamReader xml) throws XMLStreamException;
+  }
+}
@@ -0,0 +1,296 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import java.io.BufferedWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Streaming counterpart to {@link Xml}.
+ * Elements are written straight to the output as they are started and
+ * ended, instead of being built as strings that are then concatenated by
+ * their parents. The layout is the same as the one produced by {@link Xml}.
+ * Attributes are written one at a time (absent values are skipped), and
+ * indentation comes from a precomputed table. So writing takes time linear
+ * in the size of the output, and the only extra memory is the stack of open
+ * tags.
+ * <p>
+ * Unlike {@link Xml}, attribute values are escaped.
+ * <p>
+ * I/O errors are rethrown as {@link UncheckedIOException}.
+ * This class is not thread-safe.
+ *
+ * @author Christoffer Fink
+ * @see Xml
+ */
+public class XmlWriter {
+  private static final String INDENTATION = "  ";
+  private static final String[] INDENTS = new String[32];
+
+  static {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < INDENTS.length; i++) {
+      INDENTS[i] = sb.toString();
+      sb.append(INDENTATION);
+    }
+  }
+
+  private static final Fragment[] NO_CHILDREN = new Fragment[0];
+
+  private final Appendable out;
+  private final Optional<String> prefix;
+  private final Deque<String> open = new ArrayDeque<>();
+  private boolean inHead = false;
+
+  private XmlWriter(Appendable out, Optional<String> prefix) {
+    this.out = out;
+    this.prefix = prefix;
+  }
+
+  /** Returns a writer that uses the given tag prefix (or none, if null). */
+  public static XmlWriter of(Appendable out, String prefix) {
+    return new XmlWriter(out, Optional.ofNullable(prefix));
+  }
+
+  /**
+   * Returns a writer that encodes the XML as UTF-8.
+   * The output is buffered, so the writer must be {@link #flush() flushed}.
+   */
+  public static XmlWriter of(OutputStream out, String prefix) {
+    Writer writer = new BufferedWriter(
+        new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    return of(writer, prefix);
+  }
+
+  /** Writes the XML declaration, followed by a newline. */
+  public XmlWriter declaration() {
+    return append(Xml.getInstance().declaration()).append("\n");
+  }
+
+  /** Starts a new element, as a child of the current element (if any). */
+  public XmlWriter start(String tag) {
+    closeHead();
+    String prefixed = prefix.isPresent() ? prefix.get() + ":" + tag : tag;
+    append(indent(open.size())).append("<").append(prefixed);
+    open.push(prefixed);
+    inHead = true;
+    return this;
+  }
+
+  /** Writes the attribute, unless the value is null. */
+  public XmlWriter attribute(String name, Object value) {
+    if (value == null) {
+      return this;
+    }
+    if (!inHead) {
+      throw new IllegalStateException("Cannot add attribute " + name
+          + " outside of a start tag.");
+    }
+    append(" ").append(name).append("=\"");
+    escape(value.toString());
+    return append("\"");
+  }
+
+  /** Writes the attribute, unless the value is absent. */
+  public XmlWriter attribute(String name, Optional<?> value) {
+    return attribute(name, value.orElse(null));
+  }
+
+  /**
+   * Ends the current element.
+   * @throws IllegalStateException if there is no open element
+   */
+  public XmlWriter end() {
+    if (open.isEmpty()) {
+      throw new IllegalStateException("No open element to end.");
+    }
+    String tag = open.pop();
+    if (inHead) {
+      append(" />");
+      inHead = false;
+    } else {
+      append(indent(open.size())).append("</").append(tag).append(">");
+    }
+    return open.isEmpty() ? this : append("\n");
+  }
+
+  /**
+   * Writes a {@link Fragment fragment}, as if its elements had been started
+   * and ended one by one at the current position.
+   */
+  public XmlWriter write(Fragment fragment) {
+    closeHead();
+    write(fragment, open.size());
+    return open.isEmpty() ? this : append("\n");
+  }
+
+  /**
+   * Creates a fragment for an element. The attributes are written by the
+   * consumer, and the children are fragments that have already been created.
+   */
+  static Fragment fragment(String prefix, String tag,
+      Consumer<XmlWriter> attributes, List<Fragment> children) {
+    StringBuilder sb = new StringBuilder();
+    XmlWriter writer = of(sb, prefix).start(tag);
+    attributes.accept(writer);
+    String prefixed = writer.open.peek();
+    if (children.isEmpty()) {
+      return new Fragment(sb.append(" />").toString(), NO_CHILDREN, null);
+    }
+    Fragment[] nested = children.toArray(new Fragment[children.size()]);
+    return new Fragment(sb.append(">").toString(), nested,
+        "</" + prefixed + ">");
+  }
+
+  /** Flushes the output, if it is flushable. */
+  public void flush() {
+    if (out instanceof Flushable) {
+      try {
+        ((Flushable) out).flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /** Returns the indentation for the level. */
+  static String indent(int level) {
+    if (level < INDENTS.length) {
+      return INDENTS[level];
+    }
+    StringBuilder sb = new StringBuilder(INDENTS[INDENTS.length - 1]);
+    for (int i = INDENTS.length - 1; i < level; i++) {
+      sb.append(INDENTATION);
+    }
+    return sb.toString();
+  }
+
+  // Iterative, since fragments can be nested arbitrarily deep.
+  private void write(Fragment root, int level) {
+    Deque<Cursor> stack = new ArrayDeque<>();
+    Fragment next = root;
+    while (true) {
+      if (next != null) {
+        append(indent(level + stack.size())).append(next.head);
+        if (next.children.length > 0) {
+          append("\n");
+          stack.push(new Cursor(next));
+        } else if (stack.isEmpty()) {
+          return;
+        } else {
+          append("\n");
+        }
+      }
+      Cursor top = stack.peek();
+      if (top.index < top.fragment.children.length) {
+        next = top.fragment.children[top.index++];
+      } else {
+        stack.pop();
+        next = null;
+        append(indent(level + stack.size())).append(top.fragment.tail);
+        if (stack.isEmpty()) {
+          return;
+        }
+        append("\n");
+      }
+    }
+  }
+
+  private void closeHead() {
+    if (inHead) {
+      append(">\n");
+      inHead = false;
+    }
+  }
+
+  private void escape(String s) {
+    int start = 0;
+    for (int i = 0; i < s.length(); i++) {
+      String replacement;
+      switch (s.charAt(i)) {
+        case '&': replacement = "&amp;"; break;
+        case '<': replacement = "&lt;"; break;
+        case '>': replacement = "&gt;"; break;
+        case '"': replacement = "&quot;"; break;
+        default: continue;
+      }
+      append(s, start, i).append(replacement);
+      start = i + 1;
+    }
+    append(s, start, s.length());
+  }
+
+  private XmlWriter append(CharSequence s) {
+    return append(s, 0, s.length());
+  }
+
+  private XmlWriter append(CharSequence s, int start, int end) {
+    try {
+      out.append(s, start, end);
+      return this;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * A pre-rendered element, including its children. A fragment does not
+   * contain any indentation, so the same fragment can be written at any
+   * level. Immutable configuration nodes cache their fragments, so
+   * serializing a configuration that shares most of its nodes with an
+   * already serialized one only renders the nodes that differ.
+   * <p>
+   * This class is immutable. Like {@link Fingerprint fingerprints}, fragments
+   * only have final fields (the children are never modified after
+   * construction), so they can be cached in plain fields.
+   */
+  static final class Fragment {
+    private final String head;
+    private final Fragment[] children;
+    private final String tail;
+
+    private Fragment(String head, Fragment[] children, String tail) {
+      this.head = head;
+      this.children = children;
+      this.tail = tail;
+    }
+  }
+
+  private static final class Cursor {
+    private final Fragment fragment;
+    private int index = 0;
+
+    private Cursor(Fragment fragment) {
+      this.fragment = fragment;
+    }
+  }
+}
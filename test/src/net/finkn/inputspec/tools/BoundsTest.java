@@ -0,0 +1,158 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import static net.finkn.inputspec.tools.Helper.pb;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class BoundsTest {
+  private final ParamCfg dependee = pb().id("A").inclMin(1).inclMax(3).build();
+
+  @Test
+  public void unlimitedParameterShouldBeUnbounded() {
+    Bounds bounds = Bounds.of(pb().build());
+    assertTrue(bounds.contains("X", Integer.MIN_VALUE));
+    assertTrue(bounds.contains("X", Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void absoluteLimitsShouldBeUsedDirectly() {
+    Bounds bounds = Bounds.of(dependee);
+    assertIntervals(bounds, "A", "[1.0,3.0]");
+  }
+
+  @Test
+  public void integerBoundsShouldBeTightened() {
+    Bounds bounds = Bounds.of(pb().exclMin(0.5).exclMax(4).build());
+    assertIntervals(bounds, "X", "[1.0,3.0]");
+  }
+
+  @Test
+  public void doubleBoundsShouldKeepExclusiveLimits() {
+    Bounds bounds = Bounds.of(pb().type("double").exclMin(0.5).build());
+    assertIntervals(bounds, "X", "]0.5,*[");
+  }
+
+  @Test
+  public void dependentBoundsShouldBePropagated() {
+    ParamCfg dependent = pb().inclMin("A + 2").exclMax("A + 4").build();
+    // [A+2,A+4[ with A in [1,3] gives values in [3,6].
+    Bounds bounds = Bounds.of(dependent, dependee);
+    assertIntervals(bounds, "X", "[3.0,6.0]");
+    assertFalse(bounds.contains("X", 7));
+  }
+
+  @Test
+  public void chainedDependenciesShouldBePropagated() {
+    ParamCfg b = pb().id("B").inclMin("A * 2").inclMax("A * 3").build();
+    ParamCfg c = pb().id("C").inclMin("B - 1").inclMax("B + 1").build();
+    Bounds bounds = Bounds.of(c, b, dependee);
+    assertIntervals(bounds, "B", "[2.0,9.0]");
+    assertIntervals(bounds, "C", "[1.0,10.0]");
+  }
+
+  @Test
+  public void multiRangesShouldGiveMultipleIntervals() {
+    Bounds bounds = Bounds.of(pb().inclMin("1,10").inclMax("3,20").build());
+    assertIntervals(bounds, "X", "[1.0,3.0]", "[10.0,20.0]");
+    assertTrue(bounds.contains("X", 15));
+    assertFalse(bounds.contains("X", 5));
+  }
+
+  @Test
+  public void nestedParametersShouldUseAbsoluteIds() {
+    ParamCfg outer = pb().id("B").inclMin("Point.X + 1")
+      .inclMax("Point.Y + 1").build();
+    Bounds bounds = Bounds.of(Helper.pointParam, outer);
+    assertIntervals(bounds, "Point.X", "[10.0,20.0]");
+    assertIntervals(bounds, "B", "[11.0,26.0]");
+  }
+
+  @Test
+  public void arrayElementsShouldShareBoundsOfArray() {
+    Bounds bounds = Bounds.of(pb().type("integer[2][3]").interval("[1,5]")
+        .build());
+    assertTrue(bounds.contains("X.2.3", 5));
+    assertFalse(bounds.contains("X.2.3", 6));
+  }
+
+  @Test
+  public void fixedValuesShouldBeTruncatedForIntegers() {
+    Bounds bounds = Bounds.of(pb().inclMin(1).inclMax(2).fixed(3.9).build());
+    assertIntervals(bounds, "X", "[3.0,3.0]");
+  }
+
+  @Test
+  public void emptyRangesShouldBeFlagged() {
+    ParamCfg dependent = pb().inclMin("A + 5").inclMax("A + 1").build();
+    Bounds bounds = Bounds.of(dependee, dependent);
+    assertThat(bounds.getEmpty(), hasItem("X"));
+    assertThat(bounds.getEmpty(), not(hasItem("A")));
+    assertTrue(bounds.getIntervals("X").isEmpty());
+  }
+
+  @Test
+  public void emptyRangeInMultiRangeShouldBeDropped() {
+    Bounds bounds = Bounds.of(pb().exclMin("1,5").exclMax("2,9").build());
+    assertIntervals(bounds, "X", "[6.0,8.0]");
+    assertTrue(bounds.getEmpty().isEmpty());
+  }
+
+  @Test
+  public void circularDependenciesShouldBeUnbounded() {
+    ParamCfg a = pb().id("A").inclMin("B + 1").inclMax("B + 2").build();
+    ParamCfg b = pb().id("B").inclMin("A + 1").inclMax("A + 2").build();
+    Bounds bounds = Bounds.of(a, b);
+    assertTrue(bounds.contains("A", -1000));
+    assertTrue(bounds.contains("B", 1000));
+  }
+
+  @Test
+  public void unknownReferencesShouldBeUnbounded() {
+    Bounds bounds = Bounds.of(pb().inclMin("Q + 1").inclMax("Q + 2").build());
+    assertTrue(bounds.contains("X", 1000));
+  }
+
+  @Test
+  public void booleanParametersShouldBeIgnored() {
+    Bounds bounds = Bounds.of(pb().type("boolean").build(), dependee);
+    assertThat(bounds.getIds(), not(hasItem("X")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownIdShouldBeIllegal() {
+    Bounds.of(dependee).getIntervals("B");
+  }
+
+  private static void assertIntervals(Bounds bounds, String id,
+      String ... expected) {
+    List<Interval> intervals = bounds.getIntervals(id);
+    assertEquals(expected.length, intervals.size());
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], intervals.get(i).toString());
+    }
+  }
+}
@@ -20,11 +20,62 @@ SOFTWARE.
 */
 package net.finkn.inputspec.tools;
 
+import static net.finkn.inputspec.tools.Helper.pb;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import se.miun.itm.input.model.InPUTException;
 
 public class ConfigValidatorTest {
+  private static final String XS = "http://www.w3.org/2001/XMLSchema";
+  // A small stand-in for the InPUT design space schema, split in two files
+  // so that the include has to be resolved through the catalog.
+  private static final String SPACE_XSD = String.join("\n",
+      "<xs:schema xmlns:xs='" + XS + "' elementFormDefault='qualified'",
+      "    xmlns:s='" + X.SPACE_NS + "'",
+      "    targetNamespace='" + X.SPACE_NS + "'>",
+      "  <xs:include schemaLocation='" + X.INPUT_URL + "/Params.xsd' />",
+      "  <xs:element name='" + X.DESIGN_SPACE + "'>",
+      "    <xs:complexType>",
+      "      <xs:sequence><xs:group ref='s:params' /></xs:sequence>",
+      "      <xs:attribute name='" + X.ID + "' use='required' />",
+      "      <xs:attribute name='" + X.MAPPING_REF + "' />",
+      "    </xs:complexType>",
+      "  </xs:element>",
+      "</xs:schema>");
+  private static final String PARAMS_XSD = String.join("\n",
+      "<xs:schema xmlns:xs='" + XS + "' elementFormDefault='qualified'",
+      "    targetNamespace='" + X.SPACE_NS + "'>",
+      "  <xs:group name='params'><xs:sequence>",
+      "    <xs:any minOccurs='0' maxOccurs='unbounded'",
+      "        processContents='skip' />",
+      "  </xs:sequence></xs:group>",
+      "</xs:schema>");
+
   private final ConfigValidator validator = ConfigValidator.getInstance();
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   @Test(expected = AssertionError.class)
   public void parameterWithMissingIdIsIllegal() {
     check(ParamCfg.builder().id(null).build());
@@ -54,6 +105,367 @@ public class ConfigValidatorTest {
     check(DesignSpaceCfg.builder().param(ParamCfg.getDefault()).build());
   }
 
+  @Test
+  public void precheckShouldFindNoProblemsInLegalConfig() {
+    ParamCfg a = pb().id("A").inclMin("1,5").exclMax("3,9").build();
+    ParamCfg b = pb().id("B").inclMin("A + 1").inclMax("Point.X * 2").build();
+    assertTrue(validator.precheck(a, b, Helper.pointParam).isEmpty());
+  }
+
+  @Test
+  public void precheckShouldFindMixedLimits() {
+    assertProblems(pb().inclMin(1).exclMin(2).inclMax(4).exclMax(5).build(),
+        "MIXED_LIMITS X min", "MIXED_LIMITS X max");
+  }
+
+  @Test
+  public void precheckShouldFindMultiRangeMismatch() {
+    assertProblems(pb().inclMin("1,5").inclMax("1,5,10").build(),
+        "MISSING_MIN X 2 mins, 3 maxes");
+    assertProblems(pb().inclMin("1,2,3").inclMax("4").build(),
+        "MISSING_MAX X 3 mins, 1 maxes");
+  }
+
+  @Test
+  public void precheckShouldFindBadLimits() {
+    assertProblems(pb().inclMin("A").build(), "BAD_LIMIT X plain reference A",
+        "UNRESOLVED_REFERENCE X A");
+    assertProblems(pb().inclMin("1 + 2").build(),
+        "BAD_LIMIT X expression without reference in 1 + 2");
+  }
+
+  @Test
+  public void unparseableLimitsShouldBeLeftToInput() {
+    ParamCfg a = pb().id("A").build();
+    for (String limit : new String[] {"1 +", "Math.atan(A)",
+        "Math.toRadians(A) + 1", "Math.hypot(A, A)"}) {
+      ParamCfg param = pb().inclMin(limit).inclMax(10).build();
+      List<ConfigValidator.Problem> problems = validator.precheck(a, param);
+      assertEquals(limit, 1, problems.size());
+      assertEquals(limit, ConfigValidator.Kind.UNPARSED_LIMIT,
+          problems.get(0).getKind());
+    }
+  }
+
+  @Test
+  public void unparseableLimitShouldNotFailValidationEarly() {
+    ConfigValidator v = ConfigValidator.getInstance(space -> null);
+    ParamCfg a = pb().id("A").build();
+    ParamCfg param = pb().inclMin("Math.atan(A)").inclMax(10).build();
+    assertTrue(v.validateAll(Arrays.asList(DesignSpaceCfg.builder()
+            .param(a, param).build())).get(0).isLegal());
+  }
+
+  @Test
+  public void precheckShouldFindMissingAndDuplicateIds() {
+    assertProblems(DesignSpaceCfg.builder().id(null)
+        .param(pb().build(), pb().id(null).build(), pb().build())
+        .build(),
+        "MISSING_ID design space", "MISSING_ID null parameter",
+        "DUPLICATE_ID X DUPLICATE X at [0] and X at [2]");
+  }
+
+  @Test
+  public void precheckShouldFindDuplicateNestedIds() {
+    ParamCfg point = pb().id("X").add().id("X").add()
+      .id("Point").structured().build();
+    assertProblems(point,
+        "DUPLICATE_ID Point.X DUPLICATE Point.X at [0, 0]"
+        + " and Point.X at [0, 1]");
+  }
+
+  @Test
+  public void precheckShouldFindOuterAfterInner() {
+    ParamCfg point = pb().id("X").add().id("Point").structured().build();
+    ParamCfg pointX = pb().id("Point.X").build();
+    assertProblems(DesignSpaceCfg.builder().param(point, pointX).build(),
+        "OUTER_AFTER_INNER Point.X OUTER_AFTER_INNER Point.X at [0, 0]"
+        + " and Point.X at [1]");
+  }
+
+  @Test
+  public void outerAfterInnerShouldFailValidationEarly() {
+    ConfigValidator v = ConfigValidator.getInstance(space -> {
+      throw new AssertionError("Should not be constructed.");
+    });
+    ParamCfg point = pb().id("X").add().id("Point").structured().build();
+    ParamCfg pointX = pb().id("Point.X").build();
+    ConfigValidator.Verdict verdict = v.validateAll(Arrays.asList(
+          DesignSpaceCfg.builder().param(point, pointX).build())).get(0);
+    assertTrue(!verdict.isLegal());
+    assertTrue(verdict.getError().get().startsWith("OUTER_AFTER_INNER"));
+  }
+
+  @Test
+  public void precheckShouldFindReferenceProblems() {
+    ParamCfg a = pb().id("A").inclMin("B + 1").build();
+    ParamCfg b = pb().id("B").inclMin("A + 1").build();
+    ParamCfg c = pb().id("C").inclMin("Nope + 1").inclMax("A.1 - 1").build();
+    assertProblems(DesignSpaceCfg.builder().param(a, b, c).build(),
+        "CIRCULAR A circular dependency", "CIRCULAR B circular dependency",
+        "UNRESOLVED_REFERENCE C Nope", "CIRCULAR C circular dependency");
+  }
+
+  @Test(expected = AssertionError.class)
+  public void illegalPrecheckProblemShouldFailValidation() {
+    check(pb().inclMin("1,5").inclMax("1,5,10").build());
+  }
+
+  @Test
+  public void onlyRefusedProblemsShouldBeIllegal() {
+    List<String> illegal = Arrays.stream(ConfigValidator.Kind.values())
+      .filter(ConfigValidator.Kind::isIllegal)
+      .map(Enum::name)
+      .collect(Collectors.toList());
+    assertEquals(Arrays.asList("MISSING_ID", "MIXED_LIMITS", "MISSING_MIN",
+          "BAD_LIMIT", "CIRCULAR", "OUTER_AFTER_INNER"), illegal);
+  }
+
+  @Test
+  public void batchVerdictsShouldBeInOrder() {
+    ConfigValidator v = ConfigValidator.getInstance(failing("Bad"));
+    List<DesignSpaceCfg> spaces = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      spaces.add(space(pb().id(i % 3 == 0 ? "Bad" : "Good")
+            .inclMin(i).build()));
+    }
+    List<ConfigValidator.Verdict> verdicts = v.validateAll(spaces);
+    assertEquals(spaces.size(), verdicts.size());
+    for (int i = 0; i < spaces.size(); i++) {
+      assertEquals(i, verdicts.get(i).getIndex());
+      assertEquals(i % 3 != 0, verdicts.get(i).isLegal());
+    }
+    assertEquals("rejected Bad",
+        verdicts.get(0).getError().orElse(null));
+  }
+
+  @Test
+  public void batchShouldSkipConfigsWithSameContent() {
+    AtomicInteger created = new AtomicInteger();
+    ConfigValidator v = ConfigValidator.getInstance(space -> {
+      created.incrementAndGet();
+      return null;
+    });
+    ParamCfg param = pb().inclMin(1).inclMax(3).build();
+    List<DesignSpaceCfg> spaces = Collections.nCopies(50, space(param));
+    v.validateAll(spaces);
+    // Only the IDs differ.
+    List<ConfigValidator.Verdict> verdicts = v.validateAll(Arrays.asList(
+          space(param), space(param)));
+    assertTrue(created.get() <= Runtime.getRuntime().availableProcessors());
+    assertTrue(verdicts.get(0).isCached());
+    assertTrue(verdicts.get(1).isCached());
+    v.clearVerdicts();
+    assertTrue(!v.validateAll(spaces.stream()).stream()
+        .allMatch(ConfigValidator.Verdict::isCached));
+  }
+
+  @Test
+  public void batchShouldIsolateIds() {
+    Set<String> ids = Collections.synchronizedSet(new HashSet<>());
+    ConfigValidator v = ConfigValidator.getInstance(space -> {
+      ids.add(space.getId().get());
+      return null;
+    });
+    List<DesignSpaceCfg> spaces = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      spaces.add(space(pb().inclMin(i).build()).withId("Same"));
+    }
+    v.validateAll(spaces);
+    assertEquals(3, ids.size());
+    assertTrue(!ids.contains("Same"));
+  }
+
+  @Test
+  public void batchShouldRejectPrecheckProblemsWithoutInput() {
+    ConfigValidator v = ConfigValidator.getInstance(space -> {
+      throw new AssertionError("Should not be constructed.");
+    });
+    ConfigValidator.Verdict verdict = v.validateAll(Arrays.asList(
+          space(pb().inclMin(1).exclMin(2).inclMin("A").build())))
+      .get(0);
+    assertTrue(!verdict.isLegal());
+    assertEquals(ConfigValidator.Kind.MIXED_LIMITS,
+        verdict.getProblems().get(0).getKind());
+  }
+
+  @Test
+  public void batchShouldValidateXml() {
+    ConfigValidator v = ConfigValidator.getInstance(space -> {
+      throw new AssertionError("Should not be constructed.");
+    }, xml -> {
+      String text = new Scanner(xml).useDelimiter("\\A").next();
+      if (!text.startsWith("<") || text.contains("Bad")) {
+        throw new InPUTException("rejected");
+      }
+      return null;
+    });
+    String good = space(pb().id("Good").build()).xml();
+    String bad = space(pb().id("Bad").build()).xml();
+    String noId = DesignSpaceCfg.builder().id(null).build().xml();
+    List<String> docs = Arrays.asList(good, bad, noId, "Not XML", good);
+    assertEquals(Arrays.asList(true, false, false, false, true),
+        v.validateAllXml(docs).stream()
+          .map(ConfigValidator.Verdict::isLegal)
+          .collect(Collectors.toList()));
+    assertTrue(v.validateAllXml(docs.stream()).stream()
+        .allMatch(ConfigValidator.Verdict::isCached));
+  }
+
+  @Test
+  public void batchShouldReleaseInputBetweenChunks() {
+    Set<String> live = Collections.synchronizedSet(new HashSet<>());
+    AtomicInteger maxLive = new AtomicInteger();
+    AtomicInteger releases = new AtomicInteger();
+    ConfigValidator v = ConfigValidator.getInstance(space -> {
+      live.add(space.getId().get());
+      maxLive.accumulateAndGet(live.size(), Math::max);
+      return null;
+    }, xml -> null, () -> {
+      live.clear();
+      releases.incrementAndGet();
+    });
+    int n = 3 * ConfigValidator.CHUNK + 1;
+    List<DesignSpaceCfg> spaces = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      spaces.add(space(pb().inclMin(i).build()));
+    }
+    List<ConfigValidator.Verdict> verdicts = v.validateAll(spaces);
+    assertEquals(n, verdicts.size());
+    assertEquals(n - 1, verdicts.get(n - 1).getIndex());
+    assertEquals(4, releases.get());
+    assertTrue(maxLive.get() <= ConfigValidator.CHUNK);
+  }
+
+  @Test
+  public void batchShouldIsolateXmlIds() {
+    List<String> ids = Collections.synchronizedList(new ArrayList<>());
+    ConfigValidator v = ConfigValidator.getInstance(space -> null, xml -> {
+      ids.add(XmlReader.designSpace(xml).getId().get());
+      return null;
+    });
+    String a = space(pb().inclMin(1).build()).withId("Shared").xml();
+    String b = space(pb().inclMin(2).build()).withId("Shared").xml();
+    String c = "<!-- Saved by hand. -->\n" + b.replace("\"Shared\"", "'Shared'")
+      .substring(b.indexOf("?>") + 2);
+    v.validateAllXml(Arrays.asList(a, b, c));
+    assertEquals(3, ids.size());
+    assertEquals(3, new HashSet<>(ids).size());
+    assertTrue(!ids.contains("Shared"));
+  }
+
+  @Test
+  public void batchShouldValidateXmlTextAsIs() {
+    List<String> seen = Collections.synchronizedList(new ArrayList<>());
+    ConfigValidator v = ConfigValidator.getInstance(space -> null, xml -> {
+      seen.add(new Scanner(xml).useDelimiter("\\A").next());
+      return null;
+    });
+    String doc = space(pb().build()).xml();
+    // Same content, different text.
+    String spaced = doc + "\n\n";
+    v.validateAllXml(Arrays.asList(doc, spaced));
+    // Apart from the isolated IDs, InPUT sees the original text.
+    String id = XmlReader.designSpace(doc).getId().get();
+    List<String> restored = seen.stream()
+      .map(xml -> xml.replaceFirst("\"Validated_\\d+\"", '"' + id + '"'))
+      .collect(Collectors.toList());
+    assertEquals(2, restored.size());
+    assertTrue(restored.contains(doc));
+    assertTrue(restored.contains(spaced));
+  }
+
+  @Test
+  public void designSpaceShouldConformToCatalogSchemas() throws Exception {
+    ConfigValidator v = ConfigValidator.getInstance(catalog());
+    v.validDesignSpaceSchema(DesignSpaceCfg.builder()
+        .param(Helper.pointParam)
+        .build());
+    v.validSchema(DesignSpaceCfg.builder().build().xml());
+  }
+
+  @Test(expected = AssertionError.class)
+  public void designSpaceWithMissingIdShouldViolateSchemas()
+      throws Exception {
+    ConfigValidator.getInstance(catalog())
+      .validDesignSpaceSchema(DesignSpaceCfg.builder().id(null).build());
+  }
+
+  @Test(expected = AssertionError.class)
+  public void documentWithUnknownRootShouldViolateSchemas() throws Exception {
+    ConfigValidator.getInstance(catalog())
+      .validSchema("<" + X.DESIGN_SPACE + " id='x' />");
+  }
+
+  @Test(expected = AssertionError.class)
+  public void malformedDocumentShouldViolateSchemas() throws Exception {
+    ConfigValidator.getInstance(catalog())
+      .validSchema("This is not entirely valid XML.");
+  }
+
+  @Test
+  public void catalogShouldBeCompiledOnlyOnce() throws Exception {
+    Path catalog = catalog();
+    ConfigValidator a = ConfigValidator.getInstance(catalog);
+    ConfigValidator b = ConfigValidator.getInstance(catalog.resolve("."));
+    assertSame(a.getSchema(), b.getSchema());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void schemasOutsideTheCatalogShouldNotBeFetched() throws Exception {
+    Path catalog = catalog();
+    write(catalog.resolve("Params.xsd"), PARAMS_XSD.replace("</xs:schema>",
+          "<xs:include schemaLocation='http://example.com/x.xsd' />"
+          + "</xs:schema>"));
+    ConfigValidator.getInstance(catalog);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void emptyCatalogShouldBeRejected() throws Exception {
+    ConfigValidator.getInstance(folder.newFolder().toPath());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void schemaValidationShouldRequireCatalog() {
+    validator.validSchema(DesignSpaceCfg.builder().build().xml());
+  }
+
+  // Rejects design spaces that contain a parameter with the given ID.
+  private static DesignSpaceCache.Factory failing(String id) {
+    return space -> {
+      if (space.getParameters().anyMatch(p -> id.equals(p.getId()))) {
+        throw new InPUTException("rejected " + id);
+      }
+      return null;
+    };
+  }
+
+  private static DesignSpaceCfg space(ParamCfg param) {
+    return DesignSpaceCfg.builder().param(param).build();
+  }
+
+  private Path catalog() throws IOException {
+    Path dir = folder.newFolder().toPath();
+    write(dir.resolve(X.DESIGN_SPACE + ".xsd"), SPACE_XSD);
+    write(dir.resolve("Params.xsd"), PARAMS_XSD);
+    return dir;
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void assertProblems(ParamCfg param, String ... expected) {
+    assertProblems(DesignSpaceCfg.builder().param(param).build(), expected);
+  }
+
+  private void assertProblems(DesignSpaceCfg space, String ... expected) {
+    List<String> actual = validator.precheck(space).stream()
+      .map(Object::toString)
+      .collect(Collectors.toList());
+    assertEquals(Arrays.asList(expected), actual);
+  }
+
   private void check(ParamCfg cfg) {
     validator.validParamConfig(cfg);
   }
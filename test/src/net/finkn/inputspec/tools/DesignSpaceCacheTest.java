@@ -0,0 +1,133 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import se.miun.itm.input.model.InPUTException;
+import se.miun.itm.input.model.design.IDesignSpace;
+
+public class DesignSpaceCacheTest {
+  private final AtomicInteger created = new AtomicInteger();
+  private final DesignSpaceCache cache = DesignSpaceCache.of(2, cfg -> {
+    created.incrementAndGet();
+    return space();
+  });
+  private final ParamCfg a = ParamCfg.builder().id("A").build();
+  private final ParamCfg b = ParamCfg.builder().id("B").build();
+  private final ParamCfg c = ParamCfg.builder().id("C").build();
+
+  @Test
+  public void identicalContentShouldBeConstructedOnce() throws Throwable {
+    IDesignSpace first = cache.get(DesignSpaceCfg.getInstance(a));
+    IDesignSpace second = cache.get(DesignSpaceCfg.getInstance(a));
+    assertSame(first, second);
+    assertEquals(1, created.get());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    assertEquals(0.5, cache.getHitRate(), 0.0);
+  }
+
+  @Test
+  public void idsShouldNotBePartOfTheKey() throws Throwable {
+    DesignSpaceCfg x = DesignSpaceCfg.builder().id("X").param(a).build();
+    DesignSpaceCfg y = DesignSpaceCfg.builder().id("Y").param(a).build();
+    assertSame(cache.get(x), cache.get(y));
+  }
+
+  @Test
+  public void mappingIdsShouldNotBePartOfTheKey() throws Throwable {
+    ParamCfg point = Helper.pointParam;
+    DesignSpaceCfg x = DesignSpaceCfg.builder().param(point)
+      .mapping(CodeMappingCfg.getInstance(Helper.pointMapping)).build();
+    DesignSpaceCfg y = DesignSpaceCfg.builder().param(point)
+      .mapping(CodeMappingCfg.getInstance(Helper.pointMapping)).build();
+    assertNotEquals(x.getMapping().get().getId(),
+        y.getMapping().get().getId());
+    assertSame(cache.get(x), cache.get(y));
+    assertEquals(1, created.get());
+  }
+
+  @Test
+  public void differentContentShouldBeConstructedSeparately() throws Throwable {
+    assertNotSame(cache.get(DesignSpaceCfg.getInstance(a)),
+        cache.get(DesignSpaceCfg.getInstance(b)));
+    assertEquals(2, created.get());
+  }
+
+  @Test
+  public void leastRecentlyUsedShouldBeEvicted() throws Throwable {
+    IDesignSpace spaceA = cache.get(DesignSpaceCfg.getInstance(a));
+    cache.get(DesignSpaceCfg.getInstance(b));
+    cache.get(DesignSpaceCfg.getInstance(a)); // B is now least recently used.
+    cache.get(DesignSpaceCfg.getInstance(c));
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getEvictions());
+    assertSame(spaceA, cache.get(DesignSpaceCfg.getInstance(a)));
+    cache.get(DesignSpaceCfg.getInstance(b));
+    assertEquals(4, created.get());
+  }
+
+  @Test
+  public void failuresShouldNotBeCached() throws Throwable {
+    AtomicInteger attempts = new AtomicInteger();
+    DesignSpaceCache failing = DesignSpaceCache.of(2, cfg -> {
+      attempts.incrementAndGet();
+      throw new InPUTException("Illegal");
+    });
+    for (int i = 0; i < 2; i++) {
+      try {
+        failing.get(DesignSpaceCfg.getInstance(a));
+        fail("Expected an exception.");
+      } catch (InPUTException e) {
+      }
+    }
+    assertEquals(2, attempts.get());
+    assertEquals(0, failing.size());
+  }
+
+  @Test
+  public void clearingShouldKeepStatistics() throws Throwable {
+    cache.get(DesignSpaceCfg.getInstance(a));
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nonPositiveCapacityShouldBeIllegal() {
+    DesignSpaceCache.of(0);
+  }
+
+  private static IDesignSpace space() {
+    return (IDesignSpace) Proxy.newProxyInstance(
+        IDesignSpace.class.getClassLoader(),
+        new Class<?>[] {IDesignSpace.class},
+        (proxy, method, args) -> {
+          throw new UnsupportedOperationException();
+        });
+  }
+}
@@ -0,0 +1,128 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import static net.finkn.inputspec.tools.Helper.pb;
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class DifferenceTest {
+  private final ParamCfg x = pb().id("X").inclMin(1).build();
+  private final ParamCfg y = pb().id("Y").exclMax("X + 1").build();
+  private final ParamCfg point = pb().id("P").structured().add(x, y).build();
+
+  @Test
+  public void equalParametersShouldHaveNoDifference() {
+    ParamCfg copy = pb().id("P").structured()
+      .add(pb().id("X").inclMin("1").build(), y)
+      .build();
+    assertFalse(Difference.of(point, copy).isPresent());
+    assertEquals(point, copy);
+    assertEquals(point.hashCode(), copy.hashCode());
+  }
+
+  @Test
+  public void firstDifferingPathShouldBeReported() {
+    ParamCfg other = point.withNested(1, pb().id("Y").exclMax("X + 2").build());
+    Difference d = Difference.of(point, other).get();
+    assertEquals("P.Y", d.getPath());
+    assertEquals(X.EXCLMAX, d.getAttribute());
+    assertEquals("X + 1", d.getLeft());
+    assertEquals("X + 2", d.getRight());
+    assertNotEquals(point, other);
+  }
+
+  @Test
+  public void differentNestingShouldBeReportedAsCount() {
+    ParamCfg other = pb().id("P").structured().add(x).build();
+    Difference d = Difference.of(point, other).get();
+    assertEquals("P", d.getPath());
+    assertEquals(Difference.COUNT, d.getAttribute());
+  }
+
+  @Test
+  public void differentKindShouldBeReported() {
+    ParamCfg choice = pb().id("X").choice().build();
+    assertEquals(Difference.KIND, Difference.of(x, choice).get()
+        .getAttribute());
+  }
+
+  @Test
+  public void designSpacesShouldBeCompared() {
+    DesignSpaceCfg a = DesignSpaceCfg.builder().id("S").param(point).build();
+    DesignSpaceCfg b = DesignSpaceCfg.builder().id("S").param(point).build();
+    DesignSpaceCfg c = DesignSpaceCfg.builder().id("T").param(point).build();
+    assertEquals(a, b);
+    assertEquals("", Difference.of(a, c).get().getPath());
+    assertEquals(X.ID, Difference.of(a, c).get().getAttribute());
+    DesignSpaceCfg d = DesignSpaceCfg.builder().id("S")
+      .param(point.withNested(0, y)).build();
+    // The path follows the left side.
+    assertEquals("P.X", Difference.of(a, d).get().getPath());
+    assertEquals(X.ID, Difference.of(a, d).get().getAttribute());
+  }
+
+  @Test
+  public void codeMappingsShouldBeCompared() {
+    MappingCfg m = MappingCfg.builder().id("M").type("T").build();
+    CodeMappingCfg a = CodeMappingCfg.builder().id("C").mapping(m).build();
+    CodeMappingCfg b = CodeMappingCfg.builder().id("C")
+      .mapping(MappingCfg.builder().id("M").type("U").build()).build();
+    assertNotEquals(a, b);
+    Difference d = Difference.of(a, b).get();
+    assertEquals("M", d.getPath());
+    assertEquals(X.TYPE, d.getAttribute());
+    assertEquals(a, CodeMappingCfg.builder().id("C").mapping(m).build());
+  }
+
+  @Test
+  public void equalConfigurationsShouldBeUsableAsKeys() {
+    Set<ParamCfg> set = new HashSet<>();
+    set.add(point);
+    set.add(pb().id("P").structured().add(x, y).build());
+    set.add(x);
+    assertEquals(2, set.size());
+  }
+
+  @Test
+  public void deepParametersShouldBeCompared() {
+    ParamCfg a = deep(50000, "1");
+    ParamCfg b = deep(50000, "1");
+    ParamCfg c = deep(50000, "2");
+    assertEquals(a, b);
+    Optional<Difference> d = Difference.of(a, c);
+    assertEquals(X.INCLMIN, d.get().getAttribute());
+    assertTrue(d.get().getPath().endsWith("N.X"));
+  }
+
+  private static ParamCfg deep(int depth, String limit) {
+    ParamCfg.Builder builder = pb().id("N").add(pb().inclMin(limit).build());
+    for (int i = 0; i < depth; i++) {
+      builder = builder.structured().nest();
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,161 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ExpressionTest {
+  private final double delta = 1e-9;
+  private final Map<String, Interval> env = new HashMap<>();
+
+  @Test
+  public void numberShouldEvaluateToItself() {
+    assertEquals(3.5, eval("3.5"), delta);
+  }
+
+  @Test
+  public void operatorPrecedenceShouldBeRespected() {
+    assertEquals(7, eval("1 + 2 * 3"), delta);
+    assertEquals(9, eval("(1 + 2) * 3"), delta);
+    assertEquals(-1, eval("-3 + 2"), delta);
+    assertEquals(1, eval("7 % 3"), delta);
+  }
+
+  @Test
+  public void referencesShouldBeLookedUp() {
+    Expression e = Expression.valueOf("A + 2");
+    assertEquals(5, e.evaluate(id -> 3), delta);
+  }
+
+  @Test
+  public void dottedReferencesShouldBeCollected() {
+    Expression e = Expression.valueOf("Point.X + A.1 * Math.sqrt(B)");
+    assertThat(e.getReferences(), hasItems("Point.X", "A.1", "B"));
+    assertEquals(3, e.getReferences().size());
+    assertTrue(e.hasReferences());
+  }
+
+  @Test
+  public void mathConstantsShouldNotCountAsReferences() {
+    assertFalse(Expression.valueOf("Math.PI * Math.E").hasReferences());
+  }
+
+  @Test
+  public void whitespaceShouldBeIgnored() {
+    String expr = "A +   Math .sqrt (Math . log(  Math. exp ( 3 -1) )* 2) ";
+    assertEquals(2, Expression.valueOf(expr).evaluate(id -> 0), delta);
+  }
+
+  @Test
+  public void mathFunctionsShouldBeEvaluated() {
+    assertEquals(8, eval("Math.pow(2,3)"), delta);
+    assertEquals(2, eval("Math.max(1, Math.min(2, 3))"), delta);
+    assertEquals(3, eval("Math.abs(-3)"), delta);
+  }
+
+  @Test
+  public void splitShouldIgnoreCommasInFunctionCalls() {
+    List<Expression> limits = Expression.split("(A*0) + Math.max(A,1), 2");
+    assertEquals(2, limits.size());
+    assertEquals(2, limits.get(1).evaluate(id -> 0), delta);
+  }
+
+  @Test
+  public void splittingNullShouldGiveEmptyList() {
+    assertTrue(Expression.split(null).isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unbalancedParenthesesShouldBeIllegal() {
+    Expression.valueOf("(A + 1");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownFunctionShouldBeIllegal() {
+    Expression.valueOf("Math.frobnicate(A)");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void trailingGarbageShouldBeIllegal() {
+    Expression.valueOf("A + 1 )");
+  }
+
+  @Test
+  public void boundsShouldFollowIntervalArithmetic() {
+    env.put("A", Interval.valueOf("[1,3]"));
+    env.put("B", Interval.valueOf("[-2,4]"));
+    assertBounds("A + 2", 3, 5);
+    assertBounds("A - B", -3, 5);
+    assertBounds("A * B", -6, 12);
+    assertBounds("B * B", -8, 16);
+    assertBounds("-A", -3, -1);
+    assertBounds("12 / A", 4, 12);
+    assertBounds("Math.abs(B)", 0, 4);
+    assertBounds("Math.pow(B, 2)", 0, 16);
+    assertBounds("Math.max(A, B)", 1, 4);
+  }
+
+  @Test
+  public void divisionByIntervalContainingZeroShouldBeUnbounded() {
+    env.put("B", Interval.valueOf("[-2,4]"));
+    Interval result = bounds("1 / B");
+    assertFalse(result.getInclMin().isPresent());
+    assertFalse(result.getInclMax().isPresent());
+  }
+
+  @Test
+  public void boundsShouldContainPointEvaluations() {
+    env.put("A", Interval.valueOf("[1,3]"));
+    env.put("B", Interval.valueOf("[-2,4]"));
+    Expression e = Expression.valueOf("Math.sqrt(A) * B - Math.log(A) / 2");
+    Interval bounds = e.bounds(env::get);
+    for (double a : Arrays.asList(1.0, 1.5, 2.0, 3.0)) {
+      for (double b : Arrays.asList(-2.0, 0.0, 1.0, 4.0)) {
+        double value = e.evaluate(id -> id.equals("A") ? a : b);
+        assertTrue(value + " not in " + bounds, bounds.contains(value));
+      }
+    }
+  }
+
+  private double eval(String expr) {
+    return Expression.valueOf(expr).evaluate(id -> {
+      throw new AssertionError("Unexpected reference " + id);
+    });
+  }
+
+  private Interval bounds(String expr) {
+    return Expression.valueOf(expr).bounds(env::get);
+  }
+
+  private void assertBounds(String expr, double min, double max) {
+    Interval result = bounds(expr);
+    assertEquals(expr, min, result.getInclMin().get().doubleValue(), delta);
+    assertEquals(expr, max, result.getInclMax().get().doubleValue(), delta);
+  }
+}
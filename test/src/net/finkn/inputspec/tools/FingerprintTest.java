@@ -0,0 +1,136 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import static net.finkn.inputspec.tools.Helper.pb;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class FingerprintTest {
+
+  @Test
+  public void equalParametersShouldHaveEqualFingerprints() {
+    ParamCfg a = pb().id("A").inclMin(1).exclMax("B + 2").build();
+    ParamCfg b = pb().id("A").inclMin("1").exclMax("B + 2").build();
+    assertNotSame(a, b);
+    assertEquals(a.fingerprint(), b.fingerprint());
+    assertEquals(a.xml(), b.xml());
+  }
+
+  @Test
+  public void differentAttributesShouldGiveDifferentFingerprints() {
+    ParamCfg a = pb().inclMin(1).build();
+    assertThat(pb().inclMin(2).build().fingerprint(),
+        is(not(a.fingerprint())));
+    assertThat(pb().exclMin(1).build().fingerprint(),
+        is(not(a.fingerprint())));
+  }
+
+  @Test
+  public void nullShouldDifferFromEmptyString() {
+    assertThat(pb().fixed("").build().fingerprint(),
+        is(not(pb().build().fingerprint())));
+  }
+
+  @Test
+  public void nestedChangeShouldChangeRootFingerprint() {
+    ParamCfg a = pb().id("S").structured().add(pb().id("Y").build()).build();
+    ParamCfg b = pb().id("S").structured().add(pb().id("Z").build()).build();
+    assertThat(a.fingerprint(), is(not(b.fingerprint())));
+    assertThat(DesignSpaceCfg.getInstance(a).fingerprint(),
+        is(not(DesignSpaceCfg.getInstance(b).fingerprint())));
+  }
+
+  @Test
+  public void parameterOrderShouldMatter() {
+    ParamCfg a = pb().id("A").build();
+    ParamCfg b = pb().id("B").build();
+    DesignSpaceCfg ab = DesignSpaceCfg.builder().id("S").param(a, b).build();
+    DesignSpaceCfg ba = DesignSpaceCfg.builder().id("S").param(b, a).build();
+    assertThat(ab.fingerprint(), is(not(ba.fingerprint())));
+  }
+
+  @Test
+  public void equalSpacesShouldHaveEqualFingerprintsAndXml() {
+    CodeMappingCfg mapping = CodeMappingCfg.builder().id("M")
+      .mapping(Helper.pointMapping).build();
+    DesignSpaceCfg a = DesignSpaceCfg.builder().id("S").mapping(mapping)
+      .param(Helper.pointParam).build();
+    DesignSpaceCfg b = DesignSpaceCfg.builder().id("S").mapping(mapping)
+      .param(Helper.pointParam).build();
+    assertEquals(a.fingerprint(), b.fingerprint());
+    assertEquals(a.xml(), b.xml());
+  }
+
+  @Test
+  public void mappingShouldBePartOfSpaceFingerprint() {
+    CodeMappingCfg mapping = CodeMappingCfg.builder().id("M")
+      .mapping(Helper.pointMapping).build();
+    DesignSpaceCfg a = DesignSpaceCfg.builder().id("S").mapping(mapping)
+      .build();
+    DesignSpaceCfg b = DesignSpaceCfg.builder().id("S").build();
+    assertThat(a.fingerprint(), is(not(b.fingerprint())));
+  }
+
+  @Test
+  public void contentFingerprintShouldIgnoreMappingId() {
+    CodeMappingCfg m1 = CodeMappingCfg.builder().id("M1")
+      .mapping(Helper.pointMapping).build();
+    CodeMappingCfg m2 = CodeMappingCfg.builder().id("M2")
+      .mapping(Helper.pointMapping).build();
+    assertThat(m1.fingerprint(), is(not(m2.fingerprint())));
+    assertEquals(m1.contentFingerprint(), m2.contentFingerprint());
+    DesignSpaceCfg a = DesignSpaceCfg.builder().id("S").mapping(m1).build();
+    DesignSpaceCfg b = DesignSpaceCfg.builder().id("S").mapping(m2).build();
+    assertThat(a.fingerprint(), is(not(b.fingerprint())));
+    assertEquals(a.contentFingerprint(), b.contentFingerprint());
+  }
+
+  @Test
+  public void fingerprintsOfGeneratedSpacesShouldNotCollide() {
+    Fuzzer fuzzer = Fuzzer.builder().build();
+    Set<String> xml = new HashSet<>();
+    Set<Fingerprint> fingerprints = new HashSet<>();
+    IntStream.range(0, 2000).mapToObj(fuzzer::getConfig).forEach(s -> {
+      xml.add(s.xml());
+      fingerprints.add(s.fingerprint());
+    });
+    assertEquals(xml.size(), fingerprints.size());
+  }
+
+  @Test
+  public void stringFingerprintsShouldDependOnEveryCharacter() {
+    assertEquals(Fingerprint.of("abcde"), Fingerprint.of("abcde"));
+    assertThat(Fingerprint.of("abcde"), is(not(Fingerprint.of("abcdf"))));
+    assertThat(Fingerprint.of("a"), is(not(Fingerprint.of("a\0"))));
+  }
+
+  @Test
+  public void stringFormShouldBe32HexDigits() {
+    assertTrue(Fingerprint.of("x").toString().matches("[0-9a-f]{32}"));
+  }
+}
@@ -0,0 +1,160 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class FlakinessTest {
+  private final Flakiness.Builder builder = Flakiness.builder().threads(2);
+
+  @Test
+  public void failureRateShouldBeEstimated() {
+    Flakiness.Estimate estimate = builder.build().estimate(run -> {
+      if (run % 5 == 0) {
+        throw new IllegalStateException();
+      }
+    });
+    assertTrue(estimate.toString(), estimate.contains(0.2));
+    assertEquals(0.2, estimate.getRate(), 0.01);
+  }
+
+  @Test
+  public void wilsonIntervalShouldMatchKnownValues() {
+    Flakiness.Estimate estimate = builder.runs(100, 100).build()
+      .estimate(run -> assertTrue(run >= 20));
+    assertEquals(100, estimate.getRuns());
+    assertEquals(20, estimate.getFailures());
+    assertEquals(0.1333, estimate.getLower(), 0.0001);
+    assertEquals(0.2888, estimate.getUpper(), 0.0001);
+  }
+
+  @Test
+  public void estimationShouldStopWhenIntervalIsNarrow() {
+    Flakiness.Estimate estimate = builder.width(0.2).runs(10, 100000).build()
+      .estimate(run -> { });
+    assertTrue(estimate.getWidth() <= 0.2);
+    assertTrue(estimate.getRuns() < 100000);
+  }
+
+  @Test
+  public void estimationShouldStopAtMaxRuns() {
+    Flakiness.Estimate estimate = builder.width(0.001).runs(10, 50).build()
+      .estimate(run -> assertTrue(run % 2 == 0));
+    assertEquals(50, estimate.getRuns());
+    assertTrue(estimate.getWidth() > 0.001);
+  }
+
+  @Test
+  public void higherConfidenceShouldGiveWiderInterval() {
+    Flakiness.Trial trial = run -> assertTrue(run % 4 != 0);
+    Flakiness.Estimate a = builder.runs(100, 100).confidence(0.9).build()
+      .estimate(trial);
+    Flakiness.Estimate b = builder.runs(100, 100).confidence(0.999).build()
+      .estimate(trial);
+    assertTrue(a.getWidth() < b.getWidth());
+  }
+
+  @Test
+  public void testMethodsShouldBeRunAsTrials() {
+    Flakiness flakiness = builder.runs(10, 10).build();
+    assertEquals(0, flakiness.estimate(Flakiness.Trial.of(Spec.class,
+            "passes")).getFailures());
+    assertEquals(10, flakiness.estimate(Flakiness.Trial.of(Spec.class,
+            "fails")).getFailures());
+    assertEquals(0, flakiness.estimate(Flakiness.Trial.of(Spec.class,
+            "throwsExpected")).getFailures());
+    assertEquals(10, flakiness.estimate(Flakiness.Trial.of(Spec.class,
+            "missesExpected")).getFailures());
+  }
+
+  /**
+   * The multi-range from {@code MultiRangeMismatchTest}, where 1 in 5
+   * ranges has a max, as modeled by the oracle. Generation fails 80% of
+   * the time.
+   */
+  @Test
+  public void missingMaxFailureRateShouldBeEstimated() {
+    Oracle oracle = Oracle.of(ParamCfg.builder()
+        .inclMin("1,2,3,4,5")
+        .inclMax("1")
+        .build());
+    Flakiness.Estimate estimate = builder.confidence(0.999).width(0.1)
+      .build()
+      .estimate(run -> oracle.next(new Random(run)));
+    assertTrue(estimate.toString(), estimate.contains(0.8));
+  }
+
+  @Test
+  public void inputShouldBeReleasedAfterEveryBatch() {
+    AtomicInteger releases = new AtomicInteger();
+    Flakiness.Estimate estimate = builder.width(0.001).runs(10, 35)
+      .release(releases::incrementAndGet)
+      .build()
+      .estimate(run -> { });
+    assertEquals(35, estimate.getRuns());
+    assertEquals(4, releases.get());
+  }
+
+  @Test
+  public void rangeTestsShouldBeRunAsTrials() {
+    ParamCfg param = ParamCfg.builder().inclMin(1).inclMax(3).build();
+    Flakiness flakiness = builder.runs(10, 10).build();
+    assertEquals(0, flakiness.estimate(param, t -> t.expected(1, 2, 3)
+          .rejects(0, 4)).getFailures());
+    assertEquals(10, flakiness.estimate(param, t -> t.rejects(2))
+        .getFailures());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void missingTestMethodShouldBeIllegal() {
+    Flakiness.Trial.of(Spec.class, "missing");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void illegalConfidenceShouldBeRejected() {
+    Flakiness.builder().confidence(1);
+  }
+
+  public static class Spec {
+    @Test
+    public void passes() {
+    }
+
+    @Test
+    public void fails() {
+      fail();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void throwsExpected() {
+      throw new IllegalStateException();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void missesExpected() {
+    }
+  }
+}
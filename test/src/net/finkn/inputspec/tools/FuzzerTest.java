@@ -0,0 +1,209 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class FuzzerTest {
+  private final Fuzzer.Builder builder = Fuzzer.builder()
+    .target(Fuzzer.ORACLE)
+    .configs(300)
+    .threads(2);
+
+  @Test
+  public void oracleShouldExposeKnownQuirks() {
+    Set<Fuzzer.Kind> kinds = builder.build().run().getFindings().stream()
+      .map(Fuzzer.Finding::getKind)
+      .collect(Collectors.toSet());
+    // References resolve to 0, swapped ranges, multi-range failures, ...
+    assertThat(kinds, hasItem(Fuzzer.Kind.OUT_OF_BOUNDS));
+    assertThat(kinds, hasItem(Fuzzer.Kind.NEXT_FAILED));
+    assertThat(kinds, hasItem(Fuzzer.Kind.REJECTS_LEGAL));
+  }
+
+  @Test
+  public void resultsShouldNotDependOnScheduling() {
+    List<String> a = findings(builder.threads(1).build().run());
+    List<String> b = findings(builder.threads(4).build().run());
+    assertEquals(a, b);
+  }
+
+  @Test
+  public void findingsShouldBeDeduplicated() {
+    List<String> keys = builder.build().run().getFindings().stream()
+      .map(Fuzzer.Finding::getKey)
+      .collect(Collectors.toList());
+    assertEquals(keys.size(), keys.stream().distinct().count());
+  }
+
+  @Test
+  public void configurationsShouldBeReproducible() {
+    Fuzzer fuzzer = builder.seed(7).build();
+    assertEquals(fuzzer.getConfig(3).xml(), fuzzer.getConfig(3).xml());
+    assertThat(fuzzer.getConfig(3).getId().get(),
+        is(not(fuzzer.getConfig(4).getId().get())));
+  }
+
+  @Test
+  public void rejectedConfigurationsShouldBeReported() {
+    Fuzzer.Report report = builder.configs(5)
+      .target((space, random) -> {
+        throw new IllegalStateException("Rejected");
+      })
+      .build().run();
+    assertEquals(1, report.getFindings().size());
+    assertEquals(Fuzzer.Kind.REJECTED, report.getFindings().get(0).getKind());
+    assertEquals(0, report.getFindings().get(0).getConfig());
+  }
+
+  @Test
+  public void reportShouldMeasureThroughput() {
+    Fuzzer.Report report = builder.configs(50).build().run();
+    assertEquals(50, report.getConfigs());
+    assertTrue(report.getConfigsPerSecond() > 0);
+  }
+
+  @Test
+  public void targetShouldSeeUniqueIdsAcrossRuns() {
+    Set<String> ids = Collections.synchronizedSet(new HashSet<>());
+    Fuzzer fuzzer = builder.configs(20)
+      .target((space, random) -> {
+        ids.add(space.getId().get());
+        return Fuzzer.ORACLE.open(space, random);
+      })
+      .build();
+    fuzzer.run();
+    fuzzer.run();
+    assertEquals(40, ids.size());
+    assertTrue(!ids.contains(fuzzer.getConfig(0).getId().get()));
+  }
+
+  @Test
+  public void someConfigurationsShouldHaveMappedPoints() {
+    Fuzzer fuzzer = builder.build();
+    DesignSpaceCfg mapped = IntStream.range(0, 100)
+      .mapToObj(fuzzer::getConfig)
+      .filter(s -> s.getMapping().isPresent())
+      .findFirst().get();
+    assertTrue(mapped.getParameters()
+        .anyMatch(p -> p.getParamType() == ParamCfg.ParamType.STRUCTURED));
+  }
+
+  @Test
+  public void targetShouldSeeUniqueMappingIds() {
+    Set<String> ids = Collections.synchronizedSet(new HashSet<>());
+    AtomicInteger mapped = new AtomicInteger();
+    Fuzzer fuzzer = builder.configs(100)
+      .target((space, random) -> {
+        space.getMapping().ifPresent(m -> {
+          ids.add(m.getId());
+          mapped.incrementAndGet();
+        });
+        return Fuzzer.ORACLE.open(space, random);
+      })
+      .build();
+    fuzzer.run();
+    fuzzer.run();
+    assertTrue(mapped.get() > 0);
+    assertEquals(mapped.get(), ids.size());
+  }
+
+  @Test
+  public void targetShouldBeReleasedAfterEveryChunk() {
+    AtomicInteger releases = new AtomicInteger();
+    builder.configs(2 * Fuzzer.CHUNK + 1)
+      .target(new Fuzzer.Target() {
+        @Override
+        public Fuzzer.Subject open(DesignSpaceCfg space, Random random)
+            throws Exception {
+          return Fuzzer.ORACLE.open(space, random);
+        }
+        @Override
+        public void release() {
+          releases.incrementAndGet();
+        }
+      })
+      .build().run();
+    assertEquals(3, releases.get());
+  }
+
+  // Every configuration goes through InPUT, whatever it makes of them.
+  @Test
+  public void inputTargetShouldRunAllConfigurations() {
+    Fuzzer.Report report = builder.configs(20)
+      .target(Fuzzer.INPUT)
+      .build().run();
+    assertEquals(20, report.getConfigs());
+    List<String> keys = report.getFindings().stream()
+      .map(Fuzzer.Finding::getKey)
+      .collect(Collectors.toList());
+    assertEquals(keys.size(), keys.stream().distinct().count());
+  }
+
+  @Test
+  public void floatLimitsShouldBeProbedInFloatPrecision() {
+    ParamCfg param = ParamCfg.builder().id("F").type("float")
+      .inclMin("0").exclMax("0.1").build();
+    Bounds bounds = Bounds.of(param);
+    List<Object> probes = Fuzzer.probes(param, bounds.getIntervals("F"));
+    float limit = 0.1f;
+    assertThat(probes, hasItem(Math.nextDown(limit)));
+    assertThat(probes, hasItem(limit));
+    assertThat(probes, hasItem(Math.nextUp(limit)));
+    assertTrue(probes.stream().allMatch(p -> p instanceof Float));
+    assertTrue(Fuzzer.contains(bounds, "F", "float", Math.nextDown(limit)));
+    assertTrue(!Fuzzer.contains(bounds, "F", "float", limit));
+  }
+
+  @Test
+  public void floatValueAtLimitShouldBeLegal() {
+    ParamCfg param = ParamCfg.builder().id("F").type("float")
+      .inclMax("0.1").build();
+    Bounds bounds = Bounds.of(param);
+    // 0.1f is larger than 0.1, but it is the limit of a float parameter.
+    assertTrue(!bounds.contains("F", 0.1f));
+    assertTrue(Fuzzer.contains(bounds, "F", "float", 0.1f));
+    assertTrue(!Fuzzer.contains(bounds, "F", "float", Math.nextUp(0.1f)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nonPositiveThreadCountShouldBeIllegal() {
+    Fuzzer.builder().threads(0);
+  }
+
+  private static List<String> findings(Fuzzer.Report report) {
+    return report.getFindings().stream()
+      .map(Fuzzer.Finding::toString)
+      .collect(Collectors.toList());
+  }
+}
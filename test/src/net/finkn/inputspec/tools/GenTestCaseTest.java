@@ -153,6 +153,16 @@ public class GenTestCaseTest {
       .gen(Generator.fromSeq(1.2, 2.5, 0.4, 4.7))
       .intervals("]0.4,1.2]", "]1.9,4.8["));
   }
+  @Test
+  public void testIntervalsSuccessWithBounds() {
+    ParamCfg param = ParamCfg.builder().inclMin(1).inclMax(9).build();
+    runTest(test.intervals(Bounds.of(param).getIntervals(param.getId())));
+  }
+  @Test(expected = AssertionError.class)
+  public void testIntervalsFailureWithBounds() {
+    ParamCfg param = ParamCfg.builder().inclMin(1).exclMax(9).build();
+    runTest(test.intervals(Bounds.of(param).getIntervals(param.getId())));
+  }
 
   private void runTest(GenTestCase test) {
     test.run();
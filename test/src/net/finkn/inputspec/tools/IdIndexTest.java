@@ -0,0 +1,146 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import static net.finkn.inputspec.tools.Helper.pb;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class IdIndexTest {
+  // The same configurations as in DuplicateIdTest.
+  private final ParamCfg array1 = pb().id("A").type("integer[2][2]").build();
+  private final ParamCfg array2 = pb().id("A.1").type("integer[2]").build();
+  private final ParamCfg x1 = pb().fixed(1).build();
+  private final ParamCfg x2 = pb().fixed(3).build();
+  private final ParamCfg x = pb().id("X").build();
+  private final ParamCfg pointX = pb().id("Point.X").build();
+  private final ParamCfg point = pb()
+    .id("X").add()
+    .id("Y").add()
+    .id("Point")
+    .structured()
+    .build();
+
+  @Test
+  public void uniqueIdsShouldHaveNoConflicts() {
+    IdIndex index = IdIndex.of(array1, point, pb().id("B").build());
+    assertFalse(index.hasConflicts());
+    assertEquals(5, index.size());
+    assertTrue(index.contains("Point.Y"));
+    assertFalse(index.contains("A.1"));
+    assertEquals(Arrays.asList(1, 1),
+        index.getLocation("Point.Y").get().getPath());
+  }
+
+  @Test
+  public void sameOuterIdsShouldBeDuplicates() {
+    assertConflicts(IdIndex.of(x1, x2), "DUPLICATE X at [0] and X at [1]");
+  }
+
+  @Test
+  public void laterDuplicateShouldBeIndexed() {
+    IdIndex index = IdIndex.of(x1, x2);
+    assertEquals(1, index.size());
+    assertEquals(Arrays.asList(1), index.getLocation("X").get().getPath());
+  }
+
+  @Test
+  public void innerAfterOuterShouldBeDuplicate() {
+    assertConflicts(IdIndex.of(pointX, point),
+        "DUPLICATE Point.X at [0] and Point.X at [1, 0]");
+  }
+
+  @Test
+  public void outerAfterInnerShouldBeDistinguished() {
+    assertConflicts(IdIndex.of(point, pointX),
+        "OUTER_AFTER_INNER Point.X at [0, 0] and Point.X at [1]");
+  }
+
+  @Test
+  public void outerBeforeRelativeInnerShouldShadow() {
+    assertConflicts(IdIndex.of(x, point),
+        "SHADOWED X at [0] and Point.X at [1, 0]");
+    assertFalse(IdIndex.of(point, x).hasConflicts());
+  }
+
+  @Test
+  public void arrayElementIdsShouldCollide() {
+    assertConflicts(IdIndex.of(array1, array2),
+        "ELEMENT_RELOCATED A at [0] and A.1 at [1]");
+    assertConflicts(IdIndex.of(array2, array1),
+        "ELEMENT_IGNORED A.1 at [0] and A at [1]");
+  }
+
+  @Test
+  public void elementIdsShouldBeCheckedAgainstDimensions() {
+    ParamCfg array = pb().id("A").type("integer[2][3]").build();
+    assertConflicts(IdIndex.of(array, pb().id("A.2.3").build()),
+        "ELEMENT_RELOCATED A at [0] and A.2.3 at [1]");
+    assertFalse(IdIndex.of(array, pb().id("A.3").build()).hasConflicts());
+    assertFalse(IdIndex.of(array, pb().id("A.0").build()).hasConflicts());
+    assertFalse(IdIndex.of(array, pb().id("A.1.1.1").build())
+        .hasConflicts());
+    assertFalse(IdIndex.of(x, pb().id("X.1").build()).hasConflicts());
+  }
+
+  @Test
+  public void unsizedDimensionsShouldBeUnbounded() {
+    ParamCfg array = pb().id("A").type("integer[]").build();
+    assertConflicts(IdIndex.of(array, pb().id("A.1000").build()),
+        "ELEMENT_RELOCATED A at [0] and A.1000 at [1]");
+  }
+
+  @Test
+  public void parametersWithoutIdsShouldBeIgnored() {
+    IdIndex index = IdIndex.of(pb().id(null).build(), pb().id(null).build());
+    assertFalse(index.hasConflicts());
+    assertEquals(0, index.size());
+  }
+
+  @Test
+  public void deeplyNestedConflictsShouldBeFound() {
+    ParamCfg param = pb().id("Leaf").build();
+    for (int i = 0; i < 1000; i++) {
+      param = pb().add(param).id("Leaf").structured().build();
+    }
+    assertFalse(IdIndex.of(param).hasConflicts());
+    IdIndex index = IdIndex.of(pb().id("Leaf").build(), param);
+    assertEquals(1001, index.size());
+    assertEquals(IdIndex.Kind.DUPLICATE, index.getConflicts().get(0).getKind());
+    assertEquals(1000, index.getConflicts().stream()
+        .filter(c -> c.getKind() == IdIndex.Kind.SHADOWED)
+        .count());
+  }
+
+  private static void assertConflicts(IdIndex index, String ... expected) {
+    List<String> actual = index.getConflicts().stream()
+      .map(Object::toString)
+      .collect(Collectors.toList());
+    assertEquals(Arrays.asList(expected), actual);
+  }
+}
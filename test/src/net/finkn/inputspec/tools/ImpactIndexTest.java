@@ -0,0 +1,109 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import static net.finkn.inputspec.tools.Helper.pb;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ImpactIndexTest {
+  private final ParamCfg a = pb().id("A").inclMin(1).inclMax(3).build();
+  private final ParamCfg b = pb().id("B").inclMin("A + 1").build();
+  private final ParamCfg c = pb().id("C").inclMin("B + A").build();
+  private final ParamCfg d = pb().id("D").inclMin("C * 2").build();
+  private final ParamCfg e = pb().id("E").inclMin(5).build();
+
+  @Test
+  public void directDependenciesShouldBeIndexed() {
+    ImpactIndex index = ImpactIndex.of(d, c, b, a, e);
+    assertThat(index.getDependencies("C"), hasItems("A", "B"));
+    assertThat(index.getDependents("A"), hasItems("B", "C"));
+    assertTrue(index.getDependents("E").isEmpty());
+  }
+
+  @Test
+  public void orderShouldPutDependeesFirst() {
+    List<String> order = ImpactIndex.of(d, c, b, a, e).getOrder();
+    assertEquals(5, order.size());
+    assertBefore(order, "A", "B");
+    assertBefore(order, "B", "C");
+    assertBefore(order, "A", "C");
+    assertBefore(order, "C", "D");
+  }
+
+  @Test
+  public void affectedShouldBeTransitiveAndOrdered() {
+    ImpactIndex index = ImpactIndex.of(d, c, b, a, e);
+    assertEquals(Arrays.asList("B", "C", "D"), index.getAffected("A"));
+    assertEquals(Arrays.asList("C", "D"), index.getAffected("B"));
+    assertTrue(index.getAffected("D").isEmpty());
+    assertTrue(index.getAffected("E").isEmpty());
+  }
+
+  @Test
+  public void unknownIdShouldAffectNothing() {
+    assertTrue(ImpactIndex.of(a, b).getAffected("Q").isEmpty());
+  }
+
+  @Test
+  public void nestedParametersShouldUseAbsoluteIds() {
+    ParamCfg outer = pb().id("B").inclMin("Point.X + 1").build();
+    ImpactIndex index = ImpactIndex.of(Helper.pointParam, outer);
+    assertThat(index.getIds(), hasItems("Point", "Point.X", "Point.Y", "B"));
+    assertEquals(Arrays.asList("B"), index.getAffected("Point.X"));
+    assertTrue(index.getAffected("Point.Y").isEmpty());
+  }
+
+  @Test
+  public void changingStructuredParamShouldAffectDependentsOfNested() {
+    ParamCfg outer = pb().id("B").inclMin("Point.Y + 1").build();
+    ImpactIndex index = ImpactIndex.of(Helper.pointParam, outer);
+    assertEquals(Arrays.asList("B"), index.getAffected("Point"));
+  }
+
+  @Test
+  public void arrayElementReferencesShouldCountAsArrayReferences() {
+    ParamCfg array = pb().id("A").type("integer[3]").build();
+    ImpactIndex index = ImpactIndex.of(array, b);
+    assertEquals(Arrays.asList("B"), index.getAffected("A.2"));
+  }
+
+  @Test
+  public void circularDependenciesShouldBeReported() {
+    ParamCfg x = pb().id("X").inclMin("Y + 1").build();
+    ParamCfg y = pb().id("Y").inclMin("X + 1").build();
+    ParamCfg z = pb().id("Z").inclMin("Y + 1").build();
+    ImpactIndex index = ImpactIndex.of(x, y, z, a);
+    assertThat(index.getCircular(), hasItems("X", "Y", "Z"));
+    assertThat(index.getCircular(), not(hasItem("A")));
+    assertEquals("A", index.getOrder().get(0));
+    assertThat(index.getAffected("X"), hasItems("Y", "Z"));
+  }
+
+  private static void assertBefore(List<String> order, String x, String y) {
+    assertTrue(x + " before " + y, order.indexOf(x) < order.indexOf(y));
+  }
+}
@@ -0,0 +1,211 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import static net.finkn.inputspec.tools.Helper.pb;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class MinimizerTest {
+  private final CodeMappingCfg mapping = CodeMappingCfg.builder()
+    .mapping(Helper.pointMapping)
+    .build();
+
+  @Test
+  public void irrelevantParametersShouldBeRemoved() {
+    DesignSpaceCfg space = Fuzzer.builder().seed(3).params(30).build()
+      .getConfig(0);
+    String id = ids(space).get(ids(space).size() / 2);
+    DesignSpaceCfg min = minimize(s -> ids(s).contains(id), space);
+    assertEquals(1, ids(min).size());
+    assertEquals(id, ids(min).get(0));
+  }
+
+  @Test
+  public void irrelevantLimitsShouldBeRemoved() {
+    ParamCfg param = pb().type("double[2][3]").fixed(3).inclMin("1,A + 2,3")
+      .exclMax("4,5,6").build();
+    DesignSpaceCfg min = minimize(s -> s.getParameters()
+        .anyMatch(p -> p.getRange().exclMax().isPresent()),
+        DesignSpaceCfg.getInstance(param, pb().id("A").build()));
+    assertEquals(pb().type("double").exclMax(6).build().xml(), xml(min));
+  }
+
+  @Test
+  public void expressionsShouldBeReplacedByValues() {
+    ParamCfg param = pb().inclMin("A + 2, A * 3").build();
+    DesignSpaceCfg min = minimize(s -> s.getParameters()
+        .anyMatch(p -> p.getRange().inclMin().orElse("").contains(",")),
+        DesignSpaceCfg.getInstance(param, pb().id("A").build()));
+    assertEquals(pb().inclMin("2,0").build().xml(), xml(min));
+  }
+
+  @Test
+  public void structuredParametersShouldBeUnnested() {
+    ParamCfg y = pb().id("Y").inclMin(1).build();
+    ParamCfg outer = pb().id("Outer").structured()
+      .add(pb().id("Inner").structured().add(Helper.pointParam, y).build())
+      .build();
+    DesignSpaceCfg min = minimize(s -> ImpactIndex.of(s).getIds().stream()
+        .anyMatch(id -> id.endsWith("Y")), DesignSpaceCfg.getInstance(outer));
+    assertEquals(pb().id("Y").build().xml(), xml(min));
+  }
+
+  @Test
+  public void nestedParametersShouldBeReduced() {
+    ParamCfg point = pb().id("Point").structured()
+      .add(pb().id("X").build(), pb().id("Y").build(), pb().id("Z").build())
+      .build();
+    DesignSpaceCfg min = minimize(s -> ImpactIndex.of(s).getIds()
+        .contains("Point.Y"), DesignSpaceCfg.getInstance(point));
+    ParamCfg expected = pb().id("Point").structured().add(pb().id("Y").build())
+      .build();
+    assertEquals(expected.xml(), xml(min));
+  }
+
+  @Test
+  public void mappingShouldBePreserved() {
+    DesignSpaceCfg space = DesignSpaceCfg.builder().id("Space")
+      .mapping(mapping).param(Helper.pointParam, pb().build()).build();
+    DesignSpaceCfg min = minimize(s -> s.getParameters().count() > 0, space);
+    assertSame(mapping, min.getMapping().get());
+  }
+
+  @Test
+  public void resultShouldGetFreshId() {
+    DesignSpaceCfg space = DesignSpaceCfg.builder().id("Space")
+      .param(Helper.pointParam, pb().build()).build();
+    Minimizer minimizer = Minimizer.of(s -> s.getParameters().count() > 0);
+    String a = minimizer.minimize(space).getId().get();
+    String b = minimizer.minimize(space).getId().get();
+    assertTrue(a, a.startsWith("Space_min"));
+    assertTrue(!a.equals(b));
+  }
+
+  @Test
+  public void candidatesShouldHaveUniqueIds() {
+    List<String> seen = new java.util.concurrent.CopyOnWriteArrayList<>();
+    DesignSpaceCfg space = DesignSpaceCfg.builder().id("Space")
+      .param(pb().id("A").build(), pb().id("B").build()).build();
+    Minimizer.of(s -> {
+      seen.add(s.getId().get());
+      return ids(s).contains("B");
+    }).minimize(space);
+    assertEquals(seen.size(), seen.stream().distinct().count());
+  }
+
+  @Test
+  public void resultShouldBeTestedCandidate() {
+    List<String> seen = new java.util.concurrent.CopyOnWriteArrayList<>();
+    DesignSpaceCfg space = Fuzzer.builder().seed(3).params(10).build()
+      .getConfig(0);
+    String id = ids(space).get(0);
+    DesignSpaceCfg min = Minimizer.of(s -> {
+      seen.add(s.getId().get());
+      return ids(s).contains(id);
+    }).threads(2).minimize(space);
+    assertTrue(seen.contains(min.getId().get()));
+  }
+
+  @Test
+  public void inputShouldBeReleasedBetweenSteps() {
+    Set<String> live = ConcurrentHashMap.newKeySet();
+    AtomicInteger calls = new AtomicInteger();
+    AtomicInteger max = new AtomicInteger();
+    AtomicInteger releases = new AtomicInteger();
+    DesignSpaceCfg space = Fuzzer.builder().seed(3).params(30).build()
+      .getConfig(0);
+    String id = ids(space).get(ids(space).size() / 2);
+    Minimizer.of(s -> {
+      calls.incrementAndGet();
+      live.add(s.getId().get());
+      max.accumulateAndGet(live.size(), Math::max);
+      return ids(s).contains(id);
+    }, () -> {
+      releases.incrementAndGet();
+      live.clear();
+    }).threads(2).minimize(space);
+    assertTrue(releases.get() > 1);
+    assertTrue(max.get() < calls.get());
+  }
+
+  @Test
+  public void oracleFailuresShouldBeMinimized() {
+    Fuzzer fuzzer = Fuzzer.builder().params(8).build();
+    Predicate<DesignSpaceCfg> fails = s -> s.getParameters().anyMatch(p -> {
+      try {
+        Oracle.of(p).next(new Random(0));
+        return false;
+      } catch (IllegalStateException e) {
+        return true;
+      }
+    });
+    DesignSpaceCfg space = java.util.stream.IntStream.range(0, 1000)
+      .mapToObj(fuzzer::getConfig)
+      .filter(fails)
+      .findFirst().get();
+    DesignSpaceCfg min = minimize(fails, space);
+    assertEquals(1, ids(min).size());
+    assertTrue(fails.test(min));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void configurationThatDoesNotFailShouldBeIllegal() {
+    Minimizer.of(s -> false).minimize(DesignSpaceCfg.getInstance());
+  }
+
+  @Test
+  public void throwingPredicateShouldCountAsNotFailing() {
+    DesignSpaceCfg space = DesignSpaceCfg.getInstance(pb().id("A").build(),
+        pb().id("B").build());
+    DesignSpaceCfg min = minimize(s -> {
+      if (!ids(s).contains("A")) {
+        throw new IllegalStateException();
+      }
+      return true;
+    }, space);
+    assertEquals(1, ids(min).size());
+  }
+
+  private static DesignSpaceCfg minimize(Predicate<DesignSpaceCfg> fails,
+      DesignSpaceCfg space) {
+    return Minimizer.of(fails).threads(2).minimize(space);
+  }
+
+  private static List<String> ids(DesignSpaceCfg space) {
+    return space.getParameters().map(ParamCfg::getId)
+      .collect(Collectors.toList());
+  }
+
+  private static String xml(DesignSpaceCfg space) {
+    assertEquals(1, space.getParameters().count());
+    return space.getParameters().findFirst().get().xml();
+  }
+}
@@ -0,0 +1,228 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import static net.finkn.inputspec.tools.Helper.pb;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class OracleTest {
+  private final Random random = new Random(1);
+
+  @Test
+  public void integerLimitsShouldBeTruncatedForSetValue() {
+    Oracle oracle = Oracle.of(pb().exclMin(1.5).inclMax(3.5).build());
+    accepts(oracle, 2, 3);
+    rejects(oracle, 1, 4, 2.5);
+  }
+
+  @Test
+  public void exclusiveLimitsShouldBeAcceptedForDoubles() {
+    Oracle oracle = Oracle.of(pb().type("double").exclMin(1).exclMax(2)
+        .build());
+    accepts(oracle, 1.0, 1.5, 2.0);
+    rejects(oracle, 0.9, 2.1);
+  }
+
+  @Test
+  public void integerWithoutLimitsShouldAcceptWholeIntRange() {
+    Oracle oracle = Oracle.of(pb().build());
+    accepts(oracle, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    rejects(oracle, (long) Integer.MAX_VALUE + 1, "1", true);
+  }
+
+  @Test
+  public void inclusiveMultiRangeShouldAcceptIntersection() {
+    Oracle oracle = Oracle.of(pb().inclMin("1,3").inclMax("4,6").build());
+    accepts(oracle, 3, 4);
+    rejects(oracle, 1, 2, 5, 6);
+  }
+
+  @Test
+  public void exclusiveMultiRangeShouldOnlyUseFirstRange() {
+    Oracle oracle = Oracle.of(pb().exclMin("0,10").exclMax("3,20").build());
+    accepts(oracle, 1, 2);
+    rejects(oracle, 11, 15);
+  }
+
+  @Test
+  public void fixedValueShouldBeOnlyLegalValueIfInRange() {
+    accepts(Oracle.of(pb().fixed(3).build()), 3);
+    rejects(Oracle.of(pb().fixed(3).build()), 2, 4);
+    rejects(Oracle.of(pb().inclMin(1).inclMax(2).fixed(3).build()), 3);
+  }
+
+  @Test
+  public void referencesShouldUseCurrentValuesForSetValue() {
+    Oracle oracle = Oracle.of(pb().inclMin("A + 1").inclMax("A + 3").build());
+    assertTrue(oracle.accepts(3, id -> 2));
+    assertFalse(oracle.accepts(3, id -> 5));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void referencesShouldRequireEnvironment() {
+    Oracle.of(pb().inclMin("A + 1").build()).accepts(1);
+  }
+
+  @Test
+  public void nextShouldExcludeMaxInteger() {
+    gen(pb().inclMin(1).inclMax(3).build()).expected(1, 2).none(3).run();
+  }
+
+  @Test
+  public void nextShouldAdjustExclusiveIntegerLimits() {
+    gen(pb().exclMin(0).exclMax(4).build()).expected(1, 2).none(0, 3, 4)
+      .run();
+  }
+
+  @Test
+  public void nextShouldGenerateOnlyValueOfSingletonRange() {
+    gen(pb().inclMin(5).inclMax(5).build()).expected(5).run();
+  }
+
+  @Test
+  public void nextShouldResolveReferencesToZeroAndSwapEmptyRanges() {
+    // [A+5,A+1] becomes [1,5], minus the max limit 1.
+    gen(pb().inclMin("A + 5").inclMax("A + 1").build())
+      .expected(2, 3, 4, 5).run();
+    // ]A+5,A+1[ becomes [2,4] extended to [0,6], minus the max limit 0.
+    gen(pb().exclMin("A + 5").exclMax("A + 1").build())
+      .expected(1, 2, 3, 4, 5, 6).run();
+  }
+
+  @Test
+  public void nextShouldRollOverIntegerLimits() {
+    long big = (long) Integer.MAX_VALUE + 2;
+    gen(pb().inclMin(big).inclMax(big).build())
+      .expected(Integer.MIN_VALUE + 1).run();
+  }
+
+  @Test
+  public void nextShouldUseUnionOfInclusiveMultiRange() {
+    gen(pb().inclMin("1,10").inclMax("3,12").build())
+      .expected(1, 2, 10, 11).none(3, 12).run();
+  }
+
+  @Test
+  public void nextShouldUseFirstRangeOfExclusiveMultiRange() {
+    gen(pb().exclMin("10,20").exclMax("14,24").build())
+      .expected(11, 12).none(13, 21, 22).run();
+  }
+
+  @Test
+  public void nextShouldUseLastRangeOfMultiRangeExpressions() {
+    gen(pb().inclMin("A + 1, A + 10").inclMax("A + 3, A + 12").build())
+      .expected(10, 11).run();
+  }
+
+  @Test
+  public void nextShouldFailForMixedMultiRange() {
+    Oracle oracle = Oracle.of(pb().inclMin("1,10").exclMax("3,20").build());
+    assertFails(() -> oracle.next(random));
+  }
+
+  @Test
+  public void nextShouldFailForRangeWithoutMax() {
+    Oracle oracle = Oracle.of(pb().inclMin("1,10").inclMax("3").build());
+    Unit.assertSomeMatch(Generator.fromSupplier(() -> {
+      try {
+        oracle.next(random);
+        return false;
+      } catch (IllegalStateException e) {
+        return true;
+      }
+    }), x -> x);
+  }
+
+  @Test
+  public void nextShouldIgnoreExclusiveLimitsForFloats() {
+    gen(pb().type("float").exclMin(1).exclMax(1).build()).expected(1f).run();
+  }
+
+  @Test
+  public void nextShouldKeepDoublesInRange() {
+    Oracle oracle = Oracle.of(pb().type("double").exclMin(0).exclMax(1)
+        .build());
+    Unit.assertAllMatch(oracle.generator(random), x -> {
+      double d = (Double) x;
+      return d > 0 && d < 1;
+    });
+  }
+
+  @Test
+  public void nextShouldTruncateFixedIntegers() {
+    gen(pb().inclMin(1).inclMax(2).fixed(3.9).build()).expected(3).run();
+  }
+
+  @Test
+  public void nextShouldGenerateBothBooleans() {
+    gen(pb().type("boolean").build()).expected(true, false).run();
+  }
+
+  @Test
+  public void generatedValuesShouldBeAcceptedWithinSingleRange() {
+    Oracle oracle = Oracle.of(pb().inclMin(-5).exclMax(5).build());
+    Unit.assertAllMatch(oracle.generator(random), oracle::accepts);
+  }
+
+  @Test
+  public void unsupportedConfigurationsShouldBeIllegal() {
+    assertIllegal(pb().inclMin(1).exclMin(2));
+    assertIllegal(pb().inclMin("1,2").inclMax("3,4,5"));
+    assertIllegal(pb().inclMin("A"));
+    assertIllegal(pb().inclMin("1 + 2"));
+    assertIllegal(pb().type("String"));
+    assertIllegal(pb().structured());
+  }
+
+  private GenTestCase gen(ParamCfg param) {
+    return GenTestCase.getInstance()
+      .gen(Oracle.of(param).generator(random));
+  }
+
+  private static void accepts(Oracle oracle, Object ... values) {
+    for (Object value : values) {
+      assertTrue("Rejected " + value, oracle.accepts(value));
+    }
+  }
+
+  private static void rejects(Oracle oracle, Object ... values) {
+    for (Object value : values) {
+      assertFalse("Accepted " + value, oracle.accepts(value));
+    }
+  }
+
+  private static void assertIllegal(ParamCfg.Builder builder) {
+    assertFails(() -> Oracle.of(builder.build()));
+  }
+
+  private static void assertFails(Runnable runnable) {
+    try {
+      runnable.run();
+    } catch (RuntimeException e) {
+      return;
+    }
+    fail("Expected an exception.");
+  }
+}
@@ -272,4 +272,31 @@ public class ParamCfgTest {
     String xml = param.xml();
     assertThat(xml, containsString(X.SCHOICE));
   }
+
+  @Test
+  public void builderShouldHandleManyNestedParameters() {
+    int n = 100000;
+    ParamCfg.Builder builder = ParamCfg.builder().structured().id("S");
+    ParamCfg x = ParamCfg.builder().build();
+    for (int i = 0; i < n; i++) {
+      builder.add(x);
+    }
+    ParamCfg param = builder.build();
+    assertEquals(n, param.getNested().count());
+    assertEquals(n + 1, builder.add(x).build().getNested().count());
+    assertEquals(n, param.getNested().count());
+  }
+
+  @Test
+  public void replacedNestedParameterShouldOnlyAffectCopy() {
+    ParamCfg x = ParamCfg.builder().id("X").build();
+    ParamCfg y = ParamCfg.builder().id("Y").build();
+    ParamCfg param = ParamCfg.builder().structured().id("S").add(x, x).build();
+    ParamCfg variant = param.withNested(1, y);
+    assertSame(x, param.getNested(1));
+    assertSame(y, variant.getNested(1));
+    assertSame(x, variant.getNested(0));
+    assertEquals(ParamCfg.builder().structured().id("S").add(x, y).build()
+        .xml(), variant.xml());
+  }
 }
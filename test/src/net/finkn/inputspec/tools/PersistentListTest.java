@@ -0,0 +1,86 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class PersistentListTest {
+
+  @Test
+  public void appendedElementsShouldBeKeptInOrder() {
+    // Enough elements for a trie of three levels.
+    int n = 40000;
+    PersistentList<Integer> list = PersistentList.empty();
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      list = list.plus(i);
+      expected.add(i);
+    }
+    assertEquals(n, list.size());
+    assertEquals(expected, list);
+    for (int i = 0; i < n; i += 97) {
+      assertEquals(i, (int) list.get(i));
+    }
+  }
+
+  @Test
+  public void appendingShouldNotChangeOriginal() {
+    PersistentList<String> a = PersistentList.of(Arrays.asList("A", "B"));
+    PersistentList<String> b = a.plus("C");
+    PersistentList<String> c = a.plus("D");
+    assertEquals(Arrays.asList("A", "B"), a);
+    assertEquals(Arrays.asList("A", "B", "C"), b);
+    assertEquals(Arrays.asList("A", "B", "D"), c);
+  }
+
+  @Test
+  public void replacingShouldNotChangeOriginal() {
+    List<Integer> values = IntStream.range(0, 5000).boxed()
+      .collect(Collectors.toList());
+    PersistentList<Integer> original = PersistentList.of(values);
+    PersistentList<Integer> changed = original;
+    for (int i = 0; i < values.size(); i += 7) {
+      changed = changed.with(i, -i);
+    }
+    assertEquals(values, original);
+    for (int i = 0; i < values.size(); i++) {
+      assertEquals(i % 7 == 0 ? -i : i, (int) changed.get(i));
+    }
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void indexOutOfRangeShouldBeIllegal() {
+    PersistentList.of(Arrays.asList(1, 2, 3)).get(3);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void listShouldBeUnmodifiable() {
+    PersistentList.of(Arrays.asList(1, 2, 3)).add(4);
+  }
+}
@@ -88,4 +88,15 @@ public class RangeTest {
     Range modified = range.withInterval("[1,2]");
     assertNotSame(modified, range);
   }
+
+  @Test
+  public void rangesWithSameLimitsShouldBeEqual() {
+    Range b = range.withInterval("[1,2[");
+    Range a = range.withInclMin(b.inclMin().get())
+      .withExclMax(b.exclMax().get());
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+    assertNotEquals(a, range.withInclMin(b.inclMin().get())
+        .withInclMax(b.exclMax().get()));
+  }
 }
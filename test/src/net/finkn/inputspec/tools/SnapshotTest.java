@@ -0,0 +1,132 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import static net.finkn.inputspec.tools.Helper.pb;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SnapshotTest {
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+  @Test
+  public void designSpacesShouldRoundTrip() {
+    List<DesignSpaceCfg> spaces = Arrays.asList(
+        space(),
+        DesignSpaceCfg.builder().id(null).build(),
+        DesignSpaceCfg.builder().id("M").mapping(mapping()).build());
+    Snapshot.write(out, spaces);
+    List<DesignSpaceCfg> read = Snapshot.read(input());
+    assertEquals(spaces.size(), read.size());
+    for (int i = 0; i < spaces.size(); i++) {
+      assertEquals(spaces.get(i).xml(), read.get(i).xml());
+      assertEquals(spaces.get(i).fingerprint(), read.get(i).fingerprint());
+    }
+  }
+
+  @Test
+  public void mixedRecordsShouldBeReadInOrder() {
+    CodeMappingCfg mapping = mapping();
+    DesignSpaceCfg space = space();
+    Snapshot.output(out).write(mapping).write(space).finish();
+    Snapshot.Input in = Snapshot.input(input());
+    assertTrue(in.isCodeMapping());
+    assertEquals(mapping.fingerprint(), in.codeMapping().fingerprint());
+    assertTrue(in.isDesignSpace());
+    assertEquals(space.fingerprint(), in.designSpace().fingerprint());
+    assertFalse(in.hasNext());
+  }
+
+  @Test
+  public void repeatedStringsShouldBeShared() {
+    List<DesignSpaceCfg> spaces = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      spaces.add(space());
+    }
+    Snapshot.write(out, spaces);
+    int xml = spaces.get(0).xml().length() * spaces.size();
+    assertTrue(out.size() * 10 < xml);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void readingWrongRecordTypeShouldBeIllegal() {
+    Snapshot.output(out).write(mapping()).finish();
+    Snapshot.input(input()).designSpace();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void readingPastEndShouldBeIllegal() {
+    Snapshot.output(out).finish();
+    Snapshot.input(input()).designSpace();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nonSnapshotShouldBeRejected() {
+    Snapshot.input(new ByteArrayInputStream("<xml />".getBytes()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void truncatedSnapshotShouldBeRejected() {
+    Snapshot.write(out, Arrays.asList(space()));
+    byte[] bytes = out.toByteArray();
+    Snapshot.read(new ByteArrayInputStream(bytes, 0, bytes.length - 5));
+  }
+
+  private ByteArrayInputStream input() {
+    return new ByteArrayInputStream(out.toByteArray());
+  }
+
+  private static DesignSpaceCfg space() {
+    ParamCfg nested = pb().id("S")
+      .structured()
+      .type("Point")
+      .add(Helper.pointParam, pb().id("A").type("decimal[2]").build())
+      .build();
+    return DesignSpaceCfg.builder()
+      .id("Space")
+      .ref("Mapping")
+      .param(pb().id("X").inclMin("1, 5").exclMax("3, X + 2").build())
+      .param(pb().id("Y").type("boolean").fixed("true").build())
+      .param(pb().id("Z").exclMin("-1").inclMax("1").type("double").build())
+      .param(nested)
+      .param(pb().id("C").choice().type("java.lang.String").build())
+      .build();
+  }
+
+  private static CodeMappingCfg mapping() {
+    return CodeMappingCfg.builder()
+      .id("Mapping")
+      .mapping(Helper.pointMapping)
+      .mapping(MappingCfg.builder().mappingType().id("T").type("T").build())
+      .mapping(MappingCfg.builder().id("W").wrapper().type("W")
+          .constructor("A B").get("getW").set("setW").build())
+      .mapping(MappingCfg.builder().id("C").complex().type("java.util.List")
+          .add("add").build())
+      .build();
+  }
+}
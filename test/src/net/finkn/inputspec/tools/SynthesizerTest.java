@@ -0,0 +1,122 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SynthesizerTest {
+
+  @Test
+  public void sameSeedShouldGiveSameDesignSpace() {
+    Synthesizer.Builder builder = Synthesizer.builder().params(500).seed(7);
+    DesignSpaceCfg a = builder.build().generate();
+    DesignSpaceCfg b = builder.build().generate();
+    assertEquals(a, b);
+    assertNotEquals(a, builder.seed(8).build().generate());
+  }
+
+  @Test
+  public void topLevelParameterCountShouldMatch() {
+    DesignSpaceCfg space = Synthesizer.builder().params(1234).build()
+      .generate();
+    assertEquals(1234, space.getParameters().count());
+  }
+
+  @Test
+  public void generatedSpaceShouldBeWellFormed() {
+    DesignSpaceCfg space = Synthesizer.builder()
+      .params(2000)
+      .dependencies(0.5)
+      .build()
+      .generate();
+    ImpactIndex index = ImpactIndex.of(space);
+    assertTrue(index.getCircular().isEmpty());
+    assertTrue(Bounds.of(space).getEmpty().isEmpty());
+    assertTrue(space.getParameters()
+        .anyMatch(p -> !index.getDependencies(p.getId()).isEmpty()));
+  }
+
+  @Test
+  public void nestingShouldBeLimitedByDepth() {
+    DesignSpaceCfg space = Synthesizer.builder()
+      .params(200)
+      .structured(1)
+      .depth(3)
+      .width(2)
+      .build()
+      .generate();
+    int max = Traversal.of(space).preOrder()
+      .mapToInt(Traversal.Node::getDepth).max().getAsInt();
+    assertEquals(3, max);
+    // Every parameter is structured down to the last level.
+    assertEquals(200 * (1 + 2 + 4 + 8), Traversal.of(space).preOrder().count());
+  }
+
+  @Test
+  public void structuredParametersShouldBeMapped() {
+    DesignSpaceCfg space = Synthesizer.builder()
+      .params(100)
+      .structured(0.5)
+      .mapping("java.lang.Object")
+      .build()
+      .generate();
+    long structured = Traversal.of(space).preOrder()
+      .filter(n -> n.getParam().getParamType()
+          == ParamCfg.ParamType.STRUCTURED)
+      .count();
+    assertTrue(structured > 0);
+    assertEquals(structured, space.getMapping().get().getMappings().count());
+  }
+
+  @Test
+  public void typeMixShouldBeRespected() {
+    DesignSpaceCfg space = Synthesizer.builder()
+      .params(100)
+      .structured(0)
+      .arrays(0)
+      .types("short")
+      .build()
+      .generate();
+    assertTrue(space.getParameters()
+        .allMatch(p -> p.getType().equals("short")));
+  }
+
+  @Test
+  public void largeDesignSpaceShouldBeGeneratedQuickly() {
+    long start = System.nanoTime();
+    DesignSpaceCfg space = Synthesizer.builder().params(100000).build()
+      .generate();
+    assertEquals(100000, space.getParameters().count());
+    assertTrue(System.nanoTime() - start < 10_000_000_000L);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unsupportedTypeShouldBeRejected() {
+    Synthesizer.builder().types("string");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidProbabilityShouldBeRejected() {
+    Synthesizer.builder().arrays(1.5);
+  }
+}
@@ -0,0 +1,196 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import static net.finkn.inputspec.tools.Helper.pb;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class TemplateTest {
+  private final ParamCfg fixedParam = pb().id("F").inclMin(0).inclMax(9)
+    .build();
+  private final ParamCfg point = pb().id("P").structured()
+    .add(pb().id("X").inclMin(0).inclMax("${max}").build(), fixedParam)
+    .build();
+  private final DesignSpaceCfg space = DesignSpaceCfg.builder()
+    .id("T")
+    .param(fixedParam)
+    .param(pb().id("Y").type("${type}").fixed("${fixed}").build())
+    .param(point)
+    .build();
+  private final Template template = Template.of(space);
+
+  @Test
+  public void placeholdersShouldBeFound() {
+    assertEquals(Arrays.asList("type", "fixed", "max"),
+        template.getPlaceholders().stream().collect(Collectors.toList()));
+  }
+
+  @Test
+  public void expandedVariantShouldMatchDirectConstruction() {
+    Map<String, Object> bindings = new HashMap<>();
+    bindings.put("type", "long");
+    bindings.put("fixed", 3);
+    bindings.put("max", "F + 1");
+    DesignSpaceCfg expected = DesignSpaceCfg.builder()
+      .id("T")
+      .param(fixedParam)
+      .param(pb().id("Y").type("long").fixed("3").build())
+      .param(pb().id("P").structured()
+          .add(pb().id("X").inclMin(0).inclMax("F + 1").build(), fixedParam)
+          .build())
+      .build();
+    DesignSpaceCfg variant = template.expand(bindings);
+    assertEquals(expected.contentFingerprint(), variant.contentFingerprint());
+    expected = expected.withId(variant.getId().get());
+    assertEquals(expected, variant);
+    assertEquals(expected.xml(), variant.xml());
+  }
+
+  @Test
+  public void unchangedParametersShouldBeShared() {
+    DesignSpaceCfg variant = template.expand(bindings("integer", 1, 5));
+    assertSame(space.getParameter(0), variant.getParameter(0));
+    assertSame(point.getNested(1), variant.getParameter(2).getNested(1));
+    assertNotSame(point, variant.getParameter(2));
+  }
+
+  @Test
+  public void cartesianProductShouldCoverAllCombinations() {
+    Map<String, List<?>> values = new LinkedHashMap<>();
+    values.put("type", Arrays.asList("integer", "long"));
+    values.put("fixed", Arrays.asList(1, 2, 3));
+    values.put("max", Arrays.asList(10, 20));
+    List<DesignSpaceCfg> variants = template.cartesian(values)
+      .collect(Collectors.toList());
+    assertEquals(12, variants.size());
+    assertEquals(12, new HashSet<>(variants).size());
+    Set<String> ids = variants.stream().map(s -> s.getId().get())
+      .collect(Collectors.toSet());
+    assertEquals(12, ids.size());
+    assertTrue(ids.stream().allMatch(id -> id.startsWith("T_")));
+    assertEquals("20", variants.get(1).getParameter(2).getNested(0)
+        .getRange().inclMax().get());
+  }
+
+  @Test
+  public void samplingShouldBeDeterministic() {
+    Map<String, List<?>> values = new LinkedHashMap<>();
+    values.put("type", Arrays.asList("integer", "long", "short"));
+    values.put("fixed", Arrays.asList(1, 2, 3));
+    values.put("max", Arrays.asList(10, 20, 30));
+    List<DesignSpaceCfg> a = template.sample(values, 100, 42)
+      .collect(Collectors.toList());
+    List<DesignSpaceCfg> b = template.sample(values, 100, 42).parallel()
+      .collect(Collectors.toList());
+    assertEquals(contents(a), contents(b));
+  }
+
+  @Test
+  public void expansionsShouldHaveUniqueIds() {
+    Map<String, List<?>> values = new LinkedHashMap<>();
+    values.put("type", Arrays.asList("integer"));
+    values.put("fixed", Arrays.asList(1));
+    values.put("max", Arrays.asList(10));
+    Map<String, Object> bindings = bindings("integer", 1, 10);
+    Set<String> ids = new HashSet<>();
+    ids.add(template.expand(bindings).getId().get());
+    ids.add(template.expand(bindings).getId().get());
+    ids.add(template.cartesian(values).findFirst().get().getId().get());
+    ids.add(template.cartesian(values).findFirst().get().getId().get());
+    ids.add(template.sample(values, 1, 0).findFirst().get().getId().get());
+    ids.add(template.sample(values, 1, 0).findFirst().get().getId().get());
+    assertEquals(6, ids.size());
+    assertTrue(!ids.contains("T"));
+  }
+
+  @Test
+  public void inputShouldBeReleasedBetweenChunks() {
+    Map<String, List<?>> values = new LinkedHashMap<>();
+    values.put("type", Arrays.asList("integer", "long"));
+    values.put("fixed", Arrays.asList(1, 2, 3));
+    values.put("max", Arrays.asList(4, 5));
+    Set<String> live = ConcurrentHashMap.newKeySet();
+    AtomicInteger variants = new AtomicInteger();
+    AtomicInteger max = new AtomicInteger();
+    AtomicInteger releases = new AtomicInteger();
+    Template.forEach(template.cartesian(values).parallel(), variant -> {
+      variants.incrementAndGet();
+      live.add(variant.getId().get());
+      max.accumulateAndGet(live.size(), Math::max);
+    }, 5, () -> {
+      releases.incrementAndGet();
+      live.clear();
+    });
+    assertEquals(12, variants.get());
+    assertEquals(3, releases.get());
+    assertTrue(max.get() <= 5);
+  }
+
+  @Test
+  public void manyVariantsShouldBeExpandedQuickly() {
+    DesignSpaceCfg large = Synthesizer.builder().params(10000).build()
+      .generate().withParameter(5000, pb().id("P5000").inclMax("${max}")
+          .build());
+    Template t = Template.of(large);
+    long count = t.sample(Collections.singletonMap("max", Arrays.asList(1, 2)),
+        100000, 0).count();
+    assertEquals(100000, count);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unboundPlaceholderShouldBeRejected() {
+    template.expand(Collections.singletonMap("type", "integer"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void missingCandidatesShouldBeRejected() {
+    template.cartesian(Collections.singletonMap("type",
+          Arrays.asList("integer")));
+  }
+
+  private static List<Fingerprint> contents(List<DesignSpaceCfg> spaces) {
+    return spaces.stream().map(DesignSpaceCfg::contentFingerprint)
+      .collect(Collectors.toList());
+  }
+
+  private static Map<String, Object> bindings(String type, Object fixed,
+      Object max) {
+    Map<String, Object> result = new HashMap<>();
+    result.put("type", type);
+    result.put("fixed", fixed);
+    result.put("max", max);
+    return result;
+  }
+}
@@ -32,25 +32,44 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 @SuiteClasses({
     AccessorTesterTest.class,
+    BoundsTest.class,
     CodeMappingCfgTest.class,
     ConfigValidatorTest.class,
     InitTesterTest.class,
+    DesignSpaceCacheTest.class,
     DesignSpaceCfgTest.class,
+    DifferenceTest.class,
+    ExpressionTest.class,
+    FingerprintTest.class,
+    FlakinessTest.class,
+    FuzzerTest.class,
     GeneratorExceptionMessageTest.class,
     GeneratorTest.class,
     GenTestCaseTest.class,
+    IdIndexTest.class,
+    ImpactIndexTest.class,
     IntervalContainmentTest.class,
     IntervalParsingTest.class,
     MappingCfgTest.class,
+    MinimizerTest.class,
+    OracleTest.class,
     ParamCfgTest.class,
+    PersistentListTest.class,
     RangeTest.class,
     RangeTestCaseTest.class,
     SinkTest.class,
     SinkTestCaseTest.class,
+    SnapshotTest.class,
+    SynthesizerTest.class,
+    TemplateTest.class,
+    TraversalTest.class,
     UnitExceptionTest.class,
     UnitIterationsTest.class,
     UnitTest.class,
+    XmlBufferTest.class,
+    XmlReaderTest.class,
     XmlTest.class,
+    XmlWriterTest.class,
 })
 public class Tests {
 }
@@ -0,0 +1,152 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import static net.finkn.inputspec.tools.Helper.pb;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class TraversalTest {
+  private final ParamCfg x = pb().id("X").build();
+  private final ParamCfg y = pb().id("Y").build();
+  private final ParamCfg inner = pb().id("I").structured().add(x, y).build();
+  private final ParamCfg outer = pb().id("O").structured().add(inner, x)
+    .build();
+  private final ParamCfg z = pb().id("Z").build();
+
+  @Test
+  public void preOrderShouldVisitParentsFirst() {
+    assertEquals(Arrays.asList("O", "O.I", "O.I.X", "O.I.Y", "O.X", "Z"),
+        ids(Traversal.of(outer, z).preOrder()
+          .collect(Collectors.toList())));
+  }
+
+  @Test
+  public void postOrderShouldVisitNestedFirst() {
+    assertEquals(Arrays.asList("O.I.X", "O.I.Y", "O.I", "O.X", "O", "Z"),
+        ids(Traversal.of(outer, z).postOrder()
+          .collect(Collectors.toList())));
+  }
+
+  @Test
+  public void walkShouldEnterAndLeave() {
+    List<String> events = new ArrayList<>();
+    boolean completed = Traversal.of(inner).walk(new Traversal.Visitor() {
+      @Override
+      public Traversal.Action enter(Traversal.Node node) {
+        events.add("+" + node.getId() + node.getDepth());
+        return Traversal.Action.CONTINUE;
+      }
+      @Override
+      public Traversal.Action leave(Traversal.Node node) {
+        events.add("-" + node.getId());
+        return Traversal.Action.CONTINUE;
+      }
+    });
+    assertTrue(completed);
+    assertEquals(Arrays.asList("+I0", "+I.X1", "-I.X", "+I.Y1", "-I.Y", "-I"),
+        events);
+  }
+
+  @Test
+  public void skippedParameterShouldStillBeLeft() {
+    List<String> events = new ArrayList<>();
+    Traversal.of(outer, z).walk(new Traversal.Visitor() {
+      @Override
+      public Traversal.Action enter(Traversal.Node node) {
+        events.add("+" + node.getId());
+        return node.getParam() == inner
+          ? Traversal.Action.SKIP : Traversal.Action.CONTINUE;
+      }
+      @Override
+      public Traversal.Action leave(Traversal.Node node) {
+        events.add("-" + node.getId());
+        return Traversal.Action.CONTINUE;
+      }
+    });
+    assertEquals(Arrays.asList("+O", "+O.I", "-O.I", "+O.X", "-O.X", "-O",
+          "+Z", "-Z"), events);
+  }
+
+  @Test
+  public void walkShouldStopEarly() {
+    List<String> visited = new ArrayList<>();
+    boolean completed = Traversal.of(outer, z).walk(node -> {
+      visited.add(node.getId());
+      return node.getId().equals("O.I.X")
+        ? Traversal.Action.STOP : Traversal.Action.CONTINUE;
+    });
+    assertFalse(completed);
+    assertEquals(Arrays.asList("O", "O.I", "O.I.X"), visited);
+  }
+
+  @Test
+  public void designSpaceShouldBeTraversed() {
+    DesignSpaceCfg space = DesignSpaceCfg.getInstance(Helper.pointParam);
+    assertEquals(Arrays.asList("Point", "Point.X", "Point.Y"),
+        ids(Traversal.of(space).preOrder().collect(Collectors.toList())));
+  }
+
+  @Test
+  public void deepParameterShouldNotOverflowStack() {
+    int depth = 100000;
+    ParamCfg deep = deep(depth);
+    assertEquals(depth + 1, Traversal.of(deep).postOrder().count());
+    assertEquals(depth, Traversal.of(deep).preOrder()
+        .mapToInt(Traversal.Node::getDepth).max().getAsInt());
+    assertNotNull(deep.fingerprint());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Snapshot.write(out, Arrays.asList(DesignSpaceCfg.getInstance(deep)));
+    DesignSpaceCfg read = Snapshot.read(
+        new ByteArrayInputStream(out.toByteArray())).get(0);
+    assertEquals(deep.fingerprint(),
+        read.getParameters().findFirst().get().fingerprint());
+  }
+
+  @Test
+  public void deepParameterShouldBeSerialized() {
+    ParamCfg deep = deep(2000);
+    String xml = deep.xml();
+    assertTrue(xml.contains("<" + X.PREFIX + ":" + X.NPARAM));
+    assertEquals(2001, ImpactIndex.of(deep).getIds().size());
+  }
+
+  private static ParamCfg deep(int depth) {
+    ParamCfg.Builder builder = pb().id("N").add(pb().build());
+    for (int i = 0; i < depth; i++) {
+      builder = builder.structured().nest();
+    }
+    return builder.build().getNested().findFirst().get();
+  }
+
+  private static List<String> ids(List<Traversal.Node> nodes) {
+    return nodes.stream().map(Traversal.Node::getId)
+      .collect(Collectors.toList());
+  }
+}
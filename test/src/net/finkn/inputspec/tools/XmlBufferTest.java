@@ -0,0 +1,79 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class XmlBufferTest {
+
+  @Test
+  public void streamShouldContainWrittenBytes() throws IOException {
+    XmlBuffer buffer = XmlBuffer.get(XmlBuffer.SPACE);
+    buffer.write(new byte[] {1, 2, 3});
+    assertArrayEquals(new byte[] {1, 2, 3}, read(buffer.getInputStream()));
+  }
+
+  @Test
+  public void buffersShouldBeReusedAndReset() throws IOException {
+    XmlBuffer buffer = XmlBuffer.get(XmlBuffer.SPACE);
+    buffer.write(new byte[] {1, 2, 3});
+    XmlBuffer again = XmlBuffer.get(XmlBuffer.SPACE);
+    assertSame(buffer, again);
+    assertEquals(0, again.size());
+  }
+
+  @Test
+  public void slotsShouldHaveSeparateBuffers() {
+    assertNotSame(XmlBuffer.get(XmlBuffer.SPACE),
+        XmlBuffer.get(XmlBuffer.MAPPING));
+  }
+
+  @Test
+  public void largeBuffersShouldNotBeRetained() throws IOException {
+    XmlBuffer buffer = XmlBuffer.get(XmlBuffer.MAPPING);
+    buffer.write(new byte[4 * 1024 * 1024]);
+    assertNotSame(buffer, XmlBuffer.get(XmlBuffer.MAPPING));
+  }
+
+  @Test
+  public void designSpaceStreamShouldContainUtf8Xml() throws IOException {
+    DesignSpaceCfg space = DesignSpaceCfg.getInstance(Helper.pointParam,
+        ParamCfg.builder().id("Å").build());
+    byte[] expected = space.xml().getBytes(StandardCharsets.UTF_8);
+    assertArrayEquals(expected, read(space.getDesignSpaceStream()));
+  }
+
+  private static byte[] read(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) != -1) {
+      out.write(b);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,184 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import static net.finkn.inputspec.tools.Helper.pb;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class XmlReaderTest {
+
+  @Test
+  public void designSpaceShouldRoundTrip() {
+    ParamCfg nested = pb().id("S")
+      .structured()
+      .add(Helper.pointParam, pb().id("A").type("decimal[2]").build())
+      .build();
+    DesignSpaceCfg space = DesignSpaceCfg.builder()
+      .id("Space")
+      .ref("Mapping")
+      .param(pb().id("X").inclMin("1, 5").exclMax("3, X + 2").build())
+      .param(pb().id("Y").type("boolean").fixed("true").build())
+      .param(nested)
+      .param(pb().id("C").choice().type("java.lang.String").build())
+      .build();
+    DesignSpaceCfg read = XmlReader.designSpace(space.xml());
+    assertEquals(space.xml(), read.xml());
+    assertEquals(space.fingerprint(), read.fingerprint());
+  }
+
+  @Test
+  public void codeMappingShouldRoundTrip() {
+    MappingCfg type = MappingCfg.builder().mappingType().id("T")
+      .type("java.lang.Object").build();
+    CodeMappingCfg mapping = CodeMappingCfg.builder()
+      .id("Mapping")
+      .mapping(Helper.pointMapping, type)
+      .mapping(MappingCfg.builder().id("W").wrapper().type("W")
+          .constructor("A B").get("getW").set("setW").build())
+      .mapping(MappingCfg.builder().id("C").complex().type("java.util.List")
+          .add("add").build())
+      .build();
+    CodeMappingCfg read = XmlReader.codeMapping(mapping.xml());
+    assertEquals(mapping.xml(), read.xml());
+    assertEquals(mapping.fingerprint(), read.fingerprint());
+  }
+
+  @Test
+  public void streamShouldBeRead() {
+    DesignSpaceCfg space = DesignSpaceCfg.getInstance(Helper.pointParam);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    space.xml(out);
+    DesignSpaceCfg read = XmlReader.designSpace(
+        new ByteArrayInputStream(out.toByteArray()));
+    assertEquals(space.xml(), read.xml());
+  }
+
+  @Test
+  public void escapedAttributesShouldBeUnescaped() {
+    ParamCfg param = pb().id("X").inclMin("A < B & C").build();
+    DesignSpaceCfg read = XmlReader.designSpace(
+        DesignSpaceCfg.getInstance(param).xml());
+    assertEquals("A < B & C",
+        read.getParameters().findFirst().get().getRange().inclMin().get());
+  }
+
+  @Test
+  public void largeDesignSpaceShouldBeRead() {
+    ParamCfg[] params = new ParamCfg[10000];
+    Arrays.fill(params, Helper.pointParam);
+    DesignSpaceCfg space = DesignSpaceCfg.getInstance(params);
+    assertEquals(space.fingerprint(),
+        XmlReader.designSpace(space.xml()).fingerprint());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void wrongRootShouldBeRejected() {
+    XmlReader.designSpace(CodeMappingCfg.getInstance().xml());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownElementShouldBeRejected() {
+    XmlReader.designSpace("<DesignSpace><Unknown /></DesignSpace>");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void malformedDocumentShouldBeRejected() {
+    XmlReader.designSpace("<DesignSpace><NParam id=\"X\"></DesignSpace>");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void truncatedDocumentShouldBeRejected() {
+    XmlReader.designSpace("<DesignSpace><NParam id=\"X\" />");
+  }
+
+  @Test
+  public void anyPrefixShouldWork() {
+    String xml = DesignSpaceCfg.getInstance(Helper.pointParam).xml()
+      .replace(X.PREFIX + ":", "other:")
+      .replace("xmlns:" + X.PREFIX, "xmlns:other");
+    assertEquals(Helper.pointParam,
+        XmlReader.designSpace(xml).getParameters().findFirst().get());
+  }
+
+  @Test
+  public void handWrittenDocumentShouldBeRead() {
+    DesignSpaceCfg read = XmlReader.designSpace(space(
+          "<in:NParam id=\"X\" type=\"integer\" inclMin=\"1\" />\n"));
+    assertEquals(pb().id("X").inclMin(1).build(),
+        read.getParameters().findFirst().get());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void wrongNamespaceShouldBeRejected() {
+    XmlReader.designSpace(DesignSpaceCfg.getInstance().xml()
+        .replace(X.SPACE_NS, X.CODE_MAPPING_NS));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unqualifiedElementsShouldBeRejected() {
+    XmlReader.designSpace("<DesignSpace id=\"S\" />");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownAttributeShouldBeRejected() {
+    XmlReader.designSpace(space("<in:NParam id=\"X\" step=\"2\" />"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void limitOnStructuredParameterShouldBeRejected() {
+    XmlReader.designSpace(space("<in:SParam id=\"X\" inclMin=\"2\" />"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void foreignAttributeShouldBeRejected() {
+    XmlReader.designSpace(space(
+          "<in:NParam xmlns:o=\"urn:other\" id=\"X\" o:id=\"Y\" />"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void childOfNumericParameterShouldBeRejected() {
+    XmlReader.designSpace(space(
+          "<in:NParam id=\"X\"><in:NParam id=\"Y\" /></in:NParam>"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void textShouldBeRejected() {
+    XmlReader.designSpace(space("<in:NParam id=\"X\">1</in:NParam>"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownMappingAttributeShouldBeRejected() {
+    XmlReader.codeMapping(CodeMappingCfg.getInstance(Helper.pointMapping)
+        .xml().replace(" type=", " name=\"N\" type="));
+  }
+
+  // Wraps the parameter XML in a design space document.
+  private static String space(String params) {
+    return "<in:DesignSpace xmlns:in=\"" + X.SPACE_NS + "\" id=\"S\">"
+      + params + "</in:DesignSpace>";
+  }
+}
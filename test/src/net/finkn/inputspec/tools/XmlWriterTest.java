@@ -0,0 +1,173 @@
+/*-- $Copyright (c) 2014 Christoffer Fink$
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package net.finkn.inputspec.tools;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.Test;
+
+public class XmlWriterTest {
+  private final String prefix = "prefix";
+  private final Xml xml = Xml.getInstance().prefix(prefix);
+  private final StringBuilder sb = new StringBuilder();
+  private final XmlWriter writer = XmlWriter.of(sb, prefix);
+
+  @Test
+  public void emptyElementShouldMatchXml() {
+    writer.start("tag").end();
+    assertEquals(xml.e("tag"), sb.toString());
+  }
+
+  @Test
+  public void attributesShouldMatchXml() {
+    Map<String, Optional<? extends Object>> attrib =
+      Collections.singletonMap("id", Optional.of("X"));
+    writer.start("tag").attribute("id", "X").end();
+    assertEquals(xml.e("tag", attrib), sb.toString());
+  }
+
+  @Test
+  public void nestedElementsShouldMatchXml() {
+    writer.start("a").start("b").start("c").end().end().start("d").end().end();
+    String c = xml.level(2).e("c");
+    String b = xml.level(1).e("b", Arrays.asList(c));
+    String d = xml.level(1).e("d");
+    assertEquals(xml.e("a", Arrays.asList(b, d)), sb.toString());
+  }
+
+  @Test
+  public void absentAttributesShouldBeSkipped() {
+    writer.start("tag").attribute("a", (String) null).attribute("b", Optional.empty())
+      .end();
+    assertEquals("<prefix:tag />", sb.toString());
+  }
+
+  @Test
+  public void attributeValuesShouldBeEscaped() {
+    writer.start("tag").attribute("a", "A < B & \"C\"").end();
+    assertEquals("<prefix:tag a=\"A &lt; B &amp; &quot;C&quot;\" />",
+        sb.toString());
+  }
+
+  @Test
+  public void missingPrefixShouldNotBeUsed() {
+    XmlWriter.of(sb, null).start("tag").end();
+    assertEquals("<tag />", sb.toString());
+  }
+
+  @Test
+  public void deepNestingShouldBeIndented() {
+    int depth = 100;
+    for (int i = 0; i < depth; i++) {
+      writer.start("e");
+    }
+    for (int i = 0; i < depth; i++) {
+      writer.end();
+    }
+    String indent = String.join("", Collections.nCopies(depth - 1, "  "));
+    assertTrue(sb.toString().contains("\n" + indent + "<prefix:e />\n"));
+  }
+
+  @Test
+  public void outputStreamShouldBeUtf8() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    XmlWriter w = XmlWriter.of(out, null);
+    w.start("tag").attribute("a", "å").end();
+    w.flush();
+    assertEquals("<tag a=\"å\" />",
+        new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void streamedConfigShouldMatchString() {
+    DesignSpaceCfg space = DesignSpaceCfg.getInstance(Helper.pointParam);
+    StringWriter out = new StringWriter();
+    space.xml(out);
+    assertEquals(space.xml(), out.toString());
+  }
+
+  @Test
+  public void largeConfigShouldBeStreamed() {
+    ParamCfg[] params = new ParamCfg[100000];
+    Arrays.fill(params, Helper.pointParam);
+    long[] chars = new long[1];
+    DesignSpaceCfg.getInstance(params).xml(new Writer() {
+      @Override
+      public void write(char[] buf, int off, int len) {
+        chars[0] += len;
+      }
+      @Override
+      public void flush() {
+      }
+      @Override
+      public void close() {
+      }
+    });
+    assertTrue(chars[0] > 100000 * Helper.pointParam.xml().length());
+  }
+
+  @Test
+  public void fragmentShouldMatchDirectWritingAtAnyLevel() {
+    XmlWriter.Fragment c = XmlWriter.fragment(prefix, "c",
+        w -> w.attribute("id", "C"), Collections.emptyList());
+    XmlWriter.Fragment b = XmlWriter.fragment(prefix, "b",
+        w -> { }, Arrays.asList(c, c));
+    StringBuilder direct = new StringBuilder();
+    XmlWriter.of(direct, prefix).start("a").start("a")
+      .start("b")
+      .start("c").attribute("id", "C").end()
+      .start("c").attribute("id", "C").end()
+      .end().end().end();
+    writer.start("a").start("a").write(b).end().end();
+    assertEquals(direct.toString(), sb.toString());
+  }
+
+  @Test
+  public void nestedParamShouldBeIndentedAsChild() {
+    ParamCfg point = Helper.pointParam;
+    ParamCfg outer = ParamCfg.builder()
+      .id("Outer")
+      .structured()
+      .add(point)
+      .build();
+    assertTrue(outer.xml().contains("\n  " + point.xml().replace("\n", "\n  ")
+          + "\n"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void endingWithoutOpenElementShouldBeIllegal() {
+    writer.end();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void attributeAfterChildShouldBeIllegal() {
+    writer.start("a").start("b").end().attribute("c", "d");
+  }
+}